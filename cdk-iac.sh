@@ -5,15 +5,17 @@ usage() {
     echo "Options:";
     echo "  -v  VPC";
     echo "  -p  Use DTAP as profile";
+    echo "  -d  Use the running synthesis server";
     echo "";
     exit 1;
 }
 
 CMD_OPTIONS=""
 
-while getopts ":v:-:p-" o; do
+while getopts ":v:d-:p-" o; do
     case "${o}" in
         v) v=${OPTARG};;
+        d) daemon=1;;
         -)
            case "${OPTARG}" in
                profile) profiles=1;;
@@ -32,13 +34,25 @@ if [[ -z ${1} ]] || [[ -z ${2} ]] || [[ -z ${3} ]] || [[ -z ${4} ]]; then
 fi
 
 CDK_COMMAND="$1"
-TEMPLATE="io.haskins.cdkiac.template.$2"
+TEMPLATE_CLASS="io.haskins.cdkiac.template.$2"
+TEMPLATE="${TEMPLATE_CLASS}"
 APPLICATION="-Dapplication=$3"
 DTAP="-Ddtap=$4 "
 
 JAVA_COMMAND="java -cp"
 JAVA_COMMAND_FULL="java -cp target/classes:$(cat .classpath.txt)"
 
+# use the launcher jar, and its AppCDS archive, when mvn package has been run since the last compile
+if [[ -f target/cdk-iac.jar ]] && [[ -z $(find target/classes -newer target/cdk-iac.jar -print -quit) ]]; then
+    JAVA_COMMAND="java"
+    JAVA_COMMAND_FULL="java"
+    # the archive was dumped with the relative target/cdk-iac.jar classpath, which has to match for it to be used
+    if [[ -f target/cdk-iac.jsa ]]; then
+        JAVA_COMMAND_FULL+=" -XX:SharedArchiveFile=target/cdk-iac.jsa"
+    fi
+    TEMPLATE="-jar target/cdk-iac.jar $2"
+fi
+
 VPC=""
 if [[ -n ${v} ]]; then
     VPC="-Dvpc=${v} " # space at the end needed
@@ -48,5 +62,11 @@ if [[ ${profiles} == 1 ]]; then
     CMD_OPTIONS+=" --profile $4"
 fi
 
+if [[ ${daemon} == 1 ]]; then
+    CLIENT_COMMAND="java -cp target/classes io.haskins.cdkiac.template.SynthesisClient ${TEMPLATE_CLASS} $4/${v}/$3"
+    echo "Running command : cdk ${CMD_OPTIONS} --app \"${CLIENT_COMMAND}\" ${CDK_COMMAND}"
+    exec cdk ${CMD_OPTIONS} --app "${CLIENT_COMMAND}" ${CDK_COMMAND}
+fi
+
 echo "Running command : cdk ${CMD_OPTIONS} --app \"${JAVA_COMMAND} ${APPLICATION} ${DTAP}${VPC}${TEMPLATE}\" ${CDK_COMMAND}"
 exec cdk ${CMD_OPTIONS} --app "${JAVA_COMMAND_FULL} ${APPLICATION} ${DTAP}${VPC}${TEMPLATE}" ${CDK_COMMAND}
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>JFR events for the {@link SynthesisProfiler}. Lives in src/jfr/java and is only compiled by the jfr profile
+ * (mvn -Pjfr, Java 11 or later), so the main sources still build for Java 8 without extra plugins. The profiler
+ * loads it by name when -Dprofile.jfr=true and carries on without events if it isn't there.</p>
+ *
+ * <p>The event is begun when the measurement starts and ended when it is closed, so the JFR duration covers the
+ * measured work. The wall time, CPU time and allocations are also recorded as fields.</p>
+ */
+public final class SynthesisEvents implements SynthesisProfiler.Events {
+
+    @Override
+    public Object begin() {
+
+        SynthesisEvent event = new SynthesisEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commit(Object started, SynthesisProfiler.Run run, SynthesisProfiler.Sample sample) {
+
+        SynthesisEvent event = (SynthesisEvent) started;
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.template = run.template;
+        event.target = run.target;
+        event.kind = sample.kind;
+        event.name = sample.name;
+        event.wallNanos = sample.wallNanos;
+        event.cpuNanos = sample.cpuNanos;
+        event.allocatedBytes = sample.allocatedBytes;
+        event.commit();
+    }
+
+    @Name("io.haskins.cdkiac.Synthesis")
+    @Label("Synthesis")
+    @Category("cdk-iac")
+    static class SynthesisEvent extends Event {
+
+        @Label("Template")
+        String template;
+
+        @Label("Target")
+        String target;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Name")
+        String name;
+
+        @Label("Wall Time (ns)")
+        long wallNanos;
+
+        @Label("CPU Time (ns)")
+        long cpuNanos;
+
+        @Label("Allocated Bytes")
+        long allocatedBytes;
+    }
+}
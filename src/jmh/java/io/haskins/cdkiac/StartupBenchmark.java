@@ -0,0 +1,87 @@
+package io.haskins.cdkiac;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Cold start of the launcher jar: each run is a new JVM doing a dry run of a Template, so the time measured is
+ * JVM start up, class loading, starting jsii and defining the stacks. JMH can't measure this as its forks share
+ * neither the launcher's classpath nor its AppCDS archive.</p>
+ *
+ * <p>The runs are made without and, if it has been built by the appcds profile, with the AppCDS archive, and the
+ * minimum and median of each are printed.</p>
+ *
+ * <p>Usage: <b>StartupBenchmark &lt;jar&gt; &lt;archive&gt; &lt;template&gt; &lt;dtap/vpc/application&gt;
+ * [runs]</b></p>
+ */
+public class StartupBenchmark {
+
+    private static final String USAGE = "Usage: StartupBenchmark <jar> <archive> <template> <dtap/vpc/application> [runs]";
+
+    private static final int DEFAULT_RUNS = 5;
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+
+        if (args.length < 4) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        Path jar = Paths.get(args[0]);
+        Path archive = Paths.get(args[1]);
+        int runs = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_RUNS;
+        File log = jar.resolveSibling("startup-benchmark.log").toFile();
+
+        List<String> command = Arrays.asList("-Ddryrun=true", "-jar", jar.toString(), args[2], args[3]);
+
+        report("default", measure(command, Collections.emptyList(), runs, log));
+
+        if (Files.isRegularFile(archive)) {
+            // -Xshare:on fails the run if the archive can't be used, rather than timing a JVM that quietly ignored it
+            report("appcds", measure(command, Arrays.asList("-Xshare:on", "-XX:SharedArchiveFile=" + archive), runs, log));
+        } else {
+            System.out.println(archive + " not found, build it with mvn -Pappcds package to compare");
+        }
+    }
+
+    private static List<Long> measure(List<String> command, List<String> options, int runs, File log) throws IOException, InterruptedException {
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        arguments.addAll(options);
+        arguments.addAll(command);
+
+        List<Long> millis = new ArrayList<>();
+
+        for (int i = 0; i < runs; i++) {
+
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(arguments)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                    .start();
+
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Startup run failed, see " + log);
+            }
+
+            millis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        Collections.sort(millis);
+        return millis;
+    }
+
+    private static void report(String mode, List<Long> millis) {
+        System.out.println(String.format("%-10s min %6d ms  median %6d ms  (%d runs)",
+                mode, millis.get(0), millis.get(millis.size() / 2), millis.size()));
+    }
+}
@@ -0,0 +1,58 @@
+package io.haskins.cdkiac.template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end run of a Template in dry run mode: loading the properties and defining the stacks through jsii, without
+ * writing any output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SynthesisBenchmark {
+
+    private static final String DRY_RUN = "dryrun";
+
+    /**
+     * template:dtap/vpc/application
+     */
+    @Param({"MyS3:dev/vpc-a/wordpress", "BeanstalkTemplate:dev//wordpress", "HelloWorldFunction:dev//hello-world"})
+    public String templateAndTarget;
+
+    private Class<? extends CdkIacTemplate> template;
+    private SynthesisTarget target;
+
+    @Setup
+    public void setUp() throws TemplateException {
+
+        System.setProperty(DRY_RUN, "true");
+
+        String[] parts = templateAndTarget.split(":");
+        template = TemplateInvocation.resolve(parts[0]);
+        target = SynthesisTarget.parse(parts[1]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.clearProperty(DRY_RUN);
+    }
+
+    @Benchmark
+    public Object synthesize() throws TemplateException {
+        return TemplateInvocation.run(template, target, null);
+    }
+}
@@ -0,0 +1,80 @@
+package io.haskins.cdkiac.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AppPropsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private AppProps appProps;
+
+    @Setup
+    public void setUp() {
+
+        AppProps loaded = new AppProps();
+        loaded.addProp("dtap", "dev");
+        loaded.addProp("vpc", "vpc-a");
+        loaded.addProp("app_id", "wordpress");
+        loaded.addProp("ec2_subnets", "subnet-aaaaaaaa, subnet-bbbbbbbb, subnet-cccccccc");
+        loaded.addProp("elb_subnets", Arrays.asList("subnet-dddddddd", "subnet-eeeeeeee", "subnet-ffffffff"));
+        loaded.addProp("memory_size", "128");
+        loaded.addProp("rds_multi-az", "false");
+        loaded.addProp("vpc_cidr", "10.0.0.0/16");
+
+        appProps = frozen ? loaded.freeze() : loaded;
+    }
+
+    @Benchmark
+    public String string() throws MissingPropertyException {
+        return appProps.getPropAsString("app_id");
+    }
+
+    @Benchmark
+    public List<String> splitStringList() throws MissingPropertyException {
+        return appProps.getPropAsStringList("ec2_subnets");
+    }
+
+    @Benchmark
+    public List<String> nativeStringList() throws MissingPropertyException {
+        return appProps.getPropAsStringList("elb_subnets");
+    }
+
+    @Benchmark
+    public Integer integer() throws MissingPropertyException {
+        return appProps.getPropAsInteger("memory_size");
+    }
+
+    @Benchmark
+    public Boolean bool() throws MissingPropertyException {
+        return appProps.getPropAsBoolean("rds_multi-az");
+    }
+
+    @Benchmark
+    public Cidr cidr() throws MissingPropertyException {
+        return appProps.getPropAsCidr("vpc_cidr");
+    }
+
+    @Benchmark
+    public String uniqueId() throws MissingPropertyException {
+        return appProps.getUniqueId();
+    }
+}
@@ -0,0 +1,183 @@
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the IamPolicyGenerator with the previous implementation, which concatenated the JSON as a String and parsed
+ * it back into a tree, and building trust policies with copying them out of a cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IamPolicyGeneratorBenchmark {
+
+    private static final int STATEMENTS = 10;
+
+    /**
+     * Number of actions and resources in each statement
+     */
+    @Param({"1", "10", "100", "500"})
+    public int size;
+
+    private List<String> actions;
+    private List<String> resources;
+    private List<JsonNode> statements;
+
+    @Setup
+    public void setUp() {
+
+        actions = new ArrayList<>();
+        resources = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            actions.add("s3:Action" + i);
+            resources.add("arn:aws:s3:::bucket-" + i + "/*");
+        }
+
+        statements = new ArrayList<>();
+        for (int i = 0; i < STATEMENTS; i++) {
+            statements.add(IamPolicyGenerator.getPolicyStatement("Allow", actions, resources));
+        }
+    }
+
+    @Benchmark
+    public JsonNode policyStatement() {
+        return IamPolicyGenerator.getPolicyStatement("Allow", actions, resources);
+    }
+
+    @Benchmark
+    public ObjectNode policyDocument() {
+        return IamPolicyGenerator.getPolicyDocument(statements);
+    }
+
+    @Benchmark
+    public ObjectNode serviceTrustPolicy() {
+        return IamPolicyGenerator.getServiceTrustPolicy("ec2.amazonaws.com");
+    }
+
+    @Benchmark
+    public JsonNode stringPolicyStatement() {
+        return StringPolicyGenerator.getPolicyStatement("Allow", actions, resources);
+    }
+
+    @Benchmark
+    public ObjectNode stringPolicyDocument() {
+        return StringPolicyGenerator.getPolicyDocument(statements);
+    }
+
+    @Benchmark
+    public JsonNode stringServiceTrustPolicy() {
+        return StringPolicyGenerator.getServiceTrustPolicy("ec2.amazonaws.com");
+    }
+
+    @Benchmark
+    public ObjectNode cachedServiceTrustPolicy() throws ExecutionException {
+        return CachedTrustPolicyGenerator.getServiceTrustPolicy("ec2.amazonaws.com");
+    }
+
+    /**
+     * Trust policies cached against their principals, with every caller given a deep copy, as the IamPolicyGenerator
+     * did for a while. Copying the cached tree costs more than building a new one.
+     */
+    private static final class CachedTrustPolicyGenerator {
+
+        private static final Cache<String, ObjectNode> trustPolicies = CacheBuilder.newBuilder().maximumSize(256).build();
+
+        static ObjectNode getServiceTrustPolicy(String service) throws ExecutionException {
+            return trustPolicies.get(service, () -> IamPolicyGenerator.getServiceTrustPolicy(service)).deepCopy();
+        }
+    }
+
+    /**
+     * The IamPolicyGenerator as it was before the JSON trees were built directly
+     */
+    private static final class StringPolicyGenerator {
+
+        private static final ObjectMapper mapper = new ObjectMapper();
+
+        static JsonNode getServiceTrustPolicy(String service) {
+
+            String json = "\"Service\":[" + escapeStrings(Collections.singletonList(service)) + "]";
+            return createTrustedJsonNode(json);
+        }
+
+        static JsonNode getPolicyStatement(String effect, List<String> actions, List<String> resources) {
+
+            StringBuilder json = new StringBuilder()
+                    .append("{")
+                    .append("\"Effect\": ").append("\"").append(effect).append("\",")
+                    .append("\"Action\": [").append(escapeStrings(actions)).append("],")
+                    .append("\"Resource\":[").append(escapeStrings(resources)).append("]")
+                    .append("}");
+
+            return createJsonNode(json.toString());
+        }
+
+        static ObjectNode getPolicyDocument(List<JsonNode> statements) {
+
+            ObjectNode objectNode = mapper.createObjectNode();
+            objectNode.put("Version", "2012-10-17");
+
+            ArrayNode array = mapper.valueToTree(statements);
+            objectNode.putArray("Statement").addAll(array);
+
+            return objectNode;
+        }
+
+        private static String escapeStrings(List<String> strings) {
+
+            List<String> tmp = new ArrayList<>();
+            for (String string: strings) {
+                tmp.add("\"" + string + "\"");
+            }
+
+            return String.join(",", tmp);
+        }
+
+        private static JsonNode createTrustedJsonNode(String principal) {
+
+            StringBuilder json = new StringBuilder()
+                    .append("{")
+                    .append("\"Version\":\"2012-10-17\",")
+                    .append("\"Statement\": [ {")
+                    .append("\"Effect\": \"Allow\",")
+                    .append("\"Principal\":{").append(principal).append("},")
+                    .append("\"Action\":\"sts:AssumeRole\"")
+                    .append("}]}");
+
+            return createJsonNode(json.toString());
+        }
+
+        private static JsonNode createJsonNode(String json) {
+
+            try {
+                return mapper.readTree(json);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
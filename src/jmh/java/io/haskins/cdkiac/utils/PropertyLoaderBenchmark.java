@@ -0,0 +1,44 @@
+package io.haskins.cdkiac.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PropertyLoaderBenchmark {
+
+    @Param({"dev/vpc-a/wordpress", "dev//hello-world"})
+    public String target;
+
+    private String dtap;
+    private String vpc;
+    private String application;
+
+    @Setup
+    public void setUp() {
+
+        String[] parts = target.split("/");
+        dtap = parts[0];
+        vpc = parts[1];
+        application = parts[2];
+    }
+
+    @Benchmark
+    public AppProps load() throws IOException {
+        return PropertyLoader.load(dtap, vpc, application).toAppProps().freeze();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac;
+
+import io.haskins.cdkiac.template.SynthesisTarget;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * <p>Single entry point that runs a Template by name, so the application can be started with <b>java -jar</b> rather
+ * than a class name and a classpath built from .classpath.txt. The jar's manifest lists the dependencies copied to
+ * target/lib, which gives the same classpath on every run and allows an AppCDS archive of the CDK, jsii, Jackson and
+ * Guava classes to be used, see the appcds profile in the pom.</p>
+ *
+ * <p>Usage: <b>Main &lt;template&gt; [&lt;dtap/vpc/application&gt;]</b>. Without a target the dtap/vpc/application
+ * are read from the System Properties as usual.</p>
+ */
+public final class Main {
+
+    private static final String USAGE = "Usage: Main <template> [<dtap/vpc/application>]";
+
+    private static final String TEMPLATE_PACKAGE = "io.haskins.cdkiac.template.";
+
+    private static final String DTAP = "dtap";
+    private static final String VPC = "vpc";
+    private static final String APPLICATION = "application";
+
+    private Main() { }
+
+    public static void main(final String[] args) {
+
+        if (args.length < 1 || args.length > 2) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            if (args.length == 2) {
+                SynthesisTarget target = SynthesisTarget.parse(args[1]);
+                System.setProperty(DTAP, target.getDtap());
+                System.setProperty(APPLICATION, target.getApplication());
+                if (target.hasVpc()) {
+                    System.setProperty(VPC, target.getVpc());
+                }
+            }
+
+            resolve(args[0]).invoke(null, (Object) new String[0]);
+
+        } catch (InvocationTargetException e) {
+            System.out.println(e.getCause());
+            System.exit(1);
+        } catch (IllegalArgumentException | ReflectiveOperationException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static Method resolve(String name) throws ReflectiveOperationException {
+
+        String className = name.contains(".") ? name : TEMPLATE_PACKAGE + name;
+
+        Method main;
+        try {
+            main = Class.forName(className).getMethod("main", String[].class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new ClassNotFoundException("Unable to find Template " + className);
+        }
+
+        if (!Modifier.isStatic(main.getModifiers())) {
+            throw new NoSuchMethodException(className + " does not have a static main method");
+        }
+
+        return main;
+    }
+}
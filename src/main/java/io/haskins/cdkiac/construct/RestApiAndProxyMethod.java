@@ -1,5 +1,6 @@
 package io.haskins.cdkiac.construct;
 
+import io.haskins.cdkiac.utils.SynthesisProfiler;
 import software.amazon.awscdk.Construct;
 import software.amazon.awscdk.services.apigateway.CfnResource;
 import software.amazon.awscdk.services.apigateway.CfnResourceProps;
@@ -15,16 +16,18 @@ public class RestApiAndProxyMethod extends Construct {
 
         super(parent, name);
 
+        try (SynthesisProfiler.Measurement measurement = SynthesisProfiler.start(SynthesisProfiler.CONSTRUCT, name)) {
 
-        restApi = new CfnRestApi(this, "RestApi", CfnRestApiProps.builder()
-                .withName(props.getUniqueId())
-                .build());
+            restApi = new CfnRestApi(this, "RestApi", CfnRestApiProps.builder()
+                    .withName(props.getUniqueId())
+                    .build());
 
-        cfnResource = new CfnResource(this, "CfnRestApi", CfnResourceProps.builder()
-                .withPathPart("{proxy+}")
-                .withRestApiId(restApi.getRestApiId())
-                .withParentId(restApi.getRestApiRootResourceId())
-                .build());
+            cfnResource = new CfnResource(this, "CfnRestApi", CfnResourceProps.builder()
+                    .withPathPart("{proxy+}")
+                    .withRestApiId(restApi.getRestApiId())
+                    .withParentId(restApi.getRestApiRootResourceId())
+                    .build());
+        }
     }
 
     public CfnRestApi getRestApi() {
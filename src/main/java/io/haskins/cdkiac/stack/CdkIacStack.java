@@ -26,20 +26,30 @@ package io.haskins.cdkiac.stack;
 
 import io.haskins.cdkiac.utils.MissingPropertyException;
 import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.PropertyAccessTracker;
+import io.haskins.cdkiac.utils.SynthesisProfiler;
 import software.amazon.awscdk.App;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Abstract class that all Stacks should extend
  */
 public abstract class CdkIacStack extends Stack {
 
     /**
-     * Exposes AppProps
+     * Exposes AppProps. Every property read through it is remembered, see {@link #getPropertyKeys()}
      */
     protected final AppProps appProps;
 
+    private final Set<String> propertyKeys = ConcurrentHashMap.newKeySet();
+
     /**
      * The unique id of the application
      */
@@ -71,15 +81,28 @@ public abstract class CdkIacStack extends Stack {
 
         super(parent, name, props);
 
-        appProps = appProperties;
+        appProps = appProperties.tracking(propertyKeys::add);
+
+        try (PropertyAccessTracker.Scope scope = PropertyAccessTracker.enter(name)) {
+
+            try {
+                uniqueId = appProps.getUniqueId();
+            } catch (MissingPropertyException e) {
+                throw new StackException(e.getMessage());
+            }
 
-        try {
-            uniqueId = appProps.getUniqueId();
-        } catch (MissingPropertyException e) {
-            throw new StackException(e.getMessage());
+            stackName = name;
+
+            try (SynthesisProfiler.Measurement measurement = SynthesisProfiler.start(SynthesisProfiler.STACK, name)) {
+                defineResources();
+            }
         }
+    }
 
-        stackName = name;
-        defineResources();
+    /**
+     * @return the keys of every property this stack has read, sorted
+     */
+    public SortedSet<String> getPropertyKeys() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(propertyKeys));
     }
 }
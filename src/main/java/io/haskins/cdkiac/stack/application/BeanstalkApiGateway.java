@@ -33,6 +33,7 @@ import io.haskins.cdkiac.utils.MissingPropertyException;
 import io.haskins.cdkiac.utils.AppProps;
 import io.haskins.cdkiac.stack.CdkIacStack;
 import io.haskins.cdkiac.utils.IamPolicyGenerator;
+import io.haskins.cdkiac.utils.PolicySizeException;
 import software.amazon.awscdk.App;
 import software.amazon.awscdk.StackProps;
 import software.amazon.awscdk.services.apigateway.*;
@@ -132,18 +133,18 @@ public class BeanstalkApiGateway extends CdkIacStack {
                             .build())
                     .build());
 
-        } catch (MissingPropertyException e) {
+        } catch (MissingPropertyException | PolicySizeException e) {
             throw new StackException(e.getMessage());
         }
 
     }
 
-    private ObjectNode getAppPolicyDocument() {
+    private ObjectNode getAppPolicyDocument() throws PolicySizeException {
 
         List<JsonNode> statements = new ArrayList<>();
 
         statements.add(IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("dynamodb:*"), Collections.singletonList("*")));
 
-        return IamPolicyGenerator.getPolicyDocument(statements);
+        return IamPolicyGenerator.getOptimizedPolicyDocument(statements);
     }
 }
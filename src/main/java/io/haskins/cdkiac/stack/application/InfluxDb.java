@@ -33,6 +33,7 @@ import io.haskins.cdkiac.utils.MissingPropertyException;
 import io.haskins.cdkiac.utils.AppProps;
 import io.haskins.cdkiac.stack.CdkIacStack;
 import io.haskins.cdkiac.utils.IamPolicyGenerator;
+import io.haskins.cdkiac.utils.PolicySizeException;
 import software.amazon.awscdk.App;
 import software.amazon.awscdk.StackProps;
 
@@ -148,12 +149,12 @@ public class InfluxDb extends CdkIacStack {
                     .build());
 
 
-        } catch (MissingPropertyException e) {
+        } catch (MissingPropertyException | PolicySizeException e) {
             throw new StackException(e.getMessage());
         }
     }
 
-    private ObjectNode getAppPolicyDocument() {
+    private ObjectNode getAppPolicyDocument() throws PolicySizeException {
 
         List<JsonNode> statements = new ArrayList<>();
 
@@ -165,6 +166,6 @@ public class InfluxDb extends CdkIacStack {
                 )
         );
 
-        return IamPolicyGenerator.getPolicyDocument(statements);
+        return IamPolicyGenerator.getOptimizedPolicyDocument(statements);
     }
 }
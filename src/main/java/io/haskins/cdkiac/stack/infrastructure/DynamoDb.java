@@ -27,12 +27,62 @@ package io.haskins.cdkiac.stack.infrastructure;
 import io.haskins.cdkiac.stack.CdkIacStack;
 import io.haskins.cdkiac.stack.StackException;
 import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.MissingPropertyException;
 import software.amazon.awscdk.App;
 import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.services.applicationautoscaling.CfnScalableTarget;
+import software.amazon.awscdk.services.applicationautoscaling.CfnScalableTargetProps;
+import software.amazon.awscdk.services.applicationautoscaling.CfnScalingPolicy;
+import software.amazon.awscdk.services.applicationautoscaling.CfnScalingPolicyProps;
+import software.amazon.awscdk.services.dax.CfnCluster;
+import software.amazon.awscdk.services.dax.CfnClusterProps;
+import software.amazon.awscdk.services.dax.CfnSubnetGroup;
+import software.amazon.awscdk.services.dax.CfnSubnetGroupProps;
 import software.amazon.awscdk.services.dynamodb.*;
+import software.amazon.awscdk.services.ec2.CfnSecurityGroup;
+import software.amazon.awscdk.services.ec2.CfnSecurityGroupProps;
+import software.amazon.awscdk.services.iam.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>DynamoDB table, with everything about it taken from the properties so that each dtap can size it independently.</p>
+ *
+ * <ul>
+ *     <li>dynamodb_partition_key / dynamodb_sort_key : keys as name:type, e.g. id:S, the sort key may be empty</li>
+ *     <li>dynamodb_gsis : list of global secondary indexes, each an object with a name, partition_key, optional
+ *     sort_key, and an optional projection of ALL, KEYS_ONLY or a list of attributes to include</li>
+ *     <li>dynamodb_billing_mode : PAY_PER_REQUEST for on-demand, or PROVISIONED</li>
+ * </ul>
+ *
+ * <p>In PROVISIONED mode the read and write capacity of the table and each index start at
+ * <b>dynamodb_read_capacity</b> and <b>dynamodb_write_capacity</b>, and are auto scaled up to
+ * <b>dynamodb_max_read_capacity</b> and <b>dynamodb_max_write_capacity</b> to keep their utilisation at
+ * <b>dynamodb_target_utilization</b> percent. A maximum no higher than the starting capacity turns auto scaling
+ * off.</p>
+ *
+ * <p>With <b>dynamodb_dax</b> a DAX cluster of <b>dynamodb_dax_nodes</b> <b>dynamodb_dax_node_type</b> nodes is put in
+ * front of the table, in the ec2_subnets of vpc_id.</p>
+ */
 public class DynamoDb extends CdkIacStack {
 
+    private static final String PAY_PER_REQUEST = "PAY_PER_REQUEST";
+    private static final String PROVISIONED = "PROVISIONED";
+
+    private static final List<String> ATTRIBUTE_TYPES = Arrays.asList("S", "N", "B");
+    private static final List<String> PROJECTION_TYPES = Arrays.asList("ALL", "KEYS_ONLY");
+    private static final String PLACEHOLDER_KEY = "missing:S";
+
+    private static final String AUTOSCALING_ROLE = "arn:aws:iam::%s:role/aws-service-role/dynamodb.application-autoscaling.amazonaws.com/AWSServiceRoleForApplicationAutoScaling_DynamoDBTable";
+
+    private static final int DAX_PORT = 8111;
+
     public DynamoDb(final App parent,
               final String name,
               final AppProps appProps) throws StackException {
@@ -50,12 +100,285 @@ public class DynamoDb extends CdkIacStack {
 
     protected void defineResources() throws StackException {
 
-        new CfnTable(this, "DynamoDb", CfnTableProps.builder()
-                .withTableName(uniqueId)
-                .withProvisionedThroughput(CfnTable.ProvisionedThroughputProperty.builder()
-                        .withReadCapacityUnits(1)
-                        .withWriteCapacityUnits(1)
+        try {
+
+            String billingMode = appProps.getPropAsString("dynamodb_billing_mode");
+            if (appProps.isPlaceholder("dynamodb_billing_mode")) {
+                billingMode = PAY_PER_REQUEST;
+            } else if (!PAY_PER_REQUEST.equals(billingMode) && !PROVISIONED.equals(billingMode)) {
+                throw new StackException("Unknown dynamodb_billing_mode " + billingMode);
+            }
+
+            boolean provisioned = PROVISIONED.equals(billingMode);
+
+            Map<String, String> attributes = new LinkedHashMap<>();
+            List<Object> keySchema = keySchema(keyProp("dynamodb_partition_key"), keyProp("dynamodb_sort_key"), attributes);
+
+            List<String> indexNames = new ArrayList<>();
+            List<Object> indexes = new ArrayList<>();
+
+            List<Object> gsis = appProps.getPropAsObjectList("dynamodb_gsis");
+            if (appProps.isPlaceholder("dynamodb_gsis")) {
+                gsis = Collections.emptyList();
+            }
+
+            for (Object item : gsis) {
+
+                Map<String, Object> gsi = asMap(item);
+                String indexName = required(gsi, "name");
+
+                CfnTable.GlobalSecondaryIndexProperty.Builder index = CfnTable.GlobalSecondaryIndexProperty.builder()
+                        .withIndexName(indexName)
+                        .withKeySchema(keySchema(required(gsi, "partition_key"), optional(gsi, "sort_key"), attributes))
+                        .withProjection(projection(gsi.get("projection")));
+
+                if (provisioned) {
+                    index.withProvisionedThroughput(throughput());
+                }
+
+                indexNames.add(indexName);
+                indexes.add(index.build());
+            }
+
+            List<Object> attributeDefinitions = new ArrayList<>();
+            attributes.forEach((name, type) -> attributeDefinitions.add(CfnTable.AttributeDefinitionProperty.builder()
+                    .withAttributeName(name)
+                    .withAttributeType(type)
+                    .build()));
+
+            CfnTableProps.Builder tableProps = CfnTableProps.builder()
+                    .withTableName(uniqueId)
+                    .withBillingMode(billingMode)
+                    .withAttributeDefinitions(attributeDefinitions)
+                    .withKeySchema(keySchema);
+
+            if (!indexes.isEmpty()) {
+                tableProps.withGlobalSecondaryIndexes(indexes);
+            }
+
+            if (provisioned) {
+                tableProps.withProvisionedThroughput(throughput());
+            }
+
+            CfnTable table = new CfnTable(this, "DynamoDb", tableProps.build());
+
+            if (provisioned) {
+
+                String resourceId = "table/" + table.getRef();
+                addAutoScaling("Table", resourceId, "table");
+
+                for (int i = 0; i < indexNames.size(); i++) {
+                    addAutoScaling("Index" + (i + 1), resourceId + "/index/" + indexNames.get(i), "index");
+                }
+            }
+
+            if (appProps.getPropAsBoolean("dynamodb_dax")) {
+                addDax(table);
+            }
+
+        } catch (MissingPropertyException e) {
+            throw new StackException(e.getMessage());
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return name:type of a key, or a valid stand in when validating and the property is only a placeholder
+     */
+    private String keyProp(String key) throws MissingPropertyException {
+
+        String value = appProps.getPropAsString(key);
+        return appProps.isPlaceholder(key) ? PLACEHOLDER_KEY : value;
+    }
+
+    /**
+     * @return key schema of a partition key and optional sort key, adding their types to the attribute definitions
+     */
+    private static List<Object> keySchema(String partitionKey, String sortKey, Map<String, String> attributes) throws StackException {
+
+        List<Object> keySchema = new ArrayList<>();
+        keySchema.add(key(partitionKey, "HASH", attributes));
+
+        if (sortKey != null && !sortKey.isEmpty()) {
+            keySchema.add(key(sortKey, "RANGE", attributes));
+        }
+
+        return keySchema;
+    }
+
+    private static CfnTable.KeySchemaProperty key(String key, String keyType, Map<String, String> attributes) throws StackException {
+
+        String[] parts = key.split(":");
+        if (parts.length != 2 || !ATTRIBUTE_TYPES.contains(parts[1].trim())) {
+            throw new StackException("Invalid DynamoDB key " + key + ", expected name:type where type is one of " + ATTRIBUTE_TYPES);
+        }
+
+        String name = parts[0].trim();
+        String type = parts[1].trim();
+
+        String existing = attributes.putIfAbsent(name, type);
+        if (existing != null && !existing.equals(type)) {
+            throw new StackException("DynamoDB attribute " + name + " is used as both " + existing + " and " + type);
+        }
+
+        return CfnTable.KeySchemaProperty.builder()
+                .withAttributeName(name)
+                .withKeyType(keyType)
+                .build();
+    }
+
+    private static CfnTable.ProjectionProperty projection(Object projection) throws StackException {
+
+        if (projection == null) {
+            return CfnTable.ProjectionProperty.builder().withProjectionType("ALL").build();
+        }
+
+        if (projection instanceof List) {
+
+            List<String> nonKeyAttributes = new ArrayList<>();
+            ((List<?>) projection).forEach(attribute -> nonKeyAttributes.add(attribute.toString()));
+
+            return CfnTable.ProjectionProperty.builder()
+                    .withProjectionType("INCLUDE")
+                    .withNonKeyAttributes(nonKeyAttributes)
+                    .build();
+        }
+
+        if (!PROJECTION_TYPES.contains(projection.toString())) {
+            throw new StackException("Invalid DynamoDB projection " + projection + ", expected one of " + PROJECTION_TYPES + " or a list of attributes");
+        }
+
+        return CfnTable.ProjectionProperty.builder().withProjectionType(projection.toString()).build();
+    }
+
+    private CfnTable.ProvisionedThroughputProperty throughput() throws MissingPropertyException {
+
+        return CfnTable.ProvisionedThroughputProperty.builder()
+                .withReadCapacityUnits(appProps.getPropAsInteger("dynamodb_read_capacity"))
+                .withWriteCapacityUnits(appProps.getPropAsInteger("dynamodb_write_capacity"))
+                .build();
+    }
+
+    /**
+     * Adds target tracking auto scaling of the read and write capacity of the table or an index
+     * @param id logical id suffix, e.g. Table or Index1
+     * @param resourceId table/&lt;table&gt; or table/&lt;table&gt;/index/&lt;index&gt;
+     * @param dimension table or index
+     */
+    private void addAutoScaling(String id, String resourceId, String dimension) throws MissingPropertyException {
+
+        addAutoScaling(id + "Read", resourceId, dimension, "ReadCapacityUnits", "DynamoDBReadCapacityUtilization",
+                appProps.getPropAsInteger("dynamodb_read_capacity"), appProps.getPropAsInteger("dynamodb_max_read_capacity"));
+
+        addAutoScaling(id + "Write", resourceId, dimension, "WriteCapacityUnits", "DynamoDBWriteCapacityUtilization",
+                appProps.getPropAsInteger("dynamodb_write_capacity"), appProps.getPropAsInteger("dynamodb_max_write_capacity"));
+    }
+
+    private void addAutoScaling(String id,
+                                String resourceId,
+                                String dimension,
+                                String units,
+                                String metric,
+                                int minCapacity,
+                                int maxCapacity) throws MissingPropertyException {
+
+        if (maxCapacity <= minCapacity) {
+            return;
+        }
+
+        CfnScalableTarget target = new CfnScalableTarget(this, id + "ScalableTarget", CfnScalableTargetProps.builder()
+                .withServiceNamespace("dynamodb")
+                .withScalableDimension("dynamodb:" + dimension + ":" + units)
+                .withResourceId(resourceId)
+                .withMinCapacity(minCapacity)
+                .withMaxCapacity(maxCapacity)
+                .withRoleArn(String.format(AUTOSCALING_ROLE, appProps.getPropAsString("account_id")))
+                .build());
+
+        new CfnScalingPolicy(this, id + "ScalingPolicy", CfnScalingPolicyProps.builder()
+                .withPolicyName(uniqueId + "-" + id.toLowerCase())
+                .withPolicyType("TargetTrackingScaling")
+                .withScalingTargetId(target.getRef())
+                .withTargetTrackingScalingPolicyConfiguration(CfnScalingPolicy.TargetTrackingScalingPolicyConfigurationProperty.builder()
+                        .withTargetValue(appProps.getPropAsInteger("dynamodb_target_utilization"))
+                        .withPredefinedMetricSpecification(CfnScalingPolicy.PredefinedMetricSpecificationProperty.builder()
+                                .withPredefinedMetricType(metric)
+                                .build())
                         .build())
                 .build());
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds a DAX cluster in the private subnets, reachable from the VPC and able to read and write the table
+     */
+    private void addDax(CfnTable table) throws MissingPropertyException {
+
+        Map<String, PolicyDocument> daxPolicies = new HashMap<>();
+        daxPolicies.put("dynamodb", new PolicyDocument().addStatement(new PolicyStatement().allow().addResource(table.getTableArn()).addActions(
+                "dynamodb:DescribeTable", "dynamodb:GetItem", "dynamodb:BatchGetItem", "dynamodb:Query", "dynamodb:Scan", "dynamodb:ConditionCheckItem",
+                "dynamodb:PutItem", "dynamodb:UpdateItem", "dynamodb:DeleteItem", "dynamodb:BatchWriteItem")));
+
+        Role daxRole = new Role(this, "DaxIamRole", RoleProps.builder()
+                .withRoleName(uniqueId + "-dax")
+                .withPath("/")
+                .withAssumedBy(new ServicePrincipal("dax.amazonaws.com"))
+                .withInlinePolicies(daxPolicies)
+                .build());
+
+        CfnSecurityGroup daxSg = new CfnSecurityGroup(this,"DaxSecurityGroup", CfnSecurityGroupProps.builder()
+                .withGroupName(uniqueId + "-dax")
+                .withGroupDescription(uniqueId + "-dax")
+                .withVpcId(appProps.getPropAsString("vpc_id"))
+                .withSecurityGroupIngress(
+                        Collections.singletonList(
+                                CfnSecurityGroupIngressProps.builder().withCidrIp(appProps.getPropAsString("vpc_cidr")).withFromPort(DAX_PORT).withToPort(DAX_PORT).withIpProtocol("tcp").build())
+                )
+                .build());
+
+        CfnSubnetGroup subnetGroup = new CfnSubnetGroup(this, "DaxSubnetGroup", CfnSubnetGroupProps.builder()
+                .withSubnetGroupName(uniqueId)
+                .withDescription(uniqueId)
+                .withSubnetIds(appProps.getPropAsStringList("ec2_subnets"))
+                .build());
+
+        /*
+         * the cluster name is left for CloudFormation to generate, DAX only allows 20 characters
+         */
+        new CfnCluster(this, "Dax", CfnClusterProps.builder()
+                .withIamRoleArn(daxRole.getRoleArn())
+                .withNodeType(appProps.getPropAsString("dynamodb_dax_node_type"))
+                .withReplicationFactor(appProps.getPropAsInteger("dynamodb_dax_nodes"))
+                .withSubnetGroupName(subnetGroup.getRef())
+                .withSecurityGroupIds(Collections.singletonList(daxSg.getSecurityGroupId()))
+                .build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object item) throws StackException {
+
+        if (!(item instanceof Map)) {
+            throw new StackException("Each of dynamodb_gsis must be an object, not " + item);
+        }
+
+        return (Map<String, Object>) item;
+    }
+
+    private static String required(Map<String, Object> gsi, String key) throws StackException {
+
+        Object value = gsi.get(key);
+        if (value == null) {
+            throw new StackException("dynamodb_gsis entry " + gsi + " has no " + key);
+        }
+
+        return value.toString();
+    }
+
+    private static String optional(Map<String, Object> gsi, String key) {
+
+        Object value = gsi.get(key);
+        return value == null ? null : value.toString();
+    }
+}
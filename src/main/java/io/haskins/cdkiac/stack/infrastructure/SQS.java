@@ -27,19 +27,47 @@ package io.haskins.cdkiac.stack.infrastructure;
 import io.haskins.cdkiac.stack.CdkIacStack;
 import io.haskins.cdkiac.stack.StackException;
 import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.MissingPropertyException;
 import software.amazon.awscdk.App;
 import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.services.iam.PolicyDocument;
+import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.iam.ServicePrincipal;
 import software.amazon.awscdk.services.sns.CfnSubscription;
 import software.amazon.awscdk.services.sns.CfnSubscriptionProps;
 import software.amazon.awscdk.services.sns.CfnTopic;
 import software.amazon.awscdk.services.sns.CfnTopicProps;
 import software.amazon.awscdk.services.sqs.CfnQueue;
+import software.amazon.awscdk.services.sqs.CfnQueuePolicy;
+import software.amazon.awscdk.services.sqs.CfnQueuePolicyProps;
 import software.amazon.awscdk.services.sqs.CfnQueueProps;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * <p>SQS queue fed by an SNS topic, tuned from the properties for throughput.</p>
+ *
+ * <ul>
+ *     <li>sqs_receive_wait_time : seconds a receive long polls for messages, 0 to 20</li>
+ *     <li>sqs_visibility_timeout : seconds a received message is hidden from other consumers, 0 to 43200</li>
+ *     <li>sqs_message_retention : seconds a message is kept, 60 to 1209600</li>
+ *     <li>sqs_max_receive_count : receives before a message is moved to the dead letter queue, 0 for no dead letter
+ *     queue</li>
+ *     <li>sqs_fifo : FIFO queue and topic, with sqs_content_based_deduplication and, with
+ *     sqs_fifo_high_throughput, deduplication and throughput limits per message group rather than per queue</li>
+ *     <li>sns_raw_message_delivery : deliver the message body to the queue as published, rather than wrapped in a
+ *     JSON envelope</li>
+ * </ul>
+ *
+ * <p>The defaults in resources/defaults.json long poll for the full 20 seconds, so consumers don't pay for empty
+ * receives, and deliver raw messages so they can be batched straight through.</p>
+ */
 public class SQS  extends CdkIacStack {
 
+    private static final String FIFO_SUFFIX = ".fifo";
+
     public SQS(final App parent,
                final String name,
                final AppProps appProps) throws StackException {
@@ -57,21 +85,108 @@ public class SQS  extends CdkIacStack {
 
     protected void defineResources() throws StackException {
 
-        CfnQueue queue = new CfnQueue(this, "Queue", CfnQueueProps.builder()
-                .withQueueName(uniqueId)
-                .withVisibilityTimeout(300)
-                .build());
-
-        CfnTopic topic = new CfnTopic(this, "Topic", CfnTopicProps.builder()
-                .withTopicName(uniqueId)
-                .withDisplayName(uniqueId)
-                .withSubscription(Collections.singletonList(queue.getQueueArn()))
-                .build());
-
-        new CfnSubscription(this, "TopicSubcription", CfnSubscriptionProps.builder()
-                .withTopicArn(topic.getTopicArn())
-                .withEndpoint("test@test.com")
-                .withProtocol("email")
-                .build());
+        try {
+
+            boolean fifo = appProps.getPropAsBoolean("sqs_fifo");
+            String suffix = fifo ? FIFO_SUFFIX : "";
+
+            int messageRetention = getPropInRange("sqs_message_retention", 60, 1209600);
+
+            CfnQueueProps.Builder queueProps = CfnQueueProps.builder()
+                    .withQueueName(uniqueId + suffix)
+                    .withVisibilityTimeout(getPropInRange("sqs_visibility_timeout", 0, 43200))
+                    .withReceiveMessageWaitTimeSeconds(getPropInRange("sqs_receive_wait_time", 0, 20))
+                    .withMessageRetentionPeriod(messageRetention);
+
+            int maxReceiveCount = getPropInRange("sqs_max_receive_count", 0, 1000);
+            if (maxReceiveCount > 0) {
+
+                /*
+                 * the dead letter queue keeps messages for as long as allowed, as they have already been in the queue
+                 * for a while by the time they are moved
+                 */
+                CfnQueueProps.Builder dlqProps = CfnQueueProps.builder()
+                        .withQueueName(uniqueId + "-dlq" + suffix)
+                        .withMessageRetentionPeriod(1209600);
+                if (fifo) {
+                    dlqProps.withFifoQueue(true);
+                }
+
+                CfnQueue dlq = new CfnQueue(this, "DeadLetterQueue", dlqProps.build());
+
+                Map<String, Object> redrivePolicy = new HashMap<>();
+                redrivePolicy.put("deadLetterTargetArn", dlq.getQueueArn());
+                redrivePolicy.put("maxReceiveCount", maxReceiveCount);
+                queueProps.withRedrivePolicy(redrivePolicy);
+            }
+
+            if (fifo) {
+                queueProps.withFifoQueue(true)
+                        .withContentBasedDeduplication(appProps.getPropAsBoolean("sqs_content_based_deduplication"));
+            }
+
+            CfnQueue queue = new CfnQueue(this, "Queue", queueProps.build());
+
+            /*
+             * the high throughput FIFO settings are newer than this version of the CDK, so are set as overrides
+             */
+            if (fifo && appProps.getPropAsBoolean("sqs_fifo_high_throughput")) {
+                queue.addPropertyOverride("DeduplicationScope", "messageGroup");
+                queue.addPropertyOverride("FifoThroughputLimit", "perMessageGroupId");
+            }
+
+            CfnTopic topic = new CfnTopic(this, "Topic", CfnTopicProps.builder()
+                    .withTopicName(uniqueId + suffix)
+                    .withDisplayName(uniqueId)
+                    .build());
+
+            if (fifo) {
+                topic.addPropertyOverride("FifoTopic", true);
+                topic.addPropertyOverride("ContentBasedDeduplication", appProps.getPropAsBoolean("sqs_content_based_deduplication"));
+            }
+
+            new CfnQueuePolicy(this, "QueuePolicy", CfnQueuePolicyProps.builder()
+                    .withQueues(Collections.singletonList(queue.getRef()))
+                    .withPolicyDocument(new PolicyDocument().addStatement(new PolicyStatement().allow()
+                            .addPrincipal(new ServicePrincipal("sns.amazonaws.com"))
+                            .addActions("sqs:SendMessage")
+                            .addResource(queue.getQueueArn())
+                            .addCondition("ArnEquals", Collections.singletonMap("aws:SourceArn", topic.getTopicArn()))))
+                    .build());
+
+            new CfnSubscription(this, "QueueSubscription", CfnSubscriptionProps.builder()
+                    .withTopicArn(topic.getTopicArn())
+                    .withEndpoint(queue.getQueueArn())
+                    .withProtocol("sqs")
+                    .withRawMessageDelivery(appProps.getPropAsBoolean("sns_raw_message_delivery"))
+                    .build());
+
+            /*
+             * FIFO topics can only deliver to SQS
+             */
+            if (!fifo) {
+                new CfnSubscription(this, "TopicSubcription", CfnSubscriptionProps.builder()
+                        .withTopicArn(topic.getTopicArn())
+                        .withEndpoint("test@test.com")
+                        .withProtocol("email")
+                        .build());
+            }
+
+        } catch (MissingPropertyException e) {
+            throw new StackException(e.getMessage());
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private int getPropInRange(String key, int min, int max) throws MissingPropertyException, StackException {
+
+        int value = appProps.getPropAsInteger(key);
+        if (!appProps.isPlaceholder(key) && (value < min || value > max)) {
+            throw new StackException(String.format("%s is %d, it must be between %d and %d", key, value, min, max));
+        }
+
+        return value;
     }
-}
\ No newline at end of file
+}
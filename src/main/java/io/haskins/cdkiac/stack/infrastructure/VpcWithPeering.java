@@ -27,6 +27,8 @@ package io.haskins.cdkiac.stack.infrastructure;
 import io.haskins.cdkiac.stack.StackException;
 import io.haskins.cdkiac.utils.MissingPropertyException;
 import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.Cidr;
+import io.haskins.cdkiac.utils.CidrAllocator;
 import io.haskins.cdkiac.stack.CdkIacStack;
 import io.haskins.cdkiac.stack.infrastructure.hack.VpcBastionCloudFormationHack;
 import io.haskins.cdkiac.stack.infrastructure.hack.VpcNatCloudFormationHack;
@@ -41,13 +43,57 @@ import software.amazon.awscdk.services.iam.*;
 import software.amazon.awscdk.services.logs.CfnLogGroup;
 import software.amazon.awscdk.services.logs.CfnLogGroupProps;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * <p>VPC with a private and a public subnet, and optionally an isolated one, in each of the
+ * <b>availability_zones</b>, peered to the VPC at <b>vpc_peer_cidr</b>, with a bastion and NAT for egress from the
+ * private subnets.</p>
+ *
+ * <p>The subnets are carved out of <b>vpc_cidr</b> by the {@link CidrAllocator}, sized by the prefix length of each
+ * tier in <b>subnet_prefix_lengths</b>, e.g. <code>{ "private": 19, "public": 22 }</code>. Each tier has a fixed
+ * region of the VPC, so adding a zone to the end of <b>availability_zones</b> or resizing one tier does not move the
+ * other subnets.</p>
+ *
+ * <p>The NAT is chosen by the <b>nat_egress</b> property:</p>
+ * <ul>
+ *     <li>single_instance : one NAT instance for the whole VPC, with a single private route table</li>
+ *     <li>instance_per_az : a NAT instance in each availability zone, each private subnet routing to the one in its
+ *     own zone. The instance type is set by <b>nat_instance_type</b></li>
+ *     <li>gateway_per_az : a managed NAT gateway in each availability zone, each private subnet routing to the one in
+ *     its own zone</li>
+ * </ul>
+ * <p>With a NAT per zone egress bandwidth grows with the number of zones, and traffic doesn't cross zones to leave
+ * the VPC.</p>
+ *
+ * <p>Traffic to AWS services can skip the NAT altogether through VPC endpoints:</p>
+ * <ul>
+ *     <li>vpc_gateway_endpoints : gateway endpoints attached to the private route tables, s3 and/or dynamodb</li>
+ *     <li>vpc_interface_endpoints : interface endpoints with private DNS in the private subnets, e.g. sqs, kms, logs,
+ *     sts</li>
+ * </ul>
+ */
 public class VpcWithPeering extends CdkIacStack {
 
+    private static final String NAT_SINGLE_INSTANCE = "single_instance";
+    private static final String NAT_INSTANCE_PER_AZ = "instance_per_az";
+    private static final String NAT_GATEWAY_PER_AZ = "gateway_per_az";
+
+    private static final List<String> GATEWAY_ENDPOINT_SERVICES = Arrays.asList("s3", "dynamodb");
+
+    /**
+     * Layout used when validating without a usable vpc_cidr, availability_zones or subnet_prefix_lengths, so the rest
+     * of the stack is still defined and reads its properties
+     */
+    private static final Cidr PLACEHOLDER_VPC_CIDR = Cidr.parse("10.0.0.0/16");
+    private static final int PLACEHOLDER_PREFIX_LENGTH = 24;
+
     public VpcWithPeering(final App parent,
                           final String name,
                           final AppProps appProps) throws StackException {
@@ -75,77 +121,67 @@ public class VpcWithPeering extends CdkIacStack {
                     .build());
 
 
-            CfnSubnet subnetPrivateA = new CfnSubnet(this, "SubnetPrivateA", CfnSubnetProps.builder()
-                    .withAvailabilityZone("eu-west-1a")
-                    .withCidrBlock("10.1.0.0/20")
-                    .withVpcId(vpc.getVpcId())
-                    .build());
-            CfnSubnet subnetPrivateB = new CfnSubnet(this, "SubnetPrivateB", CfnSubnetProps.builder()
-                    .withAvailabilityZone("eu-west-1b")
-                    .withCidrBlock("10.1.16.0/20")
-                    .withVpcId(vpc.getVpcId())
-                    .build());
-            CfnSubnet subnetPrivateC = new CfnSubnet(this, "SubnetPrivateC", CfnSubnetProps.builder()
-                    .withAvailabilityZone("eu-west-1c")
-                    .withCidrBlock("10.1.32.0/20")
-                    .withVpcId(vpc.getVpcId())
-                    .build());
-
-            CfnSubnet subnetPublicA = new CfnSubnet(this, "SubnetPublicA", CfnSubnetProps.builder()
-                    .withAvailabilityZone("eu-west-1a")
-                    .withCidrBlock("10.1.48.0/20")
-                    .withMapPublicIpOnLaunch(true)
-                    .withVpcId(vpc.getVpcId())
-                    .build());
-            CfnSubnet subnetPublicB = new CfnSubnet(this, "SubnetPublicB", CfnSubnetProps.builder()
-                    .withAvailabilityZone("eu-west-1b")
-                    .withCidrBlock("10.1.64.0/20")
-                    .withMapPublicIpOnLaunch(true)
-                    .withVpcId(vpc.getVpcId())
-                    .build());
-            CfnSubnet subnetPublicC = new CfnSubnet(this, "SubnetPublicC", CfnSubnetProps.builder()
-                    .withAvailabilityZone("eu-west-1c")
-                    .withCidrBlock("10.1.80.0/20")
-                    .withMapPublicIpOnLaunch(true)
-                    .withVpcId(vpc.getVpcId())
-                    .build());
-
-
-            CfnRouteTable rtPrivate = new CfnRouteTable(this, "RouteTablePrivate", CfnRouteTableProps.builder()
-                    .withVpcId(vpc.getVpcId())
-                    .build());
+            Cidr vpcCidr = appProps.getPropAsCidr("vpc_cidr");
+            Cidr peerCidr = appProps.getPropAsCidr("vpc_peer_cidr");
+
+            List<String> zones = appProps.getPropAsStringList("availability_zones");
+            Map<CidrAllocator.Tier, Integer> prefixLengths = subnetPrefixLengths();
+
+            List<CidrAllocator.Subnet> layout;
+            if (appProps.isPlaceholder("vpc_cidr", "availability_zones", "subnet_prefix_lengths")) {
+                Map<CidrAllocator.Tier, Integer> placeholder = new EnumMap<>(CidrAllocator.Tier.class);
+                placeholder.put(CidrAllocator.Tier.PRIVATE, PLACEHOLDER_PREFIX_LENGTH);
+                placeholder.put(CidrAllocator.Tier.PUBLIC, PLACEHOLDER_PREFIX_LENGTH);
+                layout = CidrAllocator.allocate(PLACEHOLDER_VPC_CIDR, zones, placeholder);
+            } else {
+                if (!prefixLengths.containsKey(CidrAllocator.Tier.PRIVATE) || !prefixLengths.containsKey(CidrAllocator.Tier.PUBLIC)) {
+                    throw new StackException("subnet_prefix_lengths needs both a private and a public prefix length");
+                }
+                layout = CidrAllocator.allocate(vpcCidr, zones, prefixLengths);
+            }
+
+            Map<CidrAllocator.Tier, List<CfnSubnet>> subnets = new EnumMap<>(CidrAllocator.Tier.class);
+            for (CidrAllocator.Subnet subnet : layout) {
+                subnets.computeIfAbsent(subnet.getTier(), tier -> new ArrayList<>())
+                        .add(new CfnSubnet(this, "Subnet" + subnet.getTier().getLabel() + zoneSuffix(subnet.getZoneIndex()), CfnSubnetProps.builder()
+                                .withAvailabilityZone(subnet.getZone())
+                                .withCidrBlock(subnet.getCidr().toString())
+                                .withMapPublicIpOnLaunch(subnet.getTier() == CidrAllocator.Tier.PUBLIC ? Boolean.TRUE : null)
+                                .withVpcId(vpc.getVpcId())
+                                .build()));
+            }
+
+            List<CfnSubnet> privateSubnets = subnets.get(CidrAllocator.Tier.PRIVATE);
+            List<CfnSubnet> publicSubnets = subnets.get(CidrAllocator.Tier.PUBLIC);
+            List<CfnSubnet> isolatedSubnets = subnets.getOrDefault(CidrAllocator.Tier.ISOLATED, Collections.emptyList());
+
+            String natEgress = appProps.getPropAsString("nat_egress");
+            if (appProps.isPlaceholder("nat_egress")) {
+                natEgress = NAT_SINGLE_INSTANCE;
+            } else if (!Arrays.asList(NAT_SINGLE_INSTANCE, NAT_INSTANCE_PER_AZ, NAT_GATEWAY_PER_AZ).contains(natEgress)) {
+                throw new StackException("Unknown nat_egress " + natEgress);
+            }
+
+            /*
+             * One private route table per zone when each zone has its own NAT, otherwise one shared by all the zones
+             */
+            List<CfnRouteTable> rtPrivate = new ArrayList<>();
+            if (NAT_SINGLE_INSTANCE.equals(natEgress)) {
+                rtPrivate.add(new CfnRouteTable(this, "RouteTablePrivate", CfnRouteTableProps.builder()
+                        .withVpcId(vpc.getVpcId())
+                        .build()));
+            } else {
+                for (int i = 0; i < zones.size(); i++) {
+                    rtPrivate.add(new CfnRouteTable(this, "RouteTablePrivate" + zoneSuffix(i), CfnRouteTableProps.builder()
+                            .withVpcId(vpc.getVpcId())
+                            .build()));
+                }
+            }
 
             CfnRouteTable rtPublic = new CfnRouteTable(this, "RouteTablePublic", CfnRouteTableProps.builder()
                     .withVpcId(vpc.getVpcId())
                     .build());
 
-
-            new CfnSubnetRouteTableAssociation(this, "RouteTableAssociationPrivateA", CfnSubnetRouteTableAssociationProps.builder()
-                    .withRouteTableId(rtPrivate.getRouteTableId())
-                    .withSubnetId(subnetPrivateA.getSubnetId())
-                    .build());
-            new CfnSubnetRouteTableAssociation(this, "RouteTableAssociationPrivateB", CfnSubnetRouteTableAssociationProps.builder()
-                    .withRouteTableId(rtPrivate.getRouteTableId())
-                    .withSubnetId(subnetPrivateB.getSubnetId())
-                    .build());
-            new CfnSubnetRouteTableAssociation(this, "RouteTableAssociationPrivateC", CfnSubnetRouteTableAssociationProps.builder()
-                    .withRouteTableId(rtPrivate.getRouteTableId())
-                    .withSubnetId(subnetPrivateC.getSubnetId())
-                    .build());
-
-            new CfnSubnetRouteTableAssociation(this, "RouteTableAssociationPublicA", CfnSubnetRouteTableAssociationProps.builder()
-                    .withRouteTableId(rtPublic.getRouteTableId())
-                    .withSubnetId(subnetPublicA.getSubnetId())
-                    .build());
-            new CfnSubnetRouteTableAssociation(this, "RouteTableAssociationPublicB", CfnSubnetRouteTableAssociationProps.builder()
-                    .withRouteTableId(rtPublic.getRouteTableId())
-                    .withSubnetId(subnetPublicB.getSubnetId())
-                    .build());
-            new CfnSubnetRouteTableAssociation(this, "RouteTableAssociationPublicC", CfnSubnetRouteTableAssociationProps.builder()
-                    .withRouteTableId(rtPublic.getRouteTableId())
-                    .withSubnetId(subnetPublicC.getSubnetId())
-                    .build());
-
             CfnNetworkAcl privateNacl = new CfnNetworkAcl(this, "NetworkAclPrivate", CfnNetworkAclProps.builder()
                     .withVpcId(vpc.getVpcId())
                     .build());
@@ -153,32 +189,24 @@ public class VpcWithPeering extends CdkIacStack {
                     .withVpcId(vpc.getVpcId())
                     .build());
 
+            for (int i = 0; i < zones.size(); i++) {
+                associate("Private" + zoneSuffix(i), privateSubnets.get(i), rtPrivate.get(rtPrivate.size() == 1 ? 0 : i), privateNacl);
+                associate("Public" + zoneSuffix(i), publicSubnets.get(i), rtPublic, publicNacl);
+            }
 
-            new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociationPrivateA", CfnSubnetNetworkAclAssociationProps.builder()
-                    .withNetworkAclId(privateNacl.getNetworkAclName())
-                    .withSubnetId(subnetPrivateA.getSubnetId())
-                    .build());
-            new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociationPrivateB", CfnSubnetNetworkAclAssociationProps.builder()
-                    .withNetworkAclId(privateNacl.getNetworkAclName())
-                    .withSubnetId(subnetPrivateB.getSubnetId())
-                    .build());
-            new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociationPrivateC", CfnSubnetNetworkAclAssociationProps.builder()
-                    .withNetworkAclId(privateNacl.getNetworkAclName())
-                    .withSubnetId(subnetPrivateB.getSubnetId())
-                    .build());
+            /*
+             * Isolated subnets get a route table of their own with only the local route, and share the private NACL
+             */
+            if (!isolatedSubnets.isEmpty()) {
 
-            new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociationPublicA", CfnSubnetNetworkAclAssociationProps.builder()
-                    .withNetworkAclId(publicNacl.getNetworkAclName())
-                    .withSubnetId(subnetPublicA.getSubnetId())
-                    .build());
-            new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociationPublicB", CfnSubnetNetworkAclAssociationProps.builder()
-                    .withNetworkAclId(publicNacl.getNetworkAclName())
-                    .withSubnetId(subnetPublicB.getSubnetId())
-                    .build());
-            new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociationPublicC", CfnSubnetNetworkAclAssociationProps.builder()
-                    .withNetworkAclId(publicNacl.getNetworkAclName())
-                    .withSubnetId(subnetPublicC.getSubnetId())
-                    .build());
+                CfnRouteTable rtIsolated = new CfnRouteTable(this, "RouteTableIsolated", CfnRouteTableProps.builder()
+                        .withVpcId(vpc.getVpcId())
+                        .build());
+
+                for (int i = 0; i < zones.size(); i++) {
+                    associate("Isolated" + zoneSuffix(i), isolatedSubnets.get(i), rtIsolated, privateNacl);
+                }
+            }
 
 
             CfnVPCPeeringConnection peer = new CfnVPCPeeringConnection(this, "Peer", CfnVPCPeeringConnectionProps.builder()
@@ -187,18 +215,20 @@ public class VpcWithPeering extends CdkIacStack {
                     .withPeerOwnerId(appProps.getPropAsString("accountid"))
                     .build());
 
-            new CfnRoute(this, "PeeringRoute1", CfnRouteProps.builder()
-                    .withDestinationCidrBlock("10.0.0.0/16")
-                    .withRouteTableId(rtPrivate.getRouteTableId())
-                    .withVpcPeeringConnectionId(peer.getVpcPeeringConnectionName())
-                    .build());
+            for (int i = 0; i < rtPrivate.size(); i++) {
+                new CfnRoute(this, "PeeringRoute1" + suffix(rtPrivate, i), CfnRouteProps.builder()
+                        .withDestinationCidrBlock(peerCidr.toString())
+                        .withRouteTableId(rtPrivate.get(i).getRouteTableId())
+                        .withVpcPeeringConnectionId(peer.getVpcPeeringConnectionName())
+                        .build());
+            }
             new CfnRoute(this, "PeeringRoute2", CfnRouteProps.builder()
-                    .withDestinationCidrBlock("10.0.0.0/16")
+                    .withDestinationCidrBlock(peerCidr.toString())
                     .withRouteTableId(rtPublic.getRouteTableId())
                     .withVpcPeeringConnectionId(peer.getVpcPeeringConnectionName())
                     .build());
             new CfnRoute(this, "PeeringRoute3", CfnRouteProps.builder()
-                    .withDestinationCidrBlock("10.1.0.0/16")
+                    .withDestinationCidrBlock(vpcCidr.toString())
                     .withRouteTableId(appProps.getPropAsString("vpc_peer_rt"))
                     .withVpcPeeringConnectionId(peer.getVpcPeeringConnectionName())
                     .build());
@@ -206,11 +236,18 @@ public class VpcWithPeering extends CdkIacStack {
 
             CfnInternetGateway CfnInternetGateway = new CfnInternetGateway(this, "InternetGateway");
 
-            new CfnVPCGatewayAttachment(this, "VpcGatewayAttachment", CfnVPCGatewayAttachmentProps.builder()
+            CfnVPCGatewayAttachment gatewayAttachment = new CfnVPCGatewayAttachment(this, "VpcGatewayAttachment", CfnVPCGatewayAttachmentProps.builder()
                     .withVpcId(vpc.getVpcId())
                     .withInternetGatewayId(CfnInternetGateway.getInternetGatewayName())
                     .build());
 
+            CfnRoute publicRoute = new CfnRoute(this, "PublicRoute", CfnRouteProps.builder()
+                    .withDestinationCidrBlock("0.0.0.0/0")
+                    .withRouteTableId(rtPublic.getRouteTableId())
+                    .withGatewayId(CfnInternetGateway.getInternetGatewayName())
+                    .build());
+            publicRoute.addDependsOn(gatewayAttachment);
+
 
             new CfnNetworkAclEntry(this, "NetworkAclEntryInPublicAllowAll", CfnNetworkAclEntryProps.builder()
                     .withCidrBlock("0.0.0.0/0")
@@ -246,14 +283,6 @@ public class VpcWithPeering extends CdkIacStack {
                     .build());
 
 
-            CfnEIP natEip = new CfnEIP(this, "NatEip");
-
-
-            new CfnLogGroup(this, "NatLogGroup", CfnLogGroupProps.builder()
-                    .withLogGroupName("vpc-nat-logs")
-                    .withRetentionInDays(14)
-                    .build());
-
             CfnSecurityGroup bastionSg = new CfnSecurityGroup(this,"BastionSecurityGroup", CfnSecurityGroupProps.builder()
                     .withGroupName("bastion")
                     .withGroupDescription("bastion")
@@ -264,59 +293,13 @@ public class VpcWithPeering extends CdkIacStack {
                     )
                     .build());
 
-            CfnSecurityGroup natSG = new CfnSecurityGroup(this,"NatSecurityGroup", CfnSecurityGroupProps.builder()
-                    .withGroupName("nat")
-                    .withGroupDescription("nat")
-                    .withVpcId(vpc.getVpcId())
-                    .withSecurityGroupIngress(
-                            Arrays.asList(
-                                    CfnSecurityGroupIngressProps.builder().withCidrIp("0.0.0.0/0").withFromPort(80).withToPort(80).withIpProtocol("tcp").build(),
-                                    CfnSecurityGroupIngressProps.builder().withSourceSecurityGroupId(bastionSg.getSecurityGroupId()).withFromPort(22).withToPort(22).withIpProtocol("tcp").build()
-                            )
-                    )
-                    .build());
-
-
-            Map<String, PolicyDocument> natPolicies = new HashMap<>();
-            natPolicies.put("ec2", new PolicyDocument().addStatement(new PolicyStatement().allow().addResource("*").addActions("ec2:AssociateAddress", "ec2:ModifyInstanceAttribute", "ec2:CreateRoute", "ec2:ReplaceRoute")));
-            natPolicies.put("logs", new PolicyDocument().addStatement(new PolicyStatement().allow().addResource("*").addActions("logs:CreateLogGroup", "logs:CreateLogStream", "logs:PutLogEvents", "logs:DescribeLogStreams")));
-
-            Role natRole = new Role(this, "NatIamRole", RoleProps.builder()
-                    .withRoleName("nat")
-                    .withPath("/")
-                    .withAssumedBy(new ServicePrincipal("ec2.amazonaws.com"))
-                    .withInlinePolicies(natPolicies)
-                    .build());
-
-            CfnInstanceProfile natInstanceProfile = new CfnInstanceProfile(this, "NatInstanceProfile", CfnInstanceProfileProps.builder()
-                    .withInstanceProfileName("influxdb-instanceprofile")
-                    .withPath("/")
-                    .withRoles(Collections.singletonList(natRole.getRoleName()))
-                    .build());
-
-
-            CfnLaunchConfiguration natLaunch = new CfnLaunchConfiguration(this, "NATLaunchConfiguration", CfnLaunchConfigurationProps.builder()
-                    .withAssociatePublicIpAddress(true)
-                    .withEbsOptimized(false)
-                    .withIamInstanceProfile(natInstanceProfile.getInstanceProfileArn())
-                    .withImageId("ami-d51b3ba6")
-                    .withInstanceType("t3.micro")
-                    .withKeyName(appProps.getPropAsString("keypair"))
-                    .withSecurityGroups(Collections.singletonList(natSG.getSecurityGroupId()))
-                    .withUserData(VpcNatCloudFormationHack.getUserData(natEip.getEipAllocationId(), rtPrivate.getRouteTableId(), stackName))
-                    .build());
-
-            natLaunch.addOverride("Metadata", VpcNatCloudFormationHack.getCloudFormationMetadata());
-
+            if (NAT_GATEWAY_PER_AZ.equals(natEgress)) {
+                createNatGateways(publicSubnets, rtPrivate, gatewayAttachment);
+            } else {
+                createNatInstances(vpc, bastionSg, publicSubnets, rtPrivate);
+            }
 
-            new CfnAutoScalingGroup(this, "NATAutoScalingGroup", CfnAutoScalingGroupProps.builder()
-                    .withAutoScalingGroupName("nat")
-                    .withDesiredCapacity("1")
-                    .withLaunchConfigurationName(natLaunch.getLaunchConfigurationName())
-                    .withMaxSize("1")
-                    .withMinSize("1")
-                    .withVpcZoneIdentifier(Arrays.asList(subnetPublicA.getSubnetId(),subnetPublicB.getSubnetId(),subnetPublicC.getSubnetId()))
-                    .build());
+            createVpcEndpoints(vpc, privateSubnets, rtPrivate);
 
 
             CfnEIP bastionEip = new CfnEIP(this, "BastionEip");
@@ -357,7 +340,7 @@ public class VpcWithPeering extends CdkIacStack {
                     .withUserData(VpcBastionCloudFormationHack.getUserData(bastionEip.getEipAllocationId(), stackName))
                     .build());
 
-            natLaunch.addOverride("Metadata", VpcBastionCloudFormationHack.getCloudFormationMetadata());
+            bastionLaunch.addOverride("Metadata", VpcBastionCloudFormationHack.getCloudFormationMetadata());
 
 
             new CfnAutoScalingGroup(this, "BastionAutoScalingGroup", CfnAutoScalingGroupProps.builder()
@@ -366,11 +349,252 @@ public class VpcWithPeering extends CdkIacStack {
                     .withLaunchConfigurationName(bastionLaunch.getLaunchConfigurationName())
                     .withMaxSize("1")
                     .withMinSize("1")
-                    .withVpcZoneIdentifier(Arrays.asList(subnetPublicA.getSubnetId(),subnetPublicB.getSubnetId(),subnetPublicC.getSubnetId()))
+                    .withVpcZoneIdentifier(subnetIds(publicSubnets))
                     .build());
 
-        } catch (MissingPropertyException e) {
+            /*
+             * checked last so that every other property is read first when validating
+             */
+            if (!appProps.isPlaceholder("vpc_cidr", "vpc_peer_cidr") && vpcCidr.overlaps(peerCidr)) {
+                throw new StackException("vpc_cidr " + vpcCidr + " overlaps vpc_peer_cidr " + peerCidr + ", they can't be peered");
+            }
+
+        } catch (MissingPropertyException | IllegalArgumentException e) {
             throw new StackException(e.getMessage());
         }
     }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private void createNatInstances(CfnVPC vpc,
+                                    CfnSecurityGroup bastionSg,
+                                    List<CfnSubnet> publicSubnets,
+                                    List<CfnRouteTable> rtPrivate) throws MissingPropertyException {
+
+        new CfnLogGroup(this, "NatLogGroup", CfnLogGroupProps.builder()
+                .withLogGroupName("vpc-nat-logs")
+                .withRetentionInDays(14)
+                .build());
+
+        CfnSecurityGroup natSG = new CfnSecurityGroup(this,"NatSecurityGroup", CfnSecurityGroupProps.builder()
+                .withGroupName("nat")
+                .withGroupDescription("nat")
+                .withVpcId(vpc.getVpcId())
+                .withSecurityGroupIngress(
+                        Arrays.asList(
+                                CfnSecurityGroupIngressProps.builder().withCidrIp("0.0.0.0/0").withFromPort(80).withToPort(80).withIpProtocol("tcp").build(),
+                                CfnSecurityGroupIngressProps.builder().withSourceSecurityGroupId(bastionSg.getSecurityGroupId()).withFromPort(22).withToPort(22).withIpProtocol("tcp").build()
+                        )
+                )
+                .build());
+
+
+        Map<String, PolicyDocument> natPolicies = new HashMap<>();
+        natPolicies.put("ec2", new PolicyDocument().addStatement(new PolicyStatement().allow().addResource("*").addActions("ec2:AssociateAddress", "ec2:ModifyInstanceAttribute", "ec2:CreateRoute", "ec2:ReplaceRoute")));
+        natPolicies.put("logs", new PolicyDocument().addStatement(new PolicyStatement().allow().addResource("*").addActions("logs:CreateLogGroup", "logs:CreateLogStream", "logs:PutLogEvents", "logs:DescribeLogStreams")));
+
+        Role natRole = new Role(this, "NatIamRole", RoleProps.builder()
+                .withRoleName("nat")
+                .withPath("/")
+                .withAssumedBy(new ServicePrincipal("ec2.amazonaws.com"))
+                .withInlinePolicies(natPolicies)
+                .build());
+
+        CfnInstanceProfile natInstanceProfile = new CfnInstanceProfile(this, "NatInstanceProfile", CfnInstanceProfileProps.builder()
+                .withInstanceProfileName("influxdb-instanceprofile")
+                .withPath("/")
+                .withRoles(Collections.singletonList(natRole.getRoleName()))
+                .build());
+
+        /*
+         * Each NAT instance takes its EIP and points the default route of its route table at itself when it boots
+         */
+        for (int i = 0; i < rtPrivate.size(); i++) {
+
+            String suffix = suffix(rtPrivate, i);
+            String launchConfigurationName = "NATLaunchConfiguration" + suffix;
+
+            CfnEIP natEip = new CfnEIP(this, "NatEip" + suffix);
+
+            CfnLaunchConfiguration natLaunch = new CfnLaunchConfiguration(this, launchConfigurationName, CfnLaunchConfigurationProps.builder()
+                    .withAssociatePublicIpAddress(true)
+                    .withEbsOptimized(false)
+                    .withIamInstanceProfile(natInstanceProfile.getInstanceProfileArn())
+                    .withImageId("ami-d51b3ba6")
+                    .withInstanceType(appProps.getPropAsString("nat_instance_type"))
+                    .withKeyName(appProps.getPropAsString("keypair"))
+                    .withSecurityGroups(Collections.singletonList(natSG.getSecurityGroupId()))
+                    .withUserData(VpcNatCloudFormationHack.getUserData(natEip.getEipAllocationId(), rtPrivate.get(i).getRouteTableId(), stackName, launchConfigurationName))
+                    .build());
+
+            natLaunch.addOverride("Metadata", VpcNatCloudFormationHack.getCloudFormationMetadata(launchConfigurationName));
+
+            List<String> subnets = rtPrivate.size() == 1
+                    ? subnetIds(publicSubnets)
+                    : Collections.singletonList(publicSubnets.get(i).getSubnetId());
+
+            new CfnAutoScalingGroup(this, "NATAutoScalingGroup" + suffix, CfnAutoScalingGroupProps.builder()
+                    .withAutoScalingGroupName(suffix.isEmpty() ? "nat" : "nat-" + suffix.toLowerCase())
+                    .withDesiredCapacity("1")
+                    .withLaunchConfigurationName(natLaunch.getLaunchConfigurationName())
+                    .withMaxSize("1")
+                    .withMinSize("1")
+                    .withVpcZoneIdentifier(subnets)
+                    .build());
+        }
+    }
+
+    private void createNatGateways(List<CfnSubnet> publicSubnets,
+                                   List<CfnRouteTable> rtPrivate,
+                                   CfnVPCGatewayAttachment gatewayAttachment) {
+
+        for (int i = 0; i < rtPrivate.size(); i++) {
+
+            String suffix = suffix(rtPrivate, i);
+
+            CfnEIP natEip = new CfnEIP(this, "NatGatewayEip" + suffix, CfnEIPProps.builder()
+                    .withDomain("vpc")
+                    .build());
+
+            CfnNatGateway natGateway = new CfnNatGateway(this, "NatGateway" + suffix, CfnNatGatewayProps.builder()
+                    .withAllocationId(natEip.getEipAllocationId())
+                    .withSubnetId(publicSubnets.get(i).getSubnetId())
+                    .build());
+            natGateway.addDependsOn(gatewayAttachment);
+
+            new CfnRoute(this, "NatRoute" + suffix, CfnRouteProps.builder()
+                    .withDestinationCidrBlock("0.0.0.0/0")
+                    .withRouteTableId(rtPrivate.get(i).getRouteTableId())
+                    .withNatGatewayId(natGateway.getRef())
+                    .build());
+        }
+    }
+
+    private void createVpcEndpoints(CfnVPC vpc,
+                                    List<CfnSubnet> privateSubnets,
+                                    List<CfnRouteTable> rtPrivate) throws MissingPropertyException, StackException {
+
+        List<String> gatewayServices = appProps.getPropAsStringList("vpc_gateway_endpoints");
+        if (appProps.isPlaceholder("vpc_gateway_endpoints")) {
+            gatewayServices = Collections.emptyList();
+        }
+        List<String> interfaceServices = appProps.getPropAsStringList("vpc_interface_endpoints");
+
+        List<String> routeTableIds = new ArrayList<>();
+        rtPrivate.forEach(rt -> routeTableIds.add(rt.getRouteTableId()));
+
+        for (String service : gatewayServices) {
+
+            if (!GATEWAY_ENDPOINT_SERVICES.contains(service)) {
+                throw new StackException("Gateway endpoints are only available for " + GATEWAY_ENDPOINT_SERVICES + ", not " + service);
+            }
+
+            new CfnVPCEndpoint(this, "VpcEndpoint" + endpointId(service), CfnVPCEndpointProps.builder()
+                    .withServiceName(endpointServiceName(service))
+                    .withVpcEndpointType("Gateway")
+                    .withVpcId(vpc.getVpcId())
+                    .withRouteTableIds(routeTableIds)
+                    .build());
+        }
+
+        if (interfaceServices.isEmpty()) {
+            return;
+        }
+
+        CfnSecurityGroup endpointSg = new CfnSecurityGroup(this,"VpcEndpointSecurityGroup", CfnSecurityGroupProps.builder()
+                .withGroupName("vpc-endpoints")
+                .withGroupDescription("vpc-endpoints")
+                .withVpcId(vpc.getVpcId())
+                .withSecurityGroupIngress(
+                        Collections.singletonList(
+                                CfnSecurityGroupIngressProps.builder().withCidrIp(appProps.getPropAsString("vpc_cidr")).withFromPort(443).withToPort(443).withIpProtocol("tcp").build())
+                )
+                .build());
+
+        for (String service : interfaceServices) {
+
+            new CfnVPCEndpoint(this, "VpcEndpoint" + endpointId(service), CfnVPCEndpointProps.builder()
+                    .withServiceName(endpointServiceName(service))
+                    .withVpcEndpointType("Interface")
+                    .withVpcId(vpc.getVpcId())
+                    .withPrivateDnsEnabled(true)
+                    .withSubnetIds(subnetIds(privateSubnets))
+                    .withSecurityGroupIds(Collections.singletonList(endpointSg.getSecurityGroupId()))
+                    .build());
+        }
+    }
+
+    /**
+     * @return full endpoint service name for the service in this stack's region, e.g. com.amazonaws.eu-west-1.s3
+     */
+    private String endpointServiceName(String service) {
+        return "com.amazonaws." + getRegion() + "." + service;
+    }
+
+    /**
+     * @return logical id suffix for the service, e.g. ecr.api becomes EcrApi
+     */
+    private static String endpointId(String service) {
+
+        StringBuilder id = new StringBuilder();
+        for (String part : service.split("[^A-Za-z0-9]+")) {
+            if (!part.isEmpty()) {
+                id.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+            }
+        }
+
+        return id.toString();
+    }
+
+    /**
+     * @return prefix length of each tier from subnet_prefix_lengths, e.g. { "private": 20, "public": 20 }
+     */
+    private Map<CidrAllocator.Tier, Integer> subnetPrefixLengths() throws MissingPropertyException {
+
+        Map<CidrAllocator.Tier, Integer> prefixLengths = new EnumMap<>(CidrAllocator.Tier.class);
+        for (Map.Entry<String, Object> entry : appProps.getPropAsMap("subnet_prefix_lengths").entrySet()) {
+            try {
+                prefixLengths.put(CidrAllocator.Tier.parse(entry.getKey()), Integer.valueOf(entry.getValue().toString()));
+            } catch (NumberFormatException e) {
+                throw new MissingPropertyException("Property subnet_prefix_lengths." + entry.getKey() + " is not a number");
+            }
+        }
+
+        return prefixLengths;
+    }
+
+    private void associate(String id, CfnSubnet subnet, CfnRouteTable routeTable, CfnNetworkAcl nacl) {
+
+        new CfnSubnetRouteTableAssociation(this, "RouteTableAssociation" + id, CfnSubnetRouteTableAssociationProps.builder()
+                .withRouteTableId(routeTable.getRouteTableId())
+                .withSubnetId(subnet.getSubnetId())
+                .build());
+
+        new CfnSubnetNetworkAclAssociation(this, "SubnetNetworkAclAssociation" + id, CfnSubnetNetworkAclAssociationProps.builder()
+                .withNetworkAclId(nacl.getNetworkAclName())
+                .withSubnetId(subnet.getSubnetId())
+                .build());
+    }
+
+    private static List<String> subnetIds(List<CfnSubnet> subnets) {
+
+        List<String> ids = new ArrayList<>();
+        subnets.forEach(subnet -> ids.add(subnet.getSubnetId()));
+        return ids;
+    }
+
+    /**
+     * @return A for the first zone, B for the second, ...
+     */
+    private static String zoneSuffix(int index) {
+        return String.valueOf((char) ('A' + index));
+    }
+
+    /**
+     * @return the zone suffix for a resource belonging to a private route table, empty if there is only one table
+     */
+    private static String suffix(List<CfnRouteTable> rtPrivate, int index) {
+        return rtPrivate.size() == 1 ? "" : zoneSuffix(index);
+    }
 }
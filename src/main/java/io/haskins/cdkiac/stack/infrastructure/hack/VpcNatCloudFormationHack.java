@@ -33,7 +33,17 @@ import java.util.*;
  */
 public class VpcNatCloudFormationHack {
 
+    private static final String DEFAULT_RESOURCE = "NATLaunchConfiguration";
+
     public static Map getCloudFormationMetadata() {
+        return getCloudFormationMetadata(DEFAULT_RESOURCE);
+    }
+
+    /**
+     * @param resourceName logical id of the launch configuration the metadata is added to
+     * @return CloudFormation::Init metadata
+     */
+    public static Map getCloudFormationMetadata(String resourceName) {
 
         Map<String, Object> init = new HashMap<>();
         init.put("configSets", ImmutableMap.of("default", Collections.singletonList("config")));
@@ -59,11 +69,11 @@ public class VpcNatCloudFormationHack {
                 "/etc/cfn/hooks.d/cfn-auto-reloader.conf", ImmutableMap.of("content", new StringBuilder()
                         .append("[cfn-auto-reloader-hook]\n")
                         .append("triggers=post.update\n")
-                        .append("path=Resources.NATLaunchConfiguration.Metadata.AWS::CloudFormation::Init\n")
+                        .append("path=Resources.").append(resourceName).append(".Metadata.AWS::CloudFormation::Init\n")
                         .append("action=/opt/aws/bin/cfn-init --verbose")
                         .append(" --stack { \"Ref\": \"AWS::StackName\" }")
                         .append(" --region \",{ \"Ref\": \"AWS::Region\" }")
-                        .append(" --resource NATLaunchConfiguration\n")
+                        .append(" --resource ").append(resourceName).append("\n")
                         .append(" runas root")
                 )
         ));
@@ -89,6 +99,17 @@ public class VpcNatCloudFormationHack {
     }
 
     public static String getUserData(String eip, String routeTable, String stackName) {
+        return getUserData(eip, routeTable, stackName, DEFAULT_RESOURCE);
+    }
+
+    /**
+     * @param eip allocation id of the EIP the NAT instance takes
+     * @param routeTable route table whose default route is pointed at the NAT instance
+     * @param stackName name of the stack
+     * @param resourceName logical id of the launch configuration, used by cfn-init
+     * @return base64 encoded user data
+     */
+    public static String getUserData(String eip, String routeTable, String stackName, String resourceName) {
 
         StringBuilder userData = new StringBuilder();
         userData.append("#!/bin/bash -xe\n");
@@ -112,7 +133,7 @@ public class VpcNatCloudFormationHack {
         userData.append(" --destination-cidr-block '0.0.0.0/0'");
         userData.append(" --instance-id $INSTANCEID)");
         userData.append(" && ");
-        userData.append("/opt/aws/bin/cfn-init -v --stack ").append(stackName).append(" --resource NATLaunchConfiguration --region eu-west-1\n");
+        userData.append("/opt/aws/bin/cfn-init -v --stack ").append(stackName).append(" --resource ").append(resourceName).append(" --region eu-west-1\n");
 
         return new String(Base64.getEncoder().encode(userData.toString().getBytes()));
     }
@@ -0,0 +1,395 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.PropertyLoader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Synthesizes a Template for a number of dtap/vpc/application combinations inside a single JVM, so the JVM and
+ * jsii runtime start up costs are only paid once. Each combination gets its own CDK App and its stacks are written
+ * to &lt;output-dir&gt;/&lt;unique id&gt;.</p>
+ *
+ * <p>Usage: <b>BatchSynthesizer &lt;template&gt; &lt;output-dir&gt; &lt;dtap/vpc/application&gt; ...</b></p>
+ *
+ * <p>Any part of a target can be a glob that is matched against the files in the resources folders, e.g.
+ * <b>*&#47;vpc-a/wordpress</b> or <b>{dev,test}//microservice</b>.</p>
+ *
+ * <p>Targets are synthesized one after another in this JVM unless <b>-Dthreads=n</b> is given, in which case up to n
+ * targets are synthesized at once, each in a JVM of its own. jsii is not thread safe and runs one node process per
+ * JVM, so threads in one JVM would only take turns at {@link CdkIacTemplate}'s lock; separate JVMs each have their own
+ * jsii runtime and really do run in parallel, at the cost of a JVM and node start up per target. The forked JVMs get
+ * the same classpath and -D / -X options as this one. The summary is always reported in the order the targets were
+ * given, with the wall clock time of the whole batch as the total.</p>
+ */
+public class BatchSynthesizer {
+
+    private static final String USAGE = "Usage: BatchSynthesizer <template> <output-dir> <dtap/vpc/application> ...";
+
+    private static final String DTAP = "dtap";
+    private static final String VPC = "vpc";
+    private static final String APPLICATION = "application";
+    private static final String THREADS = "threads";
+    private static final String FORKED = "batch.forked";
+
+    private final Class<? extends CdkIacTemplate> template;
+    private final Path outputDirectory;
+    private final int threads;
+
+    /**
+     * @param template Template class to synthesize
+     * @param outputDirectory directory that each target's stacks are written under
+     * @param threads number of targets synthesized at once, each in a JVM of its own when more than 1
+     */
+    BatchSynthesizer(Class<? extends CdkIacTemplate> template, Path outputDirectory, int threads) {
+        this.template = template;
+        this.outputDirectory = outputDirectory;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Synthesizes the targets. A failing target does not stop the remaining targets being synthesized.
+     * @param targets dtap/vpc/application combinations
+     * @return a Result per target, in the same order as the targets
+     */
+    List<Result> synthesize(List<SynthesisTarget> targets) {
+
+        List<Result> results = new ArrayList<>();
+
+        if (threads == 1 || targets.size() < 2) {
+            for (SynthesisTarget target : targets) {
+                results.add(synthesize(target));
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, targets.size()));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (SynthesisTarget target : targets) {
+                futures.add(executor.submit(() -> fork(target)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(await(targets.get(i), futures.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Expands a target pattern into the targets that exist in the resources folders
+     * @param pattern dtap/vpc/application where each part may be a glob
+     * @return matching targets, sorted by name
+     * @throws TemplateException Thrown if the pattern is not in a recognised format
+     */
+    static List<SynthesisTarget> expand(String pattern) throws TemplateException {
+
+        SynthesisTarget target;
+        try {
+            target = SynthesisTarget.parse(pattern);
+        } catch (IllegalArgumentException e) {
+            throw new TemplateException(e.getMessage());
+        }
+
+        List<String> vpcs = target.hasVpc() ? match(VPC, target.getVpc()) : Collections.singletonList(null);
+
+        List<SynthesisTarget> targets = new ArrayList<>();
+        for (String dtap : match(DTAP, target.getDtap())) {
+            for (String vpc : vpcs) {
+                for (String application : match(APPLICATION, target.getApplication())) {
+                    targets.add(new SynthesisTarget(dtap, vpc, application));
+                }
+            }
+        }
+
+        return targets;
+    }
+
+    public static void main(final String[] args) {
+
+        if (args.length < 3) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            Class<? extends CdkIacTemplate> template = TemplateInvocation.resolve(args[0]);
+
+            if (Boolean.getBoolean(FORKED)) {
+                runForked(template, Paths.get(args[1]), SynthesisTarget.parse(args[2]));
+                return;
+            }
+
+            Set<SynthesisTarget> targets = new LinkedHashSet<>();
+            for (String pattern : Arrays.copyOfRange(args, 2, args.length)) {
+                targets.addAll(expand(pattern));
+            }
+
+            int threads = Integer.parseInt(System.getProperty(THREADS, "1"));
+
+            long start = System.nanoTime();
+            List<Result> results = new BatchSynthesizer(template, Paths.get(args[1]), threads).synthesize(new ArrayList<>(targets));
+            printSummary(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            for (Result result : results) {
+                if (!result.isSuccess()) {
+                    System.exit(1);
+                }
+            }
+
+        } catch (TemplateException | NumberFormatException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private Result synthesize(SynthesisTarget target) {
+
+        long start = System.nanoTime();
+        String error = null;
+
+        try {
+            TemplateInvocation.run(template, target, outputDirectory);
+        } catch (TemplateException e) {
+            error = e.getMessage();
+        }
+
+        return new Result(target, System.nanoTime() - start, error);
+    }
+
+    /**
+     * Synthesizes the target in a JVM of its own, whose output is printed in one piece once it has finished
+     */
+    private Result fork(SynthesisTarget target) {
+
+        long start = System.nanoTime();
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(forkedJvmArguments());
+        command.add("-D" + FORKED + "=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BatchSynthesizer.class.getName());
+        command.add(template.getName());
+        command.add(outputDirectory.toString());
+        command.add(target.toString());
+
+        Process process = null;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+            List<String> output = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.add(line);
+                }
+            }
+
+            int exitCode = process.waitFor();
+
+            synchronized (System.out) {
+                output.forEach(System.out::println);
+            }
+
+            return new Result(target, System.nanoTime() - start, exitCode == 0 ? null : forkedError(output, exitCode));
+
+        } catch (IOException e) {
+            return new Result(target, System.nanoTime() - start, "Unable to run " + command.get(0) + " : " + e.getMessage());
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            return new Result(target, System.nanoTime() - start, "Interrupted");
+        }
+    }
+
+    /**
+     * The -D and -X options of this JVM, less -Dthreads. Agents are left out, a debugger or profiler would clash over
+     * its port or output file.
+     */
+    private static List<String> forkedJvmArguments() {
+
+        List<String> arguments = new ArrayList<>();
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if ((argument.startsWith("-D") && !argument.startsWith("-D" + THREADS + "=")) || argument.startsWith("-X")) {
+                arguments.add(argument);
+            }
+        }
+
+        return arguments;
+    }
+
+    /**
+     * @return the error a forked JVM printed last, see {@link #runForked(Class, Path, SynthesisTarget)}
+     */
+    private static String forkedError(List<String> output, int exitCode) {
+
+        for (int i = output.size() - 1; i >= 0; i--) {
+            if (!output.get(i).trim().isEmpty()) {
+                return output.get(i);
+            }
+        }
+
+        return "Exited with code " + exitCode;
+    }
+
+    /**
+     * Entry point of a forked JVM, which synthesizes one target and prints the error last if it fails
+     */
+    private static void runForked(Class<? extends CdkIacTemplate> template, Path outputDirectory, SynthesisTarget target) {
+
+        try {
+            TemplateInvocation.run(template, target, outputDirectory);
+        } catch (TemplateException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static Result await(SynthesisTarget target, Future<Result> future) {
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return new Result(target, 0, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(target, 0, "Interrupted");
+        }
+    }
+
+    private static List<String> match(String directory, String pattern) throws TemplateException {
+
+        if (!pattern.contains("*") && !pattern.contains("?") && !pattern.contains("{")) {
+            return Collections.singletonList(pattern);
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        List<String> names = new ArrayList<>();
+        for (String name : listResources(directory)) {
+            if (matcher.matches(Paths.get(name))) {
+                names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    private static List<String> listResources(String directory) throws TemplateException {
+
+        try {
+            return new ArrayList<>(PropertyLoader.list(directory));
+        } catch (IOException e) {
+            throw new TemplateException("Unable to list resources/" + directory);
+        }
+    }
+
+    private static void printSummary(List<Result> results, long wallMillis) {
+
+        int failed = 0;
+
+        for (Result result : results) {
+            System.out.println(String.format("%-50s %8d ms  %s",
+                    result.getTarget(),
+                    result.getMillis(),
+                    result.isSuccess() ? "OK" : "FAILED " + result.getError()));
+
+            if (!result.isSuccess()) {
+                failed++;
+            }
+        }
+
+        System.out.println(String.format("%-50s %8d ms  %d targets, %d failed", "Total", wallMillis, results.size(), failed));
+
+        SynthesisCache cache = SynthesisCache.current();
+        if (cache != null) {
+            System.out.println(cache.report());
+        }
+    }
+
+    /**
+     * Outcome of synthesizing a single target
+     */
+    static final class Result {
+
+        private final SynthesisTarget target;
+        private final long nanos;
+        private final String error;
+
+        Result(SynthesisTarget target, long nanos, String error) {
+            this.target = target;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        SynthesisTarget getTarget() {
+            return target;
+        }
+
+        long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        /**
+         * @return error message, or null if the target was synthesized
+         */
+        String getError() {
+            return error;
+        }
+
+        boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
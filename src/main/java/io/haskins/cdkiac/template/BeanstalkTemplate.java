@@ -49,6 +49,7 @@ public class BeanstalkTemplate extends CdkIacTemplate {
             new BeanstalkTemplate();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
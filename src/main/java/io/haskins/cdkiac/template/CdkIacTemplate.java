@@ -24,21 +24,22 @@
 
 package io.haskins.cdkiac.template;
 
+import io.haskins.cdkiac.stack.CdkIacStack;
 import io.haskins.cdkiac.stack.StackException;
 import io.haskins.cdkiac.utils.MissingPropertyException;
 import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.PropertyLoader;
+import io.haskins.cdkiac.utils.PropertyAccessTracker;
+import io.haskins.cdkiac.utils.PropertyValidation;
+import io.haskins.cdkiac.utils.SynthesisProfiler;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import org.apache.commons.io.FileUtils;
 import software.amazon.awscdk.App;
+import software.amazon.awscdk.IConstruct;
 
-import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Type;
-
-import java.net.URL;
-import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -50,15 +51,21 @@ abstract class CdkIacTemplate {
     private static final String VPC = "vpc";
     private static final String APPLICATION = "application";
     private static final String DRY_RUN = "dryrun";
+    private static final String DIFF = "diff";
+    private static final String CDK_OUTDIR = "CDK_OUTDIR";
 
-    private static final String RESOURCE_FILE_PATTERN = "%s/%s.json";
+    /**
+     * The jsii runtime talks to a single node process over one pipe, so only one Template at a time may define or
+     * synthesize its stacks. Loading properties and writing templates happen outside of this lock.
+     */
+    private static final Object JSII_LOCK = new Object();
 
     private boolean dryRun = false;
 
     /**
-     * An instance of AppProps
+     * An instance of AppProps, frozen once the properties files have been loaded
      */
-    protected final AppProps appProps = new AppProps();
+    protected final AppProps appProps;
 
     /**
      * Implementation of this method would provide the Stack Class that make up the application
@@ -69,17 +76,134 @@ abstract class CdkIacTemplate {
     protected abstract void defineStacks(App app) throws MissingPropertyException, StackException;
 
     /**
-     * Default constructor
+     * Default constructor. The dtap/vpc/application are read from the System Properties unless the Template is being
+     * run in process by the BatchSynthesizer or SynthesisServer, which may also ask for the stacks to be written to a
+     * directory per target. When run by the PropertyValidator the stacks are only defined, against a validating view of
+     * the properties. With -Ddryrun and -Ddiff=&lt;directory&gt; the stacks are synthesized in memory and compared with
+     * the templates in the directory by the {@link TemplateDiff} rather than written. With -Dprofile each phase of the
+     * run is measured by the {@link SynthesisProfiler}, and with -Dprops.tracking every property read is counted by the
+     * {@link PropertyAccessTracker}.
      */
     CdkIacTemplate() throws TemplateException {
 
-        try {
-            populateAppProps();
+        TemplateInvocation invocation = TemplateInvocation.current();
+        SynthesisTarget target = invocation == null
+                ? new SynthesisTarget(System.getProperty(DTAP), System.getProperty(VPC), System.getProperty(APPLICATION))
+                : invocation.getTarget();
+
+        try (SynthesisProfiler.Measurement run = SynthesisProfiler.startRun(getClass().getSimpleName(), target.toString());
+             PropertyAccessTracker.Run reads = PropertyAccessTracker.startRun(getClass().getSimpleName(), target.toString())) {
+
+            PropertyValidation validation = invocation == null ? null : invocation.getValidation();
+
+            // the stacks read through the tracking view, the incremental fingerprint reads the untracked snapshot so
+            // its reads aren't counted against the template
+            AppProps snapshot;
+
+            try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "loadProperties")) {
+                snapshot = populateAppProps(target);
+                AppProps loaded = reads.track(snapshot);
+                appProps = validation == null ? loaded : loaded.validating(validation);
+            }
+
+            if (validation != null) {
+                dryRun = true;
+            }
+
+            Path outputDirectory = outputDirectory(invocation);
+
+            SynthesisCache cache = dryRun || outputDirectory == null ? null : SynthesisCache.current();
+            String cacheKey = null;
+            if (cache != null) {
+                try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "cacheRestore")) {
+                    cacheKey = cache.key(getClass(), appProps);
+                    if (cache.restore(cacheKey, outputDirectory)) {
+                        reads.discard();
+                        return;
+                    }
+                }
+            }
+
+            Map<String, Object> templates = null;
+            Map<String, Object> dryRunTemplates = null;
+            Path diffBaseline = dryRun && validation == null ? diffBaseline(invocation) : null;
+
+            // CDK_OUTDIR is shared with other synths, so only the files this App writes there are cached
+            List<Path> written = null;
+
+            IncrementalStackWriter incremental = null;
+            if (!dryRun && IncrementalStackWriter.isEnabled() && invocation != null && invocation.getOutputDirectory() != null) {
+                incremental = new IncrementalStackWriter(outputDirectory, IncrementalStackWriter.isVerify());
+            }
+
+            SynthesisProfiler.Measurement lockWait = SynthesisProfiler.start(SynthesisProfiler.PHASE, "waitForJsii");
+            synchronized (JSII_LOCK) {
+                lockWait.close();
 
-            App app = new App();
-            defineStacks(app);
-            if (!dryRun) {
-                app.run();
+                App app;
+                try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "defineStacks")) {
+                    app = new App();
+                    try {
+                        defineStacks(app);
+                    } finally {
+                        if (validation != null) {
+                            recordPropertyKeys(app, validation);
+                        }
+                    }
+                }
+
+                if (diffBaseline != null) {
+                    try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "synthesize")) {
+                        dryRunTemplates = StackWriter.synthesize(app);
+                    }
+                } else if (!dryRun) {
+                    try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "synthesize")) {
+                        if (invocation == null || invocation.getOutputDirectory() == null) {
+                            Map<Path, String> before = cacheKey == null ? null : SynthesisCache.modified(outputDirectory);
+                            app.run();
+                            if (before != null) {
+                                written = SynthesisCache.writtenSince(outputDirectory, before);
+                            }
+                        } else if (incremental != null) {
+                            templates = incremental.synthesize(app, snapshot);
+                        } else {
+                            templates = StackWriter.synthesize(app);
+                        }
+                    }
+                }
+            }
+
+            if (dryRunTemplates != null) {
+                try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "diff")) {
+                    // only a batch gives each target a baseline of its own, otherwise it holds other Templates' stacks too
+                    if (invocation != null && invocation.getOutputDirectory() != null) {
+                        TemplateDiff.print(TemplateDiff.diff(diffBaseline, dryRunTemplates), System.out);
+                    } else {
+                        TemplateDiff.print(TemplateDiff.diffSynthesized(diffBaseline, dryRunTemplates), System.out);
+                    }
+                }
+            }
+
+            if (templates != null) {
+                Map<String, Long> sizes;
+                try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "write")) {
+                    if (incremental != null) {
+                        sizes = incremental.write(templates);
+                    } else {
+                        sizes = StackWriter.write(templates, outputDirectory);
+                    }
+                }
+                StackWriter.report(sizes, System.out);
+            }
+
+            if (cacheKey != null) {
+                try (SynthesisProfiler.Measurement phase = SynthesisProfiler.start(SynthesisProfiler.PHASE, "cacheStore")) {
+                    if (written != null) {
+                        cache.store(cacheKey, outputDirectory, written);
+                    } else {
+                        cache.store(cacheKey, outputDirectory);
+                    }
+                }
             }
         } catch(IOException | MissingPropertyException | StackException e) {
             throw new TemplateException(e.getMessage());
@@ -89,47 +213,45 @@ abstract class CdkIacTemplate {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     ///// private methods
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private void populateAppProps() throws IOException {
+    private Path outputDirectory(TemplateInvocation invocation) throws MissingPropertyException {
 
-        appProps.addProp("app_id", System.getProperty(APPLICATION));
-
-        if (System.getProperty(DTAP) != null && System.getProperty(DTAP).length() > 0) {
-            loadProperties(String.format(RESOURCE_FILE_PATTERN, DTAP, System.getProperty(DTAP)));
-            appProps.addProp("dtap", System.getProperty(DTAP));
+        if (invocation != null && invocation.getOutputDirectory() != null) {
+            return invocation.getOutputDirectory().resolve(appProps.getUniqueId());
         }
 
-        if (System.getProperty(VPC) != null && System.getProperty(VPC).length() > 0) {
-            loadProperties(String.format(RESOURCE_FILE_PATTERN, VPC, System.getProperty(VPC)));
-            appProps.addProp("vpc", System.getProperty(VPC));
+        String cdkOutputDirectory = System.getenv(CDK_OUTDIR);
+        return cdkOutputDirectory == null ? null : Paths.get(cdkOutputDirectory);
+    }
+
+    private Path diffBaseline(TemplateInvocation invocation) throws MissingPropertyException {
+
+        String diff = System.getProperty(DIFF);
+        if (diff == null || diff.isEmpty()) {
+            return null;
         }
 
-        if (System.getProperty(DRY_RUN) != null && System.getProperty(DRY_RUN).length() > 0) {
-            dryRun = true;
+        if (invocation != null && invocation.getOutputDirectory() != null) {
+            return Paths.get(diff).resolve(appProps.getUniqueId());
         }
 
-        loadProperties(String.format(RESOURCE_FILE_PATTERN, APPLICATION, System.getProperty(APPLICATION)));
+        return Paths.get(diff);
     }
 
-    private void loadProperties(String property) throws IOException {
+    private static void recordPropertyKeys(App app, PropertyValidation validation) {
 
-        ClassLoader classLoader = getClass().getClassLoader();
-        URL url = classLoader.getResource(property);
-        try {
-            File file = new File(url.getFile());
-            String data = FileUtils.readFileToString(file, Charset.forName("utf-8"));
-            addProperties(data);
-        } catch (NullPointerException e) {
-            throw new IOException("Unable to load property file : resources/" + property);
+        for (IConstruct child : app.getNode().getChildren()) {
+            if (child instanceof CdkIacStack) {
+                validation.read(((CdkIacStack) child).getName(), ((CdkIacStack) child).getPropertyKeys());
+            }
         }
-
     }
 
-    private void addProperties(String file) {
+    private AppProps populateAppProps(SynthesisTarget target) throws IOException {
 
-        Gson gson = new Gson();
-        Type type = new TypeToken<Map<String, String>>(){}.getType();
-        Map<String, String> myMap = gson.fromJson(file, type);
+        if (System.getProperty(DRY_RUN) != null && System.getProperty(DRY_RUN).length() > 0) {
+            dryRun = true;
+        }
 
-        myMap.forEach(appProps::addProp);
+        return PropertyLoader.load(target.getDtap(), target.getVpc(), target.getApplication()).toAppProps().freeze();
     }
 }
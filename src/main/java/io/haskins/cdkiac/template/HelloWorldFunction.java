@@ -49,6 +49,7 @@ public class HelloWorldFunction extends CdkIacTemplate {
             new HelloWorldFunction();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
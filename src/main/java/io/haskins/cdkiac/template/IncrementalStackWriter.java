@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.stack.CdkIacStack;
+import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.MissingPropertyException;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.IConstruct;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.cxapi.SynthesizedStack;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Only synthesizes the stacks whose inputs have changed since they were last written to a directory. Enabled with
+ * <b>-Dincremental=true</b> when the Template writes its own output, i.e. from the BatchSynthesizer.</p>
+ *
+ * <p>The fingerprint of a stack is a hash of the compiled classes, the stack's class and name, whether the template is
+ * minified, and the key and value of every property the stack read while it was defined. The fingerprints are kept in
+ * the output directory, and a stack whose fingerprint is unchanged and whose template file still exists is not
+ * synthesized again. The stacks still have to be defined, as that is when their properties are read.</p>
+ *
+ * <p>Add <b>-Dincremental.verify=true</b> to synthesize every stack anyway and fail if the template of a stack that would
+ * have been skipped is not byte for byte the same as the one on disk.</p>
+ */
+final class IncrementalStackWriter {
+
+    private static final String INCREMENTAL = "incremental";
+    private static final String INCREMENTAL_VERIFY = "incremental.verify";
+
+    private static final String FINGERPRINTS_FILE = ".fingerprints.json";
+    private static final String MISSING = "\u0000missing";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Path directory;
+    private final boolean verify;
+    private final Map<String, String> previous;
+    private final Map<String, String> current = new TreeMap<>();
+
+    private int skipped;
+
+    /**
+     * @param directory directory the templates are written to
+     * @param verify true to synthesize every stack and check the skipped ones are unchanged
+     * @throws IOException Thrown if the previous fingerprints could not be read
+     */
+    IncrementalStackWriter(Path directory, boolean verify) throws IOException {
+        this.directory = directory;
+        this.verify = verify;
+        this.previous = readFingerprints(directory.resolve(FINGERPRINTS_FILE));
+    }
+
+    /**
+     * @return true if -Dincremental is set
+     */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(INCREMENTAL));
+    }
+
+    /**
+     * @return true if -Dincremental.verify is set
+     */
+    static boolean isVerify() {
+        return Boolean.parseBoolean(System.getProperty(INCREMENTAL_VERIFY));
+    }
+
+    /**
+     * Synthesizes the stacks whose fingerprint has changed
+     * @param app CDK App containing the stacks
+     * @param appProps the properties the stacks were defined with
+     * @return CloudFormation template of each changed stack keyed by stack name
+     * @throws IOException Thrown if code could not be hashed or a template could not be read
+     * @throws TemplateException Thrown when verifying and a skipped stack's template has changed
+     */
+    Map<String, Object> synthesize(App app, AppProps appProps) throws IOException, TemplateException {
+
+        Map<String, Object> templates = new LinkedHashMap<>();
+        List<String> stale = new ArrayList<>();
+
+        for (IConstruct child : app.getNode().getChildren()) {
+
+            if (!(child instanceof Stack)) {
+                continue;
+            }
+
+            Stack stack = (Stack) child;
+            String fingerprint = child instanceof CdkIacStack ? fingerprint((CdkIacStack) child, appProps) : null;
+            if (fingerprint != null) {
+                current.put(stack.getName(), fingerprint);
+            }
+
+            boolean unchanged = fingerprint != null
+                    && fingerprint.equals(previous.get(stack.getName()))
+                    && Files.isRegularFile(StackWriter.templateFile(directory, stack.getName()));
+
+            if (unchanged && !verify) {
+                skipped++;
+                continue;
+            }
+
+            SynthesizedStack synthesized = app.synthesizeStack(stack.getName());
+
+            if (unchanged) {
+                skipped++;
+                byte[] written = Files.readAllBytes(StackWriter.templateFile(directory, stack.getName()));
+                if (!Arrays.equals(written, StackWriter.toBytes(synthesized.getTemplate()))) {
+                    stale.add(stack.getName());
+                }
+            } else {
+                templates.put(synthesized.getName(), synthesized.getTemplate());
+            }
+        }
+
+        if (!stale.isEmpty()) {
+            throw new TemplateException("Incremental output differs from a full synth for stacks : " + String.join(", ", stale));
+        }
+
+        return templates;
+    }
+
+    /**
+     * Writes the changed templates and the fingerprints, and removes the templates of stacks that no longer exist
+     * @param templates CloudFormation templates keyed by stack name
+     * @return size in bytes of each written template keyed by stack name
+     * @throws IOException Thrown if a template could not be written
+     */
+    Map<String, Long> write(Map<String, Object> templates) throws IOException {
+
+        Map<String, Long> sizes = StackWriter.write(templates, directory);
+
+        for (String stackName : previous.keySet()) {
+            if (!current.containsKey(stackName)) {
+                Files.deleteIfExists(StackWriter.templateFile(directory, stackName));
+            }
+        }
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(directory.resolve(FINGERPRINTS_FILE).toFile(), current);
+
+        return sizes;
+    }
+
+    /**
+     * @return number of stacks that were not synthesized again
+     */
+    int getSkipped() {
+        return skipped;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static String fingerprint(CdkIacStack stack, AppProps appProps) throws IOException {
+
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(SynthesisCache.codeHash(), StandardCharsets.UTF_8)
+                .putString(stack.getClass().getName(), StandardCharsets.UTF_8)
+                .putString(stack.getName(), StandardCharsets.UTF_8)
+                .putBoolean(StackWriter.isMinified());
+
+        for (String key : stack.getPropertyKeys()) {
+
+            String value;
+            try {
+                value = String.valueOf(appProps.getProp(key));
+            } catch (MissingPropertyException e) {
+                value = MISSING;
+            }
+
+            hasher.putString(key, StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private static Map<String, String> readFingerprints(Path file) throws IOException {
+
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyMap();
+        }
+
+        return mapper.readValue(file.toFile(), new TypeReference<Map<String, String>>() { });
+    }
+}
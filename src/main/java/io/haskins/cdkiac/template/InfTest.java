@@ -48,6 +48,7 @@ public class InfTest extends CdkIacTemplate {
             new InfTest();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
\ No newline at end of file
@@ -48,6 +48,7 @@ public class InfluxDb  extends CdkIacTemplate {
             new InfluxDb();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
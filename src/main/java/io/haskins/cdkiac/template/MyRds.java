@@ -49,6 +49,7 @@ public class MyRds extends CdkIacTemplate {
             new MyRds();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
@@ -49,6 +49,7 @@ public class MyS3 extends CdkIacTemplate {
             new MyS3();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
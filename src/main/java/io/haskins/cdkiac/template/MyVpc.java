@@ -49,6 +49,7 @@ public class MyVpc extends CdkIacTemplate {
             new MyVpc();
         } catch (TemplateException e) {
             System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.LayeredProps;
+import io.haskins.cdkiac.utils.PropertyLoader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+
+/**
+ * <p>Prints every property of a number of targets as a tab separated matrix of key against target, with each value
+ * followed by the layer that supplied it. Keys whose value differs between targets are marked with a *, which makes
+ * drift between environments easy to spot.</p>
+ *
+ * <p>Usage: <b>PropertyReport &lt;dtap/vpc/application&gt;...</b>, where each target may contain glob patterns as
+ * accepted by the BatchSynthesizer.</p>
+ */
+public class PropertyReport {
+
+    private static final String USAGE = "Usage: PropertyReport <dtap/vpc/application>...";
+
+    private static final String SEPARATOR = "\t";
+    private static final String MISSING = "-";
+    private static final String DRIFT = "*";
+
+    private final Map<SynthesisTarget, LayeredProps> targets = new LinkedHashMap<>();
+
+    /**
+     * Loads the properties for each target
+     * @param targets targets to report on
+     * @throws IOException Thrown if a properties file could not be loaded
+     */
+    PropertyReport(List<SynthesisTarget> targets) throws IOException {
+
+        for (SynthesisTarget target : targets) {
+            this.targets.put(target, PropertyLoader.load(target.getDtap(), target.getVpc(), target.getApplication()));
+        }
+    }
+
+    /**
+     * Prints the matrix
+     * @param out stream to print to
+     */
+    void print(PrintStream out) {
+
+        Set<String> keys = new TreeSet<>();
+        List<SortedMap<String, Object>> values = new ArrayList<>();
+        List<SortedMap<String, LayeredProps.Layer>> provenance = new ArrayList<>();
+
+        StringBuilder header = new StringBuilder("key");
+        for (Map.Entry<SynthesisTarget, LayeredProps> target : targets.entrySet()) {
+            header.append(SEPARATOR).append(target.getKey());
+            values.add(target.getValue().asMap());
+            provenance.add(target.getValue().getProvenance());
+            keys.addAll(target.getValue().asMap().keySet());
+        }
+        out.println(header.append(SEPARATOR).append("drift"));
+
+        for (String key : keys) {
+
+            StringBuilder row = new StringBuilder(key);
+            Set<Object> distinct = new HashSet<>();
+
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i).get(key);
+                distinct.add(value == null ? MISSING : value);
+                row.append(SEPARATOR).append(value == null ? MISSING : value + " [" + provenance.get(i).get(key) + "]");
+            }
+
+            out.println(row.append(SEPARATOR).append(distinct.size() > 1 ? DRIFT : ""));
+        }
+    }
+
+    public static void main(final String[] args) {
+
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            List<SynthesisTarget> targets = new ArrayList<>();
+            for (String pattern : args) {
+                targets.addAll(BatchSynthesizer.expand(pattern));
+            }
+
+            new PropertyReport(targets).print(System.out);
+        } catch (IOException | TemplateException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
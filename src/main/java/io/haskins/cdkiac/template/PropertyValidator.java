@@ -0,0 +1,197 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.PropertyValidation;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Checks the properties of one or more Templates against any number of targets in a single pass. The stacks of
+ * each target are defined against a validating view of its properties, so rather than stopping at the first
+ * MissingPropertyException every missing or unparsable property of every Stack is reported together. Nothing is
+ * synthesized or written.</p>
+ *
+ * <p>Usage: <b>PropertyValidator &lt;template&gt;[,&lt;template&gt;...] &lt;dtap/vpc/application&gt; ...</b>, where
+ * each target may contain glob patterns as accepted by the BatchSynthesizer.</p>
+ */
+public class PropertyValidator {
+
+    private static final String USAGE = "Usage: PropertyValidator <template>[,<template>...] <dtap/vpc/application> ...";
+
+    private final List<Class<? extends CdkIacTemplate>> templates;
+
+    /**
+     * @param templates Template classes to validate
+     */
+    PropertyValidator(List<Class<? extends CdkIacTemplate>> templates) {
+        this.templates = templates;
+    }
+
+    /**
+     * Validates every Template against every target. A target that fails for a reason other than a property does not
+     * stop the remaining targets being validated.
+     * @param targets dtap/vpc/application combinations
+     * @return a Result per Template and target
+     */
+    List<Result> validate(List<SynthesisTarget> targets) {
+
+        List<Result> results = new ArrayList<>();
+
+        for (Class<? extends CdkIacTemplate> template : templates) {
+            for (SynthesisTarget target : targets) {
+
+                PropertyValidation validation = new PropertyValidation();
+                String error = null;
+
+                try {
+                    TemplateInvocation.validate(template, target, validation);
+                } catch (TemplateException e) {
+                    error = e.getMessage();
+                }
+
+                results.add(new Result(template.getSimpleName(), target, validation, error));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Prints the problems of each Template and target, followed by a summary
+     * @param results results of {@link #validate(List)}
+     * @param out stream to print to
+     * @return true if every target is valid
+     */
+    static boolean print(List<Result> results, PrintStream out) {
+
+        int invalid = 0;
+        int problems = 0;
+
+        for (Result result : results) {
+
+            if (result.isValid()) {
+                continue;
+            }
+
+            invalid++;
+            out.println(result.getTemplate() + " " + result.getTarget());
+
+            for (Map.Entry<String, String> problem : result.getValidation().getProblems().entrySet()) {
+                Set<String> stacks = result.getValidation().getStacks(problem.getKey());
+                out.println(String.format("    %-40s %-50s %s",
+                        problem.getKey(),
+                        problem.getValue(),
+                        stacks.isEmpty() ? "" : String.join(", ", stacks)));
+                problems++;
+            }
+
+            if (result.getError() != null) {
+                out.println("    FAILED " + result.getError());
+                problems++;
+            }
+        }
+
+        out.println(String.format("%d targets, %d invalid, %d problems", results.size(), invalid, problems));
+
+        return invalid == 0;
+    }
+
+    public static void main(final String[] args) {
+
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            List<Class<? extends CdkIacTemplate>> templates = new ArrayList<>();
+            for (String name : args[0].split(",")) {
+                templates.add(TemplateInvocation.resolve(name.trim()));
+            }
+
+            Set<SynthesisTarget> targets = new LinkedHashSet<>();
+            for (String pattern : Arrays.copyOfRange(args, 1, args.length)) {
+                targets.addAll(BatchSynthesizer.expand(pattern));
+            }
+
+            List<Result> results = new PropertyValidator(templates).validate(new ArrayList<>(targets));
+            if (!print(results, System.out)) {
+                System.exit(1);
+            }
+
+        } catch (TemplateException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Outcome of validating a single Template and target
+     */
+    static final class Result {
+
+        private final String template;
+        private final SynthesisTarget target;
+        private final PropertyValidation validation;
+        private final String error;
+
+        Result(String template, SynthesisTarget target, PropertyValidation validation, String error) {
+            this.template = template;
+            this.target = target;
+            this.validation = validation;
+            this.error = error;
+        }
+
+        String getTemplate() {
+            return template;
+        }
+
+        SynthesisTarget getTarget() {
+            return target;
+        }
+
+        PropertyValidation getValidation() {
+            return validation;
+        }
+
+        /**
+         * @return error message if the stacks could not be defined, or null
+         */
+        String getError() {
+            return error;
+        }
+
+        boolean isValid() {
+            return error == null && validation.isValid();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.IConstruct;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.cxapi.SynthesizedStack;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Writes the CloudFormation template of each Stack in an App to its own directory, so that several Apps can be
+ * synthesized in the same process without sharing the CDK output directory.
+ *
+ * <p>Synthesizing and writing are separate steps so that only synthesizing needs to talk to the jsii runtime.</p>
+ *
+ * <p>Templates are streamed straight to their file with a JsonGenerator, rather than being rendered in memory first,
+ * and the keys of every object are written in sorted order so the same template always produces the same bytes. Add
+ * <b>-Dtemplate.minify=true</b> to leave out the whitespace, which helps a large template stay under the 51,200 byte
+ * limit for a template body passed directly to CloudFormation.</p>
+ */
+final class StackWriter {
+
+    /**
+     * Largest template that can be passed to CloudFormation directly rather than uploaded to S3 first
+     */
+    static final long MAX_TEMPLATE_BODY_BYTES = 51200;
+
+    private static final String TEMPLATE_MINIFY = "template.minify";
+    private static final String TEMPLATE_FILE_PATTERN = "%s.template.json";
+
+    private static final JsonFactory factory = new ObjectMapper().getFactory();
+
+    private StackWriter() { }
+
+    /**
+     * @param app CDK App containing the stacks
+     * @return CloudFormation template of each stack keyed by stack name, in the order the stacks were defined
+     */
+    static Map<String, Object> synthesize(App app) {
+
+        Map<String, Object> templates = new LinkedHashMap<>();
+
+        for (IConstruct child : app.getNode().getChildren()) {
+            if (child instanceof Stack) {
+                SynthesizedStack stack = app.synthesizeStack(((Stack) child).getName());
+                templates.put(stack.getName(), stack.getTemplate());
+            }
+        }
+
+        return templates;
+    }
+
+    /**
+     * @return true if -Dtemplate.minify is set
+     */
+    static boolean isMinified() {
+        return Boolean.parseBoolean(System.getProperty(TEMPLATE_MINIFY));
+    }
+
+    /**
+     * Writes the templates, minified if -Dtemplate.minify is set
+     * @param templates CloudFormation templates keyed by stack name
+     * @param directory directory to write the templates to
+     * @return size in bytes of each written template keyed by stack name
+     * @throws IOException Thrown if a template could not be written
+     */
+    static Map<String, Long> write(Map<String, Object> templates, Path directory) throws IOException {
+        return write(templates, directory, isMinified());
+    }
+
+    /**
+     * @param templates CloudFormation templates keyed by stack name
+     * @param directory directory to write the templates to
+     * @param minify true to write the templates without any whitespace
+     * @return size in bytes of each written template keyed by stack name
+     * @throws IOException Thrown if a template could not be written
+     */
+    static Map<String, Long> write(Map<String, Object> templates, Path directory, boolean minify) throws IOException {
+
+        Files.createDirectories(directory);
+
+        Map<String, Long> sizes = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Object> template : templates.entrySet()) {
+
+            OutputStream file = Files.newOutputStream(templateFile(directory, template.getKey()));
+            try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(file))) {
+                writeTemplate(template.getValue(), out, minify);
+                sizes.put(template.getKey(), out.getCount());
+            }
+        }
+
+        return sizes;
+    }
+
+    /**
+     * Prints the size of each template, and warns about those too large to pass to CloudFormation directly
+     * @param sizes size in bytes of each template keyed by stack name
+     * @param out stream to print to
+     */
+    static void report(Map<String, Long> sizes, PrintStream out) {
+
+        for (Map.Entry<String, Long> size : sizes.entrySet()) {
+            out.println(String.format("%-50s %10d bytes%s",
+                    size.getKey(),
+                    size.getValue(),
+                    size.getValue() > MAX_TEMPLATE_BODY_BYTES ? "  over " + MAX_TEMPLATE_BODY_BYTES + " bytes, deploy it from S3" : ""));
+        }
+    }
+
+    /**
+     * @param directory directory the templates are written to
+     * @param stackName name of the stack
+     * @return file the stack's template is written to
+     */
+    static Path templateFile(Path directory, String stackName) {
+        return directory.resolve(String.format(TEMPLATE_FILE_PATTERN, stackName));
+    }
+
+    /**
+     * @param template CloudFormation template
+     * @return the template exactly as it is written to its file, minified if -Dtemplate.minify is set
+     * @throws IOException Thrown if the template could not be serialized
+     */
+    static byte[] toBytes(Object template) throws IOException {
+        return toBytes(template, isMinified());
+    }
+
+    /**
+     * @param template CloudFormation template
+     * @param minify true to leave out any whitespace
+     * @return the template exactly as it is written to its file
+     * @throws IOException Thrown if the template could not be serialized
+     */
+    static byte[] toBytes(Object template, boolean minify) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTemplate(template, out, minify);
+
+        return out.toByteArray();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static void writeTemplate(Object template, OutputStream out, boolean minify) throws IOException {
+
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            if (!minify) {
+                generator.useDefaultPrettyPrinter();
+            }
+            writeValue(generator, template);
+        }
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+
+        if (value instanceof JsonNode && ((JsonNode) value).isObject()) {
+
+            SortedMap<String, Object> fields = new TreeMap<>();
+            ((JsonNode) value).fields().forEachRemaining(field -> fields.put(field.getKey(), field.getValue()));
+            writeValue(generator, fields);
+
+        } else if (value instanceof JsonNode && !((JsonNode) value).isArray()) {
+
+            generator.writeTree((JsonNode) value);
+
+        } else if (value instanceof Map) {
+
+            SortedMap<String, Object> fields = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((key, item) -> fields.put(String.valueOf(key), item));
+
+            generator.writeStartObject();
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                generator.writeFieldName(field.getKey());
+                writeValue(generator, field.getValue());
+            }
+            generator.writeEndObject();
+
+        } else if (value instanceof Iterable) {
+
+            generator.writeStartArray();
+            for (Object item : (Iterable<?>) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+
+        } else if (value instanceof Object[]) {
+
+            writeValue(generator, Arrays.asList((Object[]) value));
+
+        } else {
+            generator.writeObject(value);
+        }
+    }
+}
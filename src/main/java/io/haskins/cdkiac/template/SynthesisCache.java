@@ -0,0 +1,523 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.haskins.cdkiac.utils.AppProps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>On disk cache of synthesized output, keyed on a hash of the Template class name, the merged AppProps, the
+ * compiled project classes, the jars on the classpath and whether templates are minified. When the hash matches a
+ * previous synth the cached output is copied into place and the CDK App is never created.</p>
+ *
+ * <p>Enabled with <b>-Dcache=&lt;dir&gt;</b>. The cache is limited to <b>-Dcache.size</b> megabytes (default 256),
+ * the least recently used entries are evicted first. Running this class prints the cache statistics.</p>
+ *
+ * <p>The statistics are shared by every process using the cache. Each update is made under a lock on stats.lock,
+ * re-reading the file and adding this process's counts, so concurrent synths don't overwrite each other's.</p>
+ */
+public class SynthesisCache {
+
+    private static final String CACHE = "cache";
+    private static final String CACHE_SIZE = "cache.size";
+    private static final long DEFAULT_CACHE_SIZE_MB = 256;
+
+    private static final String STATS_FILE = "stats.properties";
+    private static final String STATS_LOCK = "stats.lock";
+    private static final String HITS = "hits";
+    private static final String MISSES = "misses";
+    private static final String BYTES_SAVED = "bytes_saved";
+
+    private static final String TEMP_PREFIX = ".";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String CODE_PACKAGE = "io/haskins/cdkiac";
+
+    private static SynthesisCache instance;
+    private static String codeHash;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    // counted by this process but not yet added to stats.properties
+    private long pendingHits;
+    private long pendingMisses;
+    private long pendingBytesSaved;
+
+    /**
+     * @param directory directory to hold the cache
+     * @param maxBytes maximum size of the cache before entries are evicted
+     */
+    SynthesisCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        loadStats();
+    }
+
+    /**
+     * @return the cache configured by -Dcache, or null if caching is not enabled
+     */
+    static synchronized SynthesisCache current() {
+
+        String cacheDirectory = System.getProperty(CACHE);
+        if (cacheDirectory == null || cacheDirectory.length() == 0) {
+            return null;
+        }
+
+        Path path = Paths.get(cacheDirectory).toAbsolutePath();
+        if (instance == null || !instance.directory.equals(path)) {
+            long megabytes = Long.parseLong(System.getProperty(CACHE_SIZE, String.valueOf(DEFAULT_CACHE_SIZE_MB)));
+            instance = new SynthesisCache(path, megabytes * 1024 * 1024);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Generates the cache key for a Template and its properties
+     * @param template Template class
+     * @param appProps loaded properties
+     * @return hex encoded SHA-256
+     * @throws IOException Thrown if the compiled classes could not be read
+     */
+    String key(Class<?> template, AppProps appProps) throws IOException {
+
+        MessageDigest digest = sha256();
+        update(digest, template.getName());
+
+        // values are hashed as JSON, so the string "1" and the number 1, or a list and a string that looks like one,
+        // give different keys
+        for (Map.Entry<String, Object> prop : appProps.asMap().entrySet()) {
+            update(digest, prop.getKey());
+            update(digest, mapper.writeValueAsString(prop.getValue()));
+        }
+
+        update(digest, codeHash());
+
+        // -Dtemplate.minify changes the bytes written, so pretty printed and minified output are cached apart
+        update(digest, String.valueOf(StackWriter.isMinified()));
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * Copies a cached synth into place
+     * @param key cache key
+     * @param destination directory the output should be written to
+     * @return true if the key was in the cache
+     * @throws IOException Thrown if the cached output could not be copied
+     */
+    boolean restore(String key, Path destination) throws IOException {
+
+        Path entry = directory.resolve(key);
+        if (!Files.isDirectory(entry)) {
+            // counted as a miss by store, once the synth has succeeded
+            return false;
+        }
+
+        long bytes = copy(entry, destination);
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+        synchronized (this) {
+            pendingHits++;
+            pendingBytesSaved += bytes;
+        }
+        saveStats();
+
+        return true;
+    }
+
+    /**
+     * Adds a synth to the cache, evicting the least recently used entries if the cache is too large, and counts the
+     * miss that caused it
+     * @param key cache key
+     * @param source directory containing the synthesized output, every file in it belongs to this synth
+     * @throws IOException Thrown if the output could not be copied into the cache
+     */
+    void store(String key, Path source) throws IOException {
+
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+
+        store(key, source, files(source));
+    }
+
+    /**
+     * Adds some of the files in a directory to the cache. Used when the output directory is shared with other synths,
+     * CDK_OUTDIR for example, so that only the files written by this synth are cached.
+     * @param key cache key
+     * @param source directory containing the synthesized output
+     * @param files the files in source written by this synth
+     * @throws IOException Thrown if the output could not be copied into the cache
+     */
+    void store(String key, Path source, Collection<Path> files) throws IOException {
+
+        Path entry = directory.resolve(key);
+        if (!Files.isDirectory(entry)) {
+            Path temp = directory.resolve(TEMP_PREFIX + UUID.randomUUID());
+            Files.createDirectories(temp);
+            for (Path file : files) {
+                Path target = temp.resolve(file.toString());
+                Files.createDirectories(target.getParent());
+                Files.copy(source.resolve(file), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // another synth stored the same key first
+                delete(temp);
+            }
+
+            evict();
+        }
+
+        synchronized (this) {
+            pendingMisses++;
+        }
+        saveStats();
+    }
+
+    /**
+     * Records the state of every file in a directory, to be handed to {@link #writtenSince(Path, Map)}
+     * @param directory output directory, which need not exist yet
+     * @return last modified time, size and content hash of each file, relative to the directory
+     * @throws IOException Thrown if the directory could not be read
+     */
+    static Map<Path, String> modified(Path directory) throws IOException {
+
+        Map<Path, String> modified = new HashMap<>();
+        if (Files.isDirectory(directory)) {
+            for (Path file : files(directory)) {
+                Path path = directory.resolve(file);
+                MessageDigest digest = sha256();
+                digest.update(Files.readAllBytes(path));
+                modified.put(file, Files.getLastModifiedTime(path) + " " + Files.size(path) + " " + hex(digest.digest()));
+            }
+        }
+
+        return modified;
+    }
+
+    /**
+     * A file counts as written if it is new or its modified time, size or contents have changed, so a rewrite within
+     * the resolution of the file system's timestamps is still seen unless it wrote exactly the same bytes
+     * @param directory output directory
+     * @param before the result of {@link #modified(Path)} before the synth
+     * @return the files, relative to the directory, that were created or rewritten since
+     * @throws IOException Thrown if the directory could not be read
+     */
+    static List<Path> writtenSince(Path directory, Map<Path, String> before) throws IOException {
+
+        List<Path> written = new ArrayList<>();
+        for (Map.Entry<Path, String> file : modified(directory).entrySet()) {
+            if (!file.getValue().equals(before.get(file.getKey()))) {
+                written.add(file.getKey());
+            }
+        }
+
+        return written;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return a one line summary of the cache statistics
+     */
+    String report() {
+        return String.format("cache %s : %d hits, %d misses, %d bytes saved", directory, getHits(), getMisses(), getBytesSaved());
+    }
+
+    public static void main(final String[] args) {
+
+        SynthesisCache cache = current();
+        if (cache == null) {
+            System.out.println("Caching is not enabled, use -D" + CACHE + "=<dir>");
+            System.exit(1);
+        }
+
+        System.out.println(cache.report());
+    }
+
+    /**
+     * Hash of the compiled project classes and the names of the jars on the classpath. Only calculated once per JVM
+     * as the classes can not change underneath a running JVM.
+     */
+    static synchronized String codeHash() throws IOException {
+
+        if (codeHash != null) {
+            return codeHash;
+        }
+
+        MessageDigest digest = sha256();
+
+        Path code = codeLocation();
+        if (Files.isDirectory(code)) {
+            Path classes = code.resolve(CODE_PACKAGE);
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(classes)) {
+                files = walk.filter(path -> path.toString().endsWith(CLASS_EXTENSION)).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                update(digest, classes.relativize(file).toString());
+                digest.update(Files.readAllBytes(file));
+            }
+        } else {
+            digest.update(Files.readAllBytes(code));
+        }
+
+        List<String> jars = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (entry.endsWith(JAR_EXTENSION)) {
+                jars.add(Paths.get(entry).getFileName().toString());
+            }
+        }
+        Collections.sort(jars);
+        for (String jar : jars) {
+            update(digest, jar);
+        }
+
+        codeHash = hex(digest.digest());
+        return codeHash;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private synchronized void evict() throws IOException {
+
+        List<Path> entries;
+        try (Stream<Path> list = Files.list(directory)) {
+            entries = list.filter(Files::isDirectory)
+                    .filter(path -> !path.getFileName().toString().startsWith(TEMP_PREFIX))
+                    .collect(Collectors.toList());
+        }
+
+        List<Long> sizes = new ArrayList<>();
+        List<FileTime> accessed = new ArrayList<>();
+        long total = 0;
+        for (Path entry : entries) {
+            long size = size(entry);
+            sizes.add(size);
+            accessed.add(Files.getLastModifiedTime(entry));
+            total += size;
+        }
+
+        List<Integer> oldestFirst = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            oldestFirst.add(i);
+        }
+        oldestFirst.sort(Comparator.comparing(accessed::get));
+
+        for (int i : oldestFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            delete(entries.get(i));
+            total -= sizes.get(i);
+        }
+    }
+
+    private synchronized void loadStats() {
+
+        Path stats = directory.resolve(STATS_FILE);
+        if (!Files.exists(stats)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(stats)) {
+            properties.load(in);
+            hits.set(Long.parseLong(properties.getProperty(HITS, "0")));
+            misses.set(Long.parseLong(properties.getProperty(MISSES, "0")));
+            bytesSaved.set(Long.parseLong(properties.getProperty(BYTES_SAVED, "0")));
+        } catch (IOException | NumberFormatException e) {
+            // start the statistics again
+        }
+    }
+
+    /**
+     * Adds this process's counts to stats.properties under a file lock, then picks up the totals written by everyone
+     * else. The file is replaced with an atomic rename, so a reader never sees it half written.
+     */
+    private synchronized void saveStats() throws IOException {
+
+        Files.createDirectories(directory);
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(STATS_LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+
+            loadStats();
+
+            Properties properties = new Properties();
+            properties.setProperty(HITS, String.valueOf(hits.get() + pendingHits));
+            properties.setProperty(MISSES, String.valueOf(misses.get() + pendingMisses));
+            properties.setProperty(BYTES_SAVED, String.valueOf(bytesSaved.get() + pendingBytesSaved));
+
+            Path temp = directory.resolve(TEMP_PREFIX + STATS_FILE + "." + UUID.randomUUID());
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, directory.resolve(STATS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            hits.addAndGet(pendingHits);
+            misses.addAndGet(pendingMisses);
+            bytesSaved.addAndGet(pendingBytesSaved);
+            pendingHits = 0;
+            pendingMisses = 0;
+            pendingBytesSaved = 0;
+        }
+    }
+
+    private static Path codeLocation() throws IOException {
+
+        CodeSource codeSource = SynthesisCache.class.getProtectionDomain().getCodeSource();
+        try {
+            return Paths.get(codeSource.getLocation().toURI());
+        } catch (URISyntaxException | NullPointerException e) {
+            throw new IOException("Unable to locate the compiled classes");
+        }
+    }
+
+    private static long copy(Path source, Path destination) throws IOException {
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(source)) {
+            paths = walk.collect(Collectors.toList());
+        }
+
+        long bytes = 0;
+        for (Path path : paths) {
+            Path target = destination.resolve(source.relativize(path).toString());
+            if (Files.isDirectory(path)) {
+                Files.createDirectories(target);
+            } else {
+                Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+                bytes += Files.size(path);
+            }
+        }
+
+        return bytes;
+    }
+
+    private static List<Path> files(Path directory) throws IOException {
+
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile).map(directory::relativize).collect(Collectors.toList());
+        }
+    }
+
+    private static long size(Path directory) throws IOException {
+
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * <p>Thin client for the {@link SynthesisServer}. It only needs target/classes on its classpath, so it starts far
+ * quicker than running a Template directly, and can be used as the CDK --app command.</p>
+ *
+ * <p>Usage: <b>SynthesisClient &lt;template&gt; &lt;dtap/vpc/application&gt;</b></p>
+ *
+ * <p>Output is written to the CDK_OUTDIR environment variable set by the CDK CLI, or to <b>-Doutdir</b> (default
+ * cdk.out) when run by hand.</p>
+ */
+public class SynthesisClient {
+
+    private static final String USAGE = "Usage: SynthesisClient <template> <dtap/vpc/application>";
+
+    private static final String CDK_OUTDIR = "CDK_OUTDIR";
+    private static final String OUTDIR = "outdir";
+    private static final String DEFAULT_OUTDIR = "cdk.out";
+
+    private SynthesisClient() { }
+
+    /**
+     * Sends a single synthesis request
+     * @param port port the server is listening on
+     * @param template name of the Template
+     * @param target dtap/vpc/application
+     * @param outputDirectory directory the output should be written to
+     * @return the server's response
+     * @throws IOException Thrown if the server could not be reached
+     */
+    static String send(int port, String template, String target, String outputDirectory) throws IOException {
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(template + SynthesisServer.SEPARATOR + target + SynthesisServer.SEPARATOR + outputDirectory + "\n");
+            out.flush();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String response = in.readLine();
+
+            return response == null ? SynthesisServer.ERROR + SynthesisServer.SEPARATOR + "No response" : response;
+        }
+    }
+
+    public static void main(final String[] args) {
+
+        if (args.length != 2) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        int port = Integer.parseInt(System.getProperty(SynthesisServer.PORT, String.valueOf(SynthesisServer.DEFAULT_PORT)));
+
+        String outputDirectory = System.getenv(CDK_OUTDIR);
+        if (outputDirectory == null) {
+            outputDirectory = System.getProperty(OUTDIR, DEFAULT_OUTDIR);
+        }
+
+        try {
+            String response = send(port, args[0], args[1], Paths.get(outputDirectory).toAbsolutePath().toString());
+
+            if (!response.startsWith(SynthesisServer.OK + SynthesisServer.SEPARATOR)) {
+                System.out.println(response.substring(response.indexOf(SynthesisServer.SEPARATOR) + 1));
+                System.exit(1);
+            }
+
+        } catch (IOException e) {
+            System.out.println("Unable to reach synthesis server on port " + port + " : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Long running synthesis server that keeps the classpath and jsii runtime warm between synths. Requests are sent by
+ * the {@link SynthesisClient}, which is small enough to be used as the CDK --app command.</p>
+ *
+ * <p>The server only listens on the loopback address, on the port given by <b>-Dport</b> (default 7575), and handles
+ * one request at a time.</p>
+ *
+ * <p>The server must be started with the <b>CDK_OUTDIR</b> environment variable set. CDK writes each synth to that
+ * directory, in the layout the CDK CLI reads, and the server then copies it to the directory the client asked for.
+ * That directory has to be inside <b>-Doutput.root</b>, which defaults to the directory the server was started in.
+ * Starting the server with <b>-Ddryrun=true</b> defines the stacks but never synthesizes them.</p>
+ *
+ * <p>A running JVM keeps the classes it has loaded, so once the compiled classes or jars on the classpath change the
+ * server would synthesize the old code. It checks the classpath before every request, and when it has changed the
+ * request fails and the server stops, so that it can be restarted with the new code.</p>
+ */
+public class SynthesisServer {
+
+    static final String PORT = "port";
+    static final int DEFAULT_PORT = 7575;
+
+    static final String SEPARATOR = "\t";
+    static final String OK = "OK";
+    static final String ERROR = "ERROR";
+
+    static final String OUTPUT_ROOT = "output.root";
+
+    private static final String CDK_OUTDIR = "CDK_OUTDIR";
+
+    private final Path cdkOutputDirectory;
+    private final Path outputRoot;
+    private final Callable<String> classpathFingerprint;
+    private final String startFingerprint;
+
+    private volatile boolean stale = false;
+
+    /**
+     * @param cdkOutputDirectory the CDK_OUTDIR the jsii runtime was started with
+     * @param outputRoot directory that clients may have the output copied into
+     * @param classpathFingerprint fingerprint of the code on the classpath, taken now and before every request
+     * @throws IOException Thrown if the classpath can not be fingerprinted
+     */
+    SynthesisServer(Path cdkOutputDirectory, Path outputRoot, Callable<String> classpathFingerprint) throws IOException {
+        this.cdkOutputDirectory = cdkOutputDirectory;
+        this.outputRoot = outputRoot.toAbsolutePath().normalize();
+        this.classpathFingerprint = classpathFingerprint;
+        this.startFingerprint = fingerprint(classpathFingerprint);
+    }
+
+    /**
+     * Handles requests until the socket is closed. A request that fails, e.g. because the client disconnected, is
+     * logged and the server carries on with the next one.
+     * @param serverSocket socket to accept requests on
+     * @throws IOException Thrown if there was a problem accepting a request
+     */
+    void serve(ServerSocket serverSocket) throws IOException {
+
+        while (!serverSocket.isClosed()) {
+
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+
+            try (Socket connection = client) {
+                handle(connection);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Request failed : " + e);
+            }
+
+            if (stale) {
+                serverSocket.close();
+            }
+        }
+    }
+
+    /**
+     * @return true if the server stopped because the classpath changed
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Fingerprint of every file on the classpath, from its path, size and modified time, so a compile or a new
+     * dependency changes it without the cost of hashing the contents
+     * @return fingerprint
+     * @throws IOException Thrown if the classpath can not be read
+     */
+    static String classpathFingerprint() throws IOException {
+
+        StringBuilder fingerprint = new StringBuilder();
+
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+
+            Path path = Paths.get(entry);
+            if (!Files.exists(path)) {
+                continue;
+            }
+
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(path)) {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+
+            for (Path file : files) {
+                fingerprint.append(file).append(' ')
+                        .append(Files.size(file)).append(' ')
+                        .append(Files.getLastModifiedTime(file).toMillis()).append('\n');
+            }
+        }
+
+        return fingerprint.toString();
+    }
+
+    public static void main(final String[] args) {
+
+        int port = Integer.parseInt(System.getProperty(PORT, String.valueOf(DEFAULT_PORT)));
+        Path outputRoot = Paths.get(System.getProperty(OUTPUT_ROOT, System.getProperty("user.dir")));
+
+        /*
+         * without CDK_OUTDIR the stacks could only be written by StackWriter, in a layout the CDK CLI can't read
+         */
+        String cdkOutputDirectory = System.getenv(CDK_OUTDIR);
+        if (cdkOutputDirectory == null || cdkOutputDirectory.isEmpty()) {
+            System.out.println("CDK_OUTDIR must be set, CDK writes each synth there for the server to copy to the client");
+            System.exit(1);
+        }
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+
+            SynthesisServer server = new SynthesisServer(Paths.get(cdkOutputDirectory), outputRoot, SynthesisServer::classpathFingerprint);
+
+            System.out.println("Synthesis server listening on " + serverSocket.getLocalSocketAddress() + ", writing inside " + server.outputRoot);
+            server.serve(serverSocket);
+
+            if (server.isStale()) {
+                System.out.println("The classpath has changed, restart the synthesis server");
+                System.exit(1);
+            }
+
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private void handle(Socket client) throws IOException {
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8);
+
+        String response;
+        try {
+            response = OK + SEPARATOR + synthesize(in.readLine());
+        } catch (TemplateException | RuntimeException e) {
+            response = ERROR + SEPARATOR + String.valueOf(e.getMessage()).replace('\n', ' ');
+        }
+
+        out.write(response + "\n");
+        out.flush();
+    }
+
+    /**
+     * @param request template, target and output directory separated by tabs
+     * @return time taken in milliseconds
+     */
+    private String synthesize(String request) throws TemplateException {
+
+        String[] parts = request == null ? new String[0] : request.split(SEPARATOR);
+        if (parts.length != 3) {
+            throw new TemplateException("Request must be <template>\\t<dtap/vpc/application>\\t<output-dir>");
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            if (!startFingerprint.equals(fingerprint(classpathFingerprint))) {
+                stale = true;
+                throw new TemplateException("The classpath has changed since the synthesis server started, restart it");
+            }
+        } catch (IOException e) {
+            throw new TemplateException(e.getMessage());
+        }
+
+        SynthesisTarget target;
+        try {
+            target = SynthesisTarget.parse(parts[1]);
+        } catch (IllegalArgumentException e) {
+            throw new TemplateException(e.getMessage());
+        }
+
+        Path outputDirectory = Paths.get(parts[2]).toAbsolutePath().normalize();
+
+        try {
+            // compared as real paths too, so a symbolic link inside the root can't lead out of it
+            if (!outputDirectory.startsWith(outputRoot) || !realPath(outputDirectory).startsWith(realPath(outputRoot))) {
+                throw new TemplateException("Output directory " + outputDirectory + " is not inside " + outputRoot);
+            }
+
+            clean(cdkOutputDirectory);
+            TemplateInvocation.run(TemplateInvocation.resolve(parts[0]), target, null);
+            copy(cdkOutputDirectory, outputDirectory);
+        } catch (IOException e) {
+            throw new TemplateException(e.getMessage());
+        }
+
+        return String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static String fingerprint(Callable<String> classpathFingerprint) throws IOException {
+
+        try {
+            return classpathFingerprint.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to fingerprint the classpath : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the real path of the deepest part of the path that exists, with the rest of the path appended
+     */
+    private static Path realPath(Path path) throws IOException {
+
+        Path existing = path;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+
+        return existing == null ? path : existing.toRealPath().resolve(existing.relativize(path));
+    }
+
+    private static void clean(Path directory) throws IOException {
+
+        if (!Files.exists(directory)) {
+            return;
+        }
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            if (!path.equals(directory)) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void copy(Path source, Path destination) throws IOException {
+
+        if (!Files.exists(source)) {
+            return;
+        }
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(source)) {
+            paths = walk.collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            Path target = destination.resolve(source.relativize(path).toString());
+            if (Files.isDirectory(path)) {
+                Files.createDirectories(target);
+            } else {
+                Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+/**
+ * <p>Identifies a single dtap / vpc / application combination to synthesize a Template against.</p>
+ *
+ * <p>The string form is <b>dtap/vpc/application</b>, the vpc may be left empty (<b>dev//wordpress</b>) or
+ * omitted (<b>dev/wordpress</b>).</p>
+ */
+public final class SynthesisTarget {
+
+    private static final String SEPARATOR = "/";
+
+    private final String dtap;
+    private final String vpc;
+    private final String application;
+
+    /**
+     * @param dtap name of the dtap properties file
+     * @param vpc name of the vpc properties file, may be null
+     * @param application name of the application properties file
+     */
+    public SynthesisTarget(String dtap, String vpc, String application) {
+        this.dtap = dtap;
+        this.vpc = vpc;
+        this.application = application;
+    }
+
+    /**
+     * Parses a target in the form dtap/vpc/application
+     * @param target e.g. dev/vpc-a/wordpress
+     * @return SynthesisTarget
+     * @throws IllegalArgumentException Thrown if the target is not in a recognised format
+     */
+    public static SynthesisTarget parse(String target) {
+
+        String[] parts = target.split(SEPARATOR, -1);
+        if (parts.length == 2) {
+            return new SynthesisTarget(parts[0], null, parts[1]);
+        } else if (parts.length == 3) {
+            return new SynthesisTarget(parts[0], parts[1].isEmpty() ? null : parts[1], parts[2]);
+        }
+
+        throw new IllegalArgumentException("Target must be in the form dtap/vpc/application : " + target);
+    }
+
+    public String getDtap() {
+        return dtap;
+    }
+
+    public String getVpc() {
+        return vpc;
+    }
+
+    public String getApplication() {
+        return application;
+    }
+
+    /**
+     * @return true if a vpc has been provided
+     */
+    public boolean hasVpc() {
+        return vpc != null && vpc.length() > 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof SynthesisTarget)) {
+            return false;
+        }
+
+        SynthesisTarget that = (SynthesisTarget) o;
+        return toString().equals(that.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return dtap + SEPARATOR + (hasVpc() ? vpc : "") + SEPARATOR + application;
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Compares two sets of synthesized CloudFormation templates without talking to AWS, so the effect of a code or
+ * property change can be seen offline, e.g. in CI.</p>
+ *
+ * <p>Each section of a template (Resources, Outputs, Parameters...) is indexed by logical ID, and every logical ID is
+ * looked up in the other template rather than searched for, so comparing templates with thousands of resources takes
+ * time proportional to their size. A logical ID is reported as added, removed or, for each property path that differs,
+ * modified.</p>
+ *
+ * <p>Usage: <b>TemplateDiff &lt;before&gt; &lt;after&gt;</b>, where both are a template file or a directory of
+ * templates such as a cdk.out directory or a BatchSynthesizer output directory. Exits with 1 if there are any
+ * differences.</p>
+ *
+ * <p>{@link #diff(JsonNode, JsonNode)} is public so the Stack snapshot tests can describe how a template differs from
+ * its golden copy.</p>
+ */
+public class TemplateDiff {
+
+    private static final String USAGE = "Usage: TemplateDiff <before> <after>";
+
+    private static final String TEMPLATE_SUFFIX = ".template.json";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The kind of a difference
+     */
+    public enum Kind {
+
+        ADDED("[+]"),
+        REMOVED("[-]"),
+        MODIFIED("[~]");
+
+        private final String symbol;
+
+        Kind(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    private TemplateDiff() { }
+
+    /**
+     * Compares two templates
+     * @param before template before the change, or null if the stack is new
+     * @param after template after the change, or null if the stack has been removed
+     * @return differences ordered by section and logical ID
+     */
+    public static List<Change> diff(JsonNode before, JsonNode after) {
+
+        JsonNode left = before == null ? MissingNode.getInstance() : before;
+        JsonNode right = after == null ? MissingNode.getInstance() : after;
+
+        SortedSet<String> sections = new TreeSet<>();
+        left.fieldNames().forEachRemaining(sections::add);
+        right.fieldNames().forEachRemaining(sections::add);
+
+        List<Change> changes = new ArrayList<>();
+
+        for (String section : sections) {
+
+            JsonNode leftSection = left.path(section);
+            JsonNode rightSection = right.path(section);
+
+            if (!leftSection.isObject() && !rightSection.isObject()) {
+                compare(section, null, "", leftSection, rightSection, changes);
+                continue;
+            }
+
+            SortedSet<String> logicalIds = new TreeSet<>();
+            leftSection.fieldNames().forEachRemaining(logicalIds::add);
+            rightSection.fieldNames().forEachRemaining(logicalIds::add);
+
+            for (String logicalId : logicalIds) {
+
+                JsonNode leftValue = leftSection.get(logicalId);
+                JsonNode rightValue = rightSection.get(logicalId);
+
+                if (leftValue == null) {
+                    changes.add(new Change(Kind.ADDED, section, logicalId, "", null, rightValue));
+                } else if (rightValue == null) {
+                    changes.add(new Change(Kind.REMOVED, section, logicalId, "", leftValue, null));
+                } else {
+                    compare(section, logicalId, "", leftValue, rightValue, changes);
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Compares every template under two directories, matched by their path relative to the directory
+     * @param before file or directory of templates before the change
+     * @param after file or directory of templates after the change
+     * @return differences of each stack that has changed, keyed by stack
+     * @throws IOException Thrown if a template could not be read
+     */
+    static SortedMap<String, List<Change>> diff(Path before, Path after) throws IOException {
+
+        SortedMap<String, Path> rightFiles = templates(after);
+        return diff(templates(before), rightFiles.keySet(), stack -> read(rightFiles.get(stack)));
+    }
+
+    /**
+     * Compares the templates under a directory with templates that have just been synthesized
+     * @param before file or directory of templates before the change
+     * @param after CloudFormation templates keyed by stack name
+     * @return differences of each stack that has changed, keyed by stack
+     * @throws IOException Thrown if a template could not be read
+     */
+    static SortedMap<String, List<Change>> diff(Path before, Map<String, Object> after) throws IOException {
+        return diff(templates(before), after.keySet(), stack -> after.containsKey(stack) ? mapper.valueToTree(after.get(stack)) : null);
+    }
+
+    /**
+     * Compares templates that have just been synthesized with the templates of the same stacks under a directory. Any
+     * other template under the directory is ignored, so the directory can be shared with other Templates' stacks, as
+     * cdk.out is. A stack that is no longer synthesized is therefore not reported as removed.
+     * @param before file or directory of templates before the change
+     * @param after CloudFormation templates keyed by stack name
+     * @return differences of each stack that has changed, keyed by stack
+     * @throws IOException Thrown if a template could not be read
+     */
+    static SortedMap<String, List<Change>> diffSynthesized(Path before, Map<String, Object> after) throws IOException {
+
+        SortedMap<String, Path> leftFiles = templates(before);
+        leftFiles.keySet().retainAll(after.keySet());
+
+        return diff(leftFiles, after.keySet(), stack -> mapper.valueToTree(after.get(stack)));
+    }
+
+    /**
+     * Prints the differences
+     * @param stackChanges differences keyed by stack
+     * @param out stream to print to
+     */
+    static void print(SortedMap<String, List<Change>> stackChanges, PrintStream out) {
+
+        for (Map.Entry<String, List<Change>> stack : stackChanges.entrySet()) {
+            out.println(stack.getKey());
+            for (Change change : stack.getValue()) {
+                out.println("    " + change);
+            }
+        }
+
+        int total = stackChanges.values().stream().mapToInt(List::size).sum();
+        out.println(String.format("%d stacks changed, %d differences", stackChanges.size(), total));
+    }
+
+    public static void main(final String[] args) {
+
+        if (args.length != 2) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            SortedMap<String, List<Change>> changes = diff(Paths.get(args[0]), Paths.get(args[1]));
+            print(changes, System.out);
+
+            if (!changes.isEmpty()) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static SortedMap<String, List<Change>> diff(SortedMap<String, Path> leftFiles,
+                                                        Set<String> rightStacks,
+                                                        Templates right) throws IOException {
+
+        SortedSet<String> stacks = new TreeSet<>(leftFiles.keySet());
+        stacks.addAll(rightStacks);
+
+        SortedMap<String, List<Change>> stackChanges = new TreeMap<>();
+
+        for (String stack : stacks) {
+            List<Change> changes = diff(read(leftFiles.get(stack)), rightStacks.contains(stack) ? right.get(stack) : null);
+            if (!changes.isEmpty()) {
+                stackChanges.put(stack, changes);
+            }
+        }
+
+        return stackChanges;
+    }
+
+    private static void compare(String section, String logicalId, String path, JsonNode left, JsonNode right, List<Change> changes) {
+
+        if (left.equals(right)) {
+            return;
+        }
+
+        if (left.isObject() && right.isObject()) {
+
+            SortedSet<String> fields = new TreeSet<>();
+            left.fieldNames().forEachRemaining(fields::add);
+            right.fieldNames().forEachRemaining(fields::add);
+
+            for (String field : fields) {
+                compare(section, logicalId, path.isEmpty() ? field : path + "." + field, left.path(field), right.path(field), changes);
+            }
+
+        } else if (left.isArray() && right.isArray()) {
+
+            for (int i = 0; i < Math.max(left.size(), right.size()); i++) {
+                compare(section, logicalId, path + "[" + i + "]", left.path(i), right.path(i), changes);
+            }
+
+        } else if (left.isMissingNode()) {
+            changes.add(new Change(Kind.ADDED, section, logicalId, path, null, right));
+        } else if (right.isMissingNode()) {
+            changes.add(new Change(Kind.REMOVED, section, logicalId, path, left, null));
+        } else {
+            changes.add(new Change(Kind.MODIFIED, section, logicalId, path, left, right));
+        }
+    }
+
+    private static SortedMap<String, Path> templates(Path root) throws IOException {
+
+        SortedMap<String, Path> files = new TreeMap<>();
+
+        if (Files.isRegularFile(root)) {
+            files.put(stackName(root.getFileName().toString()), root);
+            return files;
+        }
+
+        if (!Files.isDirectory(root)) {
+            return files;
+        }
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path file : paths.filter(path -> path.toString().endsWith(TEMPLATE_SUFFIX)).collect(Collectors.toList())) {
+                files.put(stackName(root.relativize(file).toString()), file);
+            }
+        }
+
+        return files;
+    }
+
+    private static String stackName(String file) {
+        return file.endsWith(TEMPLATE_SUFFIX) ? file.substring(0, file.length() - TEMPLATE_SUFFIX.length()) : file;
+    }
+
+    private static JsonNode read(Path file) throws IOException {
+        return file == null ? null : mapper.readTree(file.toFile());
+    }
+
+    /**
+     * Reads a template by stack name
+     */
+    private interface Templates {
+        JsonNode get(String stack) throws IOException;
+    }
+
+    /**
+     * A single difference between two templates
+     */
+    public static final class Change {
+
+        private final Kind kind;
+        private final String section;
+        private final String logicalId;
+        private final String path;
+        private final JsonNode before;
+        private final JsonNode after;
+
+        Change(Kind kind, String section, String logicalId, String path, JsonNode before, JsonNode after) {
+            this.kind = kind;
+            this.section = section;
+            this.logicalId = logicalId;
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getSection() {
+            return section;
+        }
+
+        /**
+         * @return logical ID the difference is in, or null if the section is not indexed by logical ID
+         */
+        public String getLogicalId() {
+            return logicalId;
+        }
+
+        /**
+         * @return path of the property that differs, empty if the whole logical ID was added or removed
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public JsonNode getBefore() {
+            return before;
+        }
+
+        public JsonNode getAfter() {
+            return after;
+        }
+
+        @Override
+        public String toString() {
+
+            StringBuilder text = new StringBuilder(kind.symbol).append(" ").append(section);
+            if (logicalId != null) {
+                text.append(".").append(logicalId);
+            }
+            if (!path.isEmpty()) {
+                text.append(" ").append(path);
+            }
+
+            if (path.isEmpty() && kind != Kind.MODIFIED) {
+                JsonNode value = kind == Kind.ADDED ? after : before;
+                if (value.has("Type")) {
+                    text.append(" ").append(value.get("Type").asText());
+                }
+            } else if (kind == Kind.MODIFIED) {
+                text.append(": ").append(before).append(" -> ").append(after);
+            } else {
+                text.append(": ").append(kind == Kind.ADDED ? after : before);
+            }
+
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.PropertyValidation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+
+/**
+ * <p>Runs a Template class in process against a SynthesisTarget, rather than the target described by the System
+ * Properties.</p>
+ *
+ * <p>The invocation is handed to the Template through a ThreadLocal so the existing private Template constructors
+ * can be used unchanged.</p>
+ */
+final class TemplateInvocation {
+
+    private static final String TEMPLATE_PACKAGE = "io.haskins.cdkiac.template.";
+
+    private static final ThreadLocal<TemplateInvocation> CURRENT = new ThreadLocal<>();
+
+    private final SynthesisTarget target;
+    private final Path outputDirectory;
+    private final PropertyValidation validation;
+
+    private TemplateInvocation(SynthesisTarget target, Path outputDirectory, PropertyValidation validation) {
+        this.target = target;
+        this.outputDirectory = outputDirectory;
+        this.validation = validation;
+    }
+
+    SynthesisTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * @return directory the synthesized stacks should be written under, or null to let CDK write them
+     */
+    Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * @return where missing and invalid properties are recorded, or null if the stacks should be synthesized
+     */
+    PropertyValidation getValidation() {
+        return validation;
+    }
+
+    /**
+     * @return the invocation for the current thread, or null if the Template was started from its main method
+     */
+    static TemplateInvocation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Resolves a Template class by its simple name, e.g. MyVpc
+     * @param name simple or fully qualified class name of the Template
+     * @return Template class
+     * @throws TemplateException Thrown if the class can not be found or is not a Template
+     */
+    static Class<? extends CdkIacTemplate> resolve(String name) throws TemplateException {
+
+        String className = name.contains(".") ? name : TEMPLATE_PACKAGE + name;
+
+        try {
+            Class<?> clazz = Class.forName(className);
+            if (!CdkIacTemplate.class.isAssignableFrom(clazz)) {
+                throw new TemplateException(className + " is not a Template");
+            }
+
+            return clazz.asSubclass(CdkIacTemplate.class);
+
+        } catch (ClassNotFoundException e) {
+            throw new TemplateException("Unable to find Template " + className);
+        }
+    }
+
+    /**
+     * Instantiates the Template, which loads the properties for the target and synthesizes the stacks
+     * @param template Template class
+     * @param target dtap/vpc/application to synthesize
+     * @param outputDirectory directory that stacks will be written under, or null to let CDK write them as usual
+     * @return the Template instance
+     * @throws TemplateException Thrown if there was a problem creating the Template
+     */
+    static CdkIacTemplate run(Class<? extends CdkIacTemplate> template,
+                              SynthesisTarget target,
+                              Path outputDirectory) throws TemplateException {
+        return instantiate(template, new TemplateInvocation(target, outputDirectory, null));
+    }
+
+    /**
+     * Instantiates the Template with a validating view of the properties for the target. The stacks are defined but
+     * not synthesized, and every missing or invalid property is recorded rather than stopping at the first one.
+     * @param template Template class
+     * @param target dtap/vpc/application to validate
+     * @param validation where the problems are recorded
+     * @throws TemplateException Thrown if the stacks could not be defined for a reason other than a property
+     */
+    static void validate(Class<? extends CdkIacTemplate> template,
+                         SynthesisTarget target,
+                         PropertyValidation validation) throws TemplateException {
+        instantiate(template, new TemplateInvocation(target, null, validation));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static CdkIacTemplate instantiate(Class<? extends CdkIacTemplate> template,
+                                              TemplateInvocation invocation) throws TemplateException {
+
+        CURRENT.set(invocation);
+
+        try {
+            Constructor<? extends CdkIacTemplate> constructor = template.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof TemplateException) {
+                throw (TemplateException) e.getCause();
+            }
+            throw new TemplateException(String.valueOf(e.getCause()));
+
+        } catch (ReflectiveOperationException e) {
+            throw new TemplateException("Unable to instantiate Template " + template.getName());
+
+        } finally {
+            CURRENT.remove();
+        }
+    }
+}
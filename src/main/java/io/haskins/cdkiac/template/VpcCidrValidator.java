@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.Cidr;
+import io.haskins.cdkiac.utils.CidrIntervalTree;
+import io.haskins.cdkiac.utils.LayeredProps;
+import io.haskins.cdkiac.utils.MissingPropertyException;
+import io.haskins.cdkiac.utils.PropertyLoader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>Checks that every <b>vpc_cidr</b> a target can resolve to is a valid CIDR block and that no two of them overlap,
+ * so any pair of VPCs can be peered and addresses are never handed out twice. The blocks are put in a
+ * {@link CidrIntervalTree}, so this stays quick however many VPCs there are.</p>
+ *
+ * <p>vpc_cidr is resolved through the dtap and vpc layers of {@link LayeredProps} for every dtap with every vpc, and
+ * for every dtap on its own, so a vpc_cidr set in a dtap file is checked as well as those in the vpc files. A dtap
+ * value that is the same block as a vpc file's describes that VPC rather than a second one, so it isn't reported as an
+ * overlap. Overrides from application files, system properties and environment variables are not checked.</p>
+ *
+ * <p>Usage: <b>VpcCidrValidator</b></p>
+ */
+public class VpcCidrValidator {
+
+    private static final String DTAP = "dtap";
+    private static final String VPC = "vpc";
+    private static final String VPC_CIDR = "vpc_cidr";
+
+    private final int vpcs;
+    private final List<String> problems = new ArrayList<>();
+
+    /**
+     * @param cidrs vpc_cidr of each vpc, by name, see {@link #resolve(Map, Map)}
+     */
+    VpcCidrValidator(Map<String, String> cidrs) {
+
+        this.vpcs = cidrs.size();
+
+        Map<String, Cidr> blocks = new TreeMap<>();
+        cidrs.forEach((vpc, cidr) -> {
+            try {
+                blocks.put(vpc, Cidr.parse(cidr));
+            } catch (IllegalArgumentException e) {
+                problems.add(vpc + " " + e.getMessage());
+            }
+        });
+
+        for (CidrIntervalTree.Overlap<String> overlap : CidrIntervalTree.of(blocks).overlaps()) {
+            problems.add(overlap.toString());
+        }
+    }
+
+    /**
+     * @return every vpc_cidr a target can resolve to, see {@link #resolve(Map, Map)}
+     * @throws IOException Thrown if a properties file could not be read
+     */
+    static Map<String, String> load() throws IOException {
+
+        Map<String, Map<String, Object>> dtaps = new TreeMap<>();
+        for (String dtap : PropertyLoader.list(DTAP)) {
+            dtaps.put(dtap, PropertyLoader.loadFile(DTAP, dtap));
+        }
+
+        Map<String, Map<String, Object>> vpcs = new TreeMap<>();
+        for (String vpc : PropertyLoader.list(VPC)) {
+            vpcs.put(vpc, PropertyLoader.loadFile(VPC, vpc));
+        }
+
+        return resolve(dtaps, vpcs);
+    }
+
+    /**
+     * @param dtaps properties of each dtap file
+     * @param vpcs properties of each vpc file
+     * @return the resolved vpc_cidr, named after the vpc when the vpc file sets it, after dtap/vpc when a dtap file
+     * supplies it to a vpc without one, and after the dtap for targets without a vpc
+     */
+    static Map<String, String> resolve(Map<String, Map<String, Object>> dtaps, Map<String, Map<String, Object>> vpcs) {
+
+        Map<String, String> cidrs = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Object>> vpc : vpcs.entrySet()) {
+            Object cidr = vpc.getValue().get(VPC_CIDR);
+            if (cidr != null) {
+                cidrs.put(vpc.getKey(), cidr.toString());
+            }
+        }
+
+        Set<String> fromVpcs = new HashSet<>(cidrs.values());
+        for (Map.Entry<String, Map<String, Object>> dtap : dtaps.entrySet()) {
+
+            // each block a dtap file resolves to is one VPC, whichever vpc file it is used with
+            Map<String, String> fromDtap = new TreeMap<>();
+            resolved(dtap.getValue(), null).ifPresent(cidr -> fromDtap.put(cidr, dtap.getKey()));
+
+            for (Map.Entry<String, Map<String, Object>> vpc : vpcs.entrySet()) {
+                if (!vpc.getValue().containsKey(VPC_CIDR)) {
+                    resolved(dtap.getValue(), vpc.getValue()).ifPresent(cidr -> fromDtap.putIfAbsent(cidr, dtap.getKey() + "/" + vpc.getKey()));
+                }
+            }
+
+            fromDtap.forEach((cidr, name) -> {
+                if (!fromVpcs.contains(cidr)) {
+                    cidrs.put(name, cidr);
+                }
+            });
+        }
+
+        return cidrs;
+    }
+
+    /**
+     * @return invalid and overlapping blocks, empty if there are none
+     */
+    List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @param out stream to print to
+     * @return true if there are no problems
+     */
+    boolean print(PrintStream out) {
+
+        problems.forEach(out::println);
+        out.println(String.format("%d vpcs, %d problems", vpcs, problems.size()));
+
+        return problems.isEmpty();
+    }
+
+    public static void main(final String[] args) {
+
+        try {
+            if (!new VpcCidrValidator(load()).print(System.out)) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static Optional<String> resolved(Map<String, Object> dtap, Map<String, Object> vpc) {
+
+        LayeredProps props = new LayeredProps();
+        props.addProps(LayeredProps.Layer.DTAP, dtap);
+        if (vpc != null) {
+            props.addProps(LayeredProps.Layer.VPC, vpc);
+        }
+
+        try {
+            return Optional.of(props.getProp(VPC_CIDR).toString());
+        } catch (MissingPropertyException e) {
+            return Optional.empty();
+        }
+    }
+}
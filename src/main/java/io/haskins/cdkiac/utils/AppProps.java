@@ -24,37 +24,211 @@
 
 package io.haskins.cdkiac.utils;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 /**
- * Utility model class for holding dtap/vpc/template specific configuration data
+ * <p>Utility model class for holding dtap/vpc/template specific configuration data</p>
+ *
+ * <p>A value is either a String, or a native JSON type as read from the properties files: a Number, a Boolean, a List
+ * or a Map of String to value. The typed getters return native values as they are, and only fall back to parsing when
+ * the value is a String, so "10" and 10 are both an Integer, and "a, b" and ["a", "b"] are both a List.</p>
+ *
+ * <p>Once the properties have been loaded call {@link #freeze()} to get an immutable snapshot. A frozen AppProps
+ * parses each typed value and the unique id only once and returns the same immutable instances on every call, so it
+ * can be shared safely between threads.</p>
  */
 public class AppProps {
 
-    private final Map<String, String> props = new HashMap<>();
+    private static final Splitter LIST_SPLITTER = Splitter.on(",").trimResults().omitEmptyStrings();
+    private static final Joiner LIST_JOINER = Joiner.on(",");
+
+    private static final String DTAP = "dtap";
+    private static final String VPC = "vpc";
+    private static final String APP_ID = "app_id";
+
+    private static final String PLACEHOLDER = "missing";
+    private static final Cidr PLACEHOLDER_CIDR = Cidr.parse("10.0.0.0/16");
+
+    private final Map<String, Object> props;
+
+    private final boolean frozen;
+    private final SortedMap<String, Object> sortedProps;
+    private final ConcurrentMap<String, Integer> integers;
+    private final ConcurrentMap<String, Boolean> booleans;
+    private final ConcurrentMap<String, List<String>> stringLists;
+    private final ConcurrentMap<String, List<Object>> objectLists;
+    private final ConcurrentMap<String, Cidr> cidrs;
+    private final Consumer<String> listener;
+    private final PropertyValidation validation;
+    private volatile String uniqueId;
+
+    public AppProps() {
+        this.props = new HashMap<>();
+        this.frozen = false;
+        this.sortedProps = null;
+        this.integers = null;
+        this.booleans = null;
+        this.stringLists = null;
+        this.objectLists = null;
+        this.cidrs = null;
+        this.listener = null;
+        this.validation = null;
+    }
+
+    private AppProps(Map<String, Object> props) {
+
+        Map<String, Object> copy = new HashMap<>();
+        props.forEach((key, value) -> {
+            if (value != null) {
+                copy.put(key, immutable(value));
+            }
+        });
+
+        this.props = Collections.unmodifiableMap(copy);
+        this.frozen = true;
+        this.sortedProps = Collections.unmodifiableSortedMap(new TreeMap<>(copy));
+        this.integers = new ConcurrentHashMap<>();
+        this.booleans = new ConcurrentHashMap<>();
+        this.stringLists = new ConcurrentHashMap<>();
+        this.objectLists = new ConcurrentHashMap<>();
+        this.cidrs = new ConcurrentHashMap<>();
+        this.listener = null;
+        this.validation = null;
+    }
+
+    private AppProps(AppProps source, Consumer<String> listener, PropertyValidation validation) {
+        this.props = source.props;
+        this.frozen = source.frozen;
+        this.sortedProps = source.sortedProps;
+        this.integers = source.integers;
+        this.booleans = source.booleans;
+        this.stringLists = source.stringLists;
+        this.objectLists = source.objectLists;
+        this.cidrs = source.cidrs;
+        this.listener = listener;
+        this.validation = validation;
+    }
+
+    /**
+     * Creates an immutable, thread safe snapshot of the current properties
+     * @return frozen AppProps, or this instance if it is already frozen
+     */
+    public AppProps freeze() {
+        return frozen ? this : new AppProps(props);
+    }
+
+    /**
+     * Creates a view of these properties that passes the key of every property read through it to a listener, so that
+     * it is known which properties a Stack depends on. The view shares its values with this instance, and if this is
+     * also a tracking view both listeners are called.
+     * @param listener called with the key of each property read, must be thread safe if the view is shared between
+     * threads
+     * @return tracking view
+     */
+    public AppProps tracking(Consumer<String> listener) {
+        return new AppProps(this, this.listener == null ? listener : this.listener.andThen(listener), validation);
+    }
+
+    /**
+     * Creates a view of these properties that records a missing or invalid property instead of throwing a
+     * MissingPropertyException, and returns a placeholder value so the caller carries on. This allows every problem
+     * in a Template to be found in one pass. Views created from this view also validate.
+     * @param validation where the problems are recorded
+     * @return validating view
+     */
+    public AppProps validating(PropertyValidation validation) {
+        return new AppProps(this, listener, validation);
+    }
+
+    /**
+     * A Stack should skip its own checks of a value that is only a placeholder, e.g. an empty map or the string
+     * "missing", as they would fail on the placeholder rather than on anything in the properties files.
+     * @param keys keys of properties that have already been read
+     * @return true if this is a validating view and any of the properties was missing or invalid
+     */
+    public boolean isPlaceholder(String... keys) {
+
+        if (validation == null) {
+            return false;
+        }
+
+        for (String key : keys) {
+            if (validation.isRecorded(key)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if this is an immutable snapshot
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
 
     /**
      * Add a property
      * @param key key for the property
-     * @param value value for the property
+     * @param value value for the property, a String, Number, Boolean, List or Map
+     * @exception UnsupportedOperationException Thrown if the AppProps has been frozen
      */
-    public void addProp(String key, String value) {
+    public void addProp(String key, Object value) {
+        checkNotFrozen();
         this.props.put(key, value);
     }
 
     /**
-     * Get a property value as a String
+     * Get a property value as it was loaded
      * @param key key of the value
      * @exception MissingPropertyException Thrown if a property can not be found
-     * @return value as a string
+     * @return value as a String, Number, Boolean, List or Map
+     */
+    public Object getProp(String key) throws MissingPropertyException {
+
+        try {
+            return getPropertyByKey(key);
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, PLACEHOLDER);
+        }
+    }
+
+    /**
+     * Get a property value as a String
+     * @param key key of the value
+     * @exception MissingPropertyException Thrown if a property can not be found, or is a Map
+     * @return value as a string. A List is joined with commas.
      */
     public String getPropAsString(String key) throws MissingPropertyException {
-        return getPropertyByKey(key);
+
+        try {
+            Object value = getPropertyByKey(key);
+            if (value instanceof List) {
+                return LIST_JOINER.join((List<?>) value);
+            }
+
+            return scalar(key, value);
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, PLACEHOLDER);
+        }
     }
 
     /**
@@ -64,7 +238,12 @@ public class AppProps {
      * @exception MissingPropertyException will be thrown if the value can not be parsed as an Int
      */
     public Integer getPropAsInteger(String key) throws MissingPropertyException {
-        return Integer.parseInt(getPropertyByKey(key));
+
+        try {
+            return memoise(integers, key, this::toInteger);
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, 1);
+        }
     }
 
     /**
@@ -74,29 +253,87 @@ public class AppProps {
      * @exception MissingPropertyException Thrown if a property can not be found
      */
     public Boolean getPropAsBoolean(String key) throws MissingPropertyException {
-        return Boolean.parseBoolean(getPropertyByKey(key));
+
+        try {
+            return memoise(booleans, key, this::toBoolean);
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, Boolean.FALSE);
+        }
     }
 
     /**
      *
      * @param key key of the value
-     * @return returns a List of Strings. This is done by Splitting the string around any commas
+     * @return returns a List of Strings. A String value is split around any commas, with the whitespace around each
+     * item removed. The List is immutable if the AppProps is frozen.
      * @exception MissingPropertyException Thrown if a property can not be found
      */
     public List<String> getPropAsStringList(String key) throws MissingPropertyException {
-        String value = getPropertyByKey(key);
-        return Lists.newArrayList(Splitter.on(",").split(value));
+
+        try {
+            return memoise(stringLists, key, this::toStringList);
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, ImmutableList.of(PLACEHOLDER));
+        }
     }
 
     /**
      *
      * @param key key of the value
-     * @return returns a List of Objects. This is done by Splitting the string around any commas
+     * @return returns a List of Objects. A String value is split around any commas, with the whitespace around each
+     * item removed. The List is immutable if the AppProps is frozen.
      * @exception MissingPropertyException Thrown if a property can not be found
      */
     public List<Object> getPropAsObjectList(String key) throws MissingPropertyException {
-        String value = getPropertyByKey(key);
-        return Lists.newArrayList(Splitter.on(",").split(value));
+
+        try {
+            return memoise(objectLists, key, this::toObjectList);
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, ImmutableList.of(PLACEHOLDER));
+        }
+    }
+
+    /**
+     *
+     * @param key key of the value
+     * @return value as a Map of String to value. The Map is immutable if the AppProps is frozen.
+     * @exception MissingPropertyException Thrown if a property can not be found, or is not a JSON object
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getPropAsMap(String key) throws MissingPropertyException {
+
+        try {
+            Object value = getPropertyByKey(key);
+            if (!(value instanceof Map)) {
+                throw new MissingPropertyException(String.format("Property %s is not an object", key));
+            }
+
+            return (Map<String, Object>) value;
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, ImmutableMap.of());
+        }
+    }
+
+    /**
+     *
+     * @param key key of the value
+     * @return value as an IPv4 CIDR block
+     * @exception MissingPropertyException Thrown if a property can not be found
+     * @exception IllegalArgumentException Thrown if the value is not a valid CIDR block
+     */
+    public Cidr getPropAsCidr(String key) throws MissingPropertyException {
+
+        try {
+            return memoise(cidrs, key, (name, value) -> Cidr.parse(scalar(name, value)));
+        } catch (MissingPropertyException e) {
+            return placeholder(key, e, PLACEHOLDER_CIDR);
+        } catch (IllegalArgumentException e) {
+            if (validation == null) {
+                throw e;
+            }
+            validation.record(key, e.getMessage());
+            return PLACEHOLDER_CIDR;
+        }
     }
 
     /**
@@ -106,31 +343,39 @@ public class AppProps {
      */
     public String getUniqueId() throws MissingPropertyException {
 
-        StringBuilder id = new StringBuilder();
-
-        if (props.containsKey("dtap")) {
-            id.append(getPropAsString("dtap")).append("-");
-        } else {
-            throw new MissingPropertyException("System Property -Ddtap not found");
+        if (listener != null) {
+            listener.accept(DTAP);
+            // vpc is optional, only count it when it is part of the id
+            if (props.containsKey(VPC)) {
+                listener.accept(VPC);
+            }
+            listener.accept(APP_ID);
         }
 
-        if (props.containsKey("vpc")) {
-            id.append(getPropAsString("vpc")).append("-");
+        String id = uniqueId;
+        if (id == null) {
+            id = createUniqueId();
+            if (frozen) {
+                uniqueId = id;
+            }
         }
 
-        if (props.containsKey("app_id")) {
-            id.append(getPropAsString("app_id"));
-        } else {
-            throw new MissingPropertyException("System Property -Dapplication not found");
-        }
+        return id;
+    }
 
-        return id.toString();
+    /**
+     * @return a read only copy of all the properties, ordered by key
+     */
+    public SortedMap<String, Object> asMap() {
+        return frozen ? sortedProps : Collections.unmodifiableSortedMap(new TreeMap<>(this.props));
     }
 
     /**
      * Removes all keys. Really only useful for testing
+     * @exception UnsupportedOperationException Thrown if the AppProps has been frozen
      */
     public void clear() {
+        checkNotFrozen();
         this.props.clear();
     }
 
@@ -143,12 +388,161 @@ public class AppProps {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     ///// private methods
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private String getPropertyByKey(String key) throws MissingPropertyException  {
+    private Object getPropertyByKey(String key) throws MissingPropertyException  {
+
+        if (listener != null) {
+            listener.accept(key);
+        }
+
+        return lookup(key);
+    }
 
-        if (!props.containsKey(key)) {
+    /**
+     * @return the value without telling the listener, for callers that already have
+     */
+    private Object lookup(String key) throws MissingPropertyException {
+
+        Object value = this.props.get(key);
+        if (value == null) {
             throw new MissingPropertyException(String.format("Property %s not found", key));
         }
 
-        return this.props.get(key);
+        return value;
+    }
+
+    private <T> T memoise(ConcurrentMap<String, T> cache, String key, Conversion<T> conversion) throws MissingPropertyException {
+
+        if (!frozen) {
+            return conversion.convert(key, getPropertyByKey(key));
+        }
+
+        if (listener != null) {
+            listener.accept(key);
+        }
+
+        T value = cache.get(key);
+        if (value == null) {
+            value = conversion.convert(key, lookup(key));
+            cache.putIfAbsent(key, value);
+        }
+
+        return value;
+    }
+
+    private <T> T placeholder(String key, MissingPropertyException e, T value) throws MissingPropertyException {
+
+        if (validation == null) {
+            throw e;
+        }
+
+        validation.record(key, e.getMessage());
+        return value;
+    }
+
+    private String scalar(String key, Object value) throws MissingPropertyException {
+
+        if (value instanceof List || value instanceof Map) {
+            throw new MissingPropertyException(String.format("Property %s is not a single value", key));
+        }
+
+        return value.toString();
+    }
+
+    private Integer toInteger(String key, Object value) throws MissingPropertyException {
+
+        try {
+            if (value instanceof Number) {
+                return new BigDecimal(value.toString()).intValueExact();
+            }
+            return Integer.parseInt(scalar(key, value).trim());
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new MissingPropertyException(String.format("Property %s is not an Integer", key));
+        }
+    }
+
+    private Boolean toBoolean(String key, Object value) throws MissingPropertyException {
+        return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(scalar(key, value).trim());
+    }
+
+    private List<String> toStringList(String key, Object value) throws MissingPropertyException {
+
+        List<String> list = new ArrayList<>();
+        for (Object item : toObjectList(key, value)) {
+            list.add(item.toString());
+        }
+
+        return frozen ? ImmutableList.copyOf(list) : list;
+    }
+
+    private List<Object> toObjectList(String key, Object value) throws MissingPropertyException {
+
+        if (value instanceof List) {
+            return frozen ? ImmutableList.copyOf((List<?>) value) : new ArrayList<>((List<?>) value);
+        }
+
+        Iterable<String> items = LIST_SPLITTER.split(scalar(key, value));
+        return frozen ? ImmutableList.copyOf(items) : Lists.newArrayList(items);
+    }
+
+    private static Object immutable(Object value) {
+
+        if (value instanceof List) {
+            ImmutableList.Builder<Object> list = ImmutableList.builder();
+            for (Object item : (List<?>) value) {
+                if (item != null) {
+                    list.add(immutable(item));
+                }
+            }
+            return list.build();
+        }
+
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getValue() != null) {
+                    map.put(String.valueOf(entry.getKey()), immutable(entry.getValue()));
+                }
+            }
+            return ImmutableMap.copyOf(map);
+        }
+
+        return value;
+    }
+
+    private String createUniqueId() throws MissingPropertyException {
+
+        StringBuilder id = new StringBuilder();
+
+        if (props.containsKey(DTAP)) {
+            id.append(props.get(DTAP)).append("-");
+        } else {
+            return placeholder(DTAP, new MissingPropertyException("System Property -Ddtap not found"), PLACEHOLDER);
+        }
+
+        if (props.containsKey(VPC)) {
+            id.append(props.get(VPC)).append("-");
+        }
+
+        if (props.containsKey(APP_ID)) {
+            id.append(props.get(APP_ID));
+        } else {
+            return placeholder(APP_ID, new MissingPropertyException("System Property -Dapplication not found"), PLACEHOLDER);
+        }
+
+        return id.toString();
+    }
+
+    private void checkNotFrozen() {
+
+        if (frozen) {
+            throw new UnsupportedOperationException("AppProps has been frozen");
+        }
+    }
+
+    /**
+     * Converts a raw property value into a typed value
+     */
+    private interface Conversion<T> {
+        T convert(String key, Object value) throws MissingPropertyException;
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+/**
+ * Immutable IPv4 CIDR block, e.g. 10.0.0.0/16
+ */
+public final class Cidr {
+
+    private static final int BITS = 32;
+
+    private final long address;
+    private final int prefixLength;
+
+    private Cidr(long address, int prefixLength) {
+        this.address = address;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * @param address network address as an unsigned 32 bit value
+     * @param prefixLength number of network bits, 0 to 32
+     * @return Cidr
+     * @exception IllegalArgumentException Thrown if the address has bits set outside of the prefix
+     */
+    public static Cidr of(long address, int prefixLength) {
+
+        if (prefixLength < 0 || prefixLength > BITS) {
+            throw new IllegalArgumentException("Invalid prefix length /" + prefixLength);
+        }
+
+        if (address < 0 || address > 0xFFFFFFFFL || (address & ~mask(prefixLength) & 0xFFFFFFFFL) != 0) {
+            throw new IllegalArgumentException("Invalid network address for /" + prefixLength + " : " + address);
+        }
+
+        return new Cidr(address, prefixLength);
+    }
+
+    /**
+     * @param cidr e.g. 10.0.0.0/16
+     * @return Cidr
+     * @exception IllegalArgumentException Thrown if the value is not a valid IPv4 CIDR block
+     */
+    public static Cidr parse(String cidr) {
+
+        String[] parts = cidr.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid CIDR " + cidr);
+        }
+
+        String[] octets = parts[0].split("\\.");
+        if (octets.length != 4) {
+            throw new IllegalArgumentException("Invalid CIDR " + cidr);
+        }
+
+        try {
+            long address = 0;
+            for (String octet : octets) {
+                int value = Integer.parseInt(octet);
+                if (value < 0 || value > 255) {
+                    throw new IllegalArgumentException("Invalid CIDR " + cidr);
+                }
+                address = (address << 8) | value;
+            }
+
+            return of(address, Integer.parseInt(parts[1]));
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid CIDR " + cidr);
+        }
+    }
+
+    /**
+     * @return network address as an unsigned 32 bit value
+     */
+    public long getAddress() {
+        return address;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * @return number of addresses in the block
+     */
+    public long size() {
+        return 1L << (BITS - prefixLength);
+    }
+
+    /**
+     * @return last address in the block as an unsigned 32 bit value
+     */
+    public long getLastAddress() {
+        return address + size() - 1;
+    }
+
+    /**
+     * @param other another block
+     * @return true if the two blocks share any addresses
+     */
+    public boolean overlaps(Cidr other) {
+        return address <= other.getLastAddress() && other.address <= getLastAddress();
+    }
+
+    /**
+     * @param other another block
+     * @return true if every address of the other block is in this block
+     */
+    public boolean contains(Cidr other) {
+        return address <= other.address && other.getLastAddress() <= getLastAddress();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof Cidr)) {
+            return false;
+        }
+
+        Cidr that = (Cidr) o;
+        return address == that.address && prefixLength == that.prefixLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(address) * 31 + prefixLength;
+    }
+
+    @Override
+    public String toString() {
+        return ((address >> 24) & 0xFF) + "." + ((address >> 16) & 0xFF) + "." + ((address >> 8) & 0xFF) + "." + (address & 0xFF) + "/" + prefixLength;
+    }
+
+    private static long mask(int prefixLength) {
+        return prefixLength == 0 ? 0 : (0xFFFFFFFFL << (BITS - prefixLength)) & 0xFFFFFFFFL;
+    }
+}
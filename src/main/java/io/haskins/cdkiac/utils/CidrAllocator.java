@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Carves a VPC CIDR block into a subnet for each tier in each availability zone.</p>
+ *
+ * <p>The layout is stable: each tier has a fixed region of the VPC block, the first half for private subnets, the
+ * third quarter for public and the last quarter for isolated, and the subnet of the n-th zone is the n-th block of
+ * the tier's prefix length within its region. So a subnet only moves if vpc_cidr, its own tier's prefix length or its
+ * zone's position in the list changes. Adding a zone to the end of the list, adding the isolated tier or resizing
+ * one tier leaves every other subnet where it was, which matters because CloudFormation replaces a subnet, and
+ * everything in it, when its CIDR changes. Zones must only ever be added to the end of the list.</p>
+ *
+ * <p>The price is that a tier can only use its own region, e.g. three /20 public subnets need at least a /16.</p>
+ */
+public final class CidrAllocator {
+
+    /**
+     * Smallest subnet AWS allows
+     */
+    public static final int MAX_SUBNET_PREFIX_LENGTH = 28;
+
+    /**
+     * Subnet tiers, and the region of the VPC block each one is allocated from
+     */
+    public enum Tier {
+
+        /** routes out through NAT, allocated from the first half of the VPC */
+        PRIVATE(0, 1),
+        /** routes out through the internet gateway, allocated from the third quarter of the VPC */
+        PUBLIC(2, 2),
+        /** no route out of the VPC, allocated from the last quarter of the VPC */
+        ISOLATED(3, 2);
+
+        private final int offsetQuarters;
+        private final int regionPrefixBits;
+
+        Tier(int offsetQuarters, int regionPrefixBits) {
+            this.offsetQuarters = offsetQuarters;
+            this.regionPrefixBits = regionPrefixBits;
+        }
+
+        /**
+         * @param name tier name as used in the properties, e.g. private
+         * @return Tier
+         * @exception IllegalArgumentException Thrown if there is no such tier
+         */
+        public static Tier parse(String name) {
+
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown subnet tier " + name);
+            }
+        }
+
+        /**
+         * @return name as used in logical ids, e.g. Private
+         */
+        public String getLabel() {
+            return name().charAt(0) + name().substring(1).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @param vpc VPC block
+         * @return the part of the VPC block this tier's subnets are allocated from
+         */
+        public Cidr region(Cidr vpc) {
+            return Cidr.of(vpc.getAddress() + offsetQuarters * (vpc.size() / 4), vpc.getPrefixLength() + regionPrefixBits);
+        }
+    }
+
+    private CidrAllocator() { }
+
+    /**
+     * @param vpc block to carve up
+     * @param zones availability zones, a subnet of each tier is allocated in each
+     * @param prefixLengths prefix length of the subnets of each tier, a tier that isn't given gets no subnets
+     * @return subnets in tier and zone order
+     * @exception IllegalArgumentException Thrown if a prefix length is invalid or a tier's subnets don't fit in its
+     * region
+     */
+    public static List<Subnet> allocate(Cidr vpc, List<String> zones, Map<Tier, Integer> prefixLengths) {
+
+        if (zones.isEmpty()) {
+            throw new IllegalArgumentException("No availability zones to allocate subnets in");
+        }
+
+        List<Subnet> allocated = new ArrayList<>();
+
+        for (Tier tier : Tier.values()) {
+
+            Integer prefixLength = prefixLengths.get(tier);
+            if (prefixLength == null) {
+                continue;
+            }
+
+            String name = tier.getLabel().toLowerCase(Locale.ROOT);
+            Cidr region = tier.region(vpc);
+
+            if (prefixLength < region.getPrefixLength() || prefixLength > MAX_SUBNET_PREFIX_LENGTH) {
+                throw new IllegalArgumentException(String.format("Invalid %s subnet prefix length /%d, must be between /%d and /%d",
+                        name, prefixLength, region.getPrefixLength(), MAX_SUBNET_PREFIX_LENGTH));
+            }
+
+            long size = Cidr.of(0, prefixLength).size();
+            if (zones.size() * size > region.size()) {
+                throw new IllegalArgumentException(String.format("%d %s subnets of /%d don't fit in %s, the %s region of %s",
+                        zones.size(), name, prefixLength, region, name, vpc));
+            }
+
+            for (int zone = 0; zone < zones.size(); zone++) {
+                allocated.add(new Subnet(tier, zone, zones.get(zone), Cidr.of(region.getAddress() + zone * size, prefixLength)));
+            }
+        }
+
+        return Collections.unmodifiableList(allocated);
+    }
+
+    /**
+     * A subnet of one tier in one availability zone
+     */
+    public static final class Subnet {
+
+        private final Tier tier;
+        private final int zoneIndex;
+        private final String zone;
+        private final Cidr cidr;
+
+        private Subnet(Tier tier, int zoneIndex, String zone, Cidr cidr) {
+            this.tier = tier;
+            this.zoneIndex = zoneIndex;
+            this.zone = zone;
+            this.cidr = cidr;
+        }
+
+        public Tier getTier() {
+            return tier;
+        }
+
+        /**
+         * @return position of the zone in the list of zones
+         */
+        public int getZoneIndex() {
+            return zoneIndex;
+        }
+
+        /**
+         * @return availability zone, e.g. eu-west-1a
+         */
+        public String getZone() {
+            return zone;
+        }
+
+        public Cidr getCidr() {
+            return cidr;
+        }
+
+        @Override
+        public String toString() {
+            return tier.getLabel() + " " + zone + " " + cidr;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Immutable interval tree of named CIDR blocks, for finding every block that shares addresses with another.</p>
+ *
+ * <p>The blocks are sorted by start address and built into a balanced tree where each node also holds the highest
+ * last address beneath it, so a search skips any subtree that ends before the block being looked for. Finding every
+ * overlapping pair of n blocks takes O(n log n + k) for k overlaps, rather than comparing every block with every
+ * other.</p>
+ *
+ * @param <T> name of a block, e.g. the vpc it belongs to
+ */
+public final class CidrIntervalTree<T> {
+
+    private static final Comparator<Node<?>> ORDER = Comparator
+            .comparingLong((Node<?> node) -> node.cidr.getAddress())
+            .thenComparingInt(node -> node.cidr.getPrefixLength());
+
+    private final List<Node<T>> nodes;
+    private final Node<T> root;
+
+    private CidrIntervalTree(List<Node<T>> nodes) {
+        this.nodes = nodes;
+        this.root = build(nodes, 0, nodes.size() - 1);
+    }
+
+    /**
+     * @param blocks CIDR block of each name
+     * @param <T> type of the names
+     * @return CidrIntervalTree
+     */
+    public static <T> CidrIntervalTree<T> of(Map<T, Cidr> blocks) {
+
+        List<Node<T>> nodes = new ArrayList<>();
+        blocks.forEach((name, cidr) -> nodes.add(new Node<>(name, cidr)));
+        nodes.sort(ORDER);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).index = i;
+        }
+
+        return new CidrIntervalTree<>(nodes);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @param cidr block to look for
+     * @return names of the blocks sharing any address with the given block, in address order
+     */
+    public List<T> overlapping(Cidr cidr) {
+
+        List<Node<T>> found = new ArrayList<>();
+        search(root, cidr, found);
+
+        List<T> names = new ArrayList<>();
+        found.forEach(node -> names.add(node.name));
+        return names;
+    }
+
+    /**
+     * @return every pair of blocks that share any address, ordered by the address of the first block of the pair
+     */
+    public List<Overlap<T>> overlaps() {
+
+        List<Overlap<T>> overlaps = new ArrayList<>();
+
+        for (Node<T> node : nodes) {
+
+            List<Node<T>> found = new ArrayList<>();
+            search(root, node.cidr, found);
+
+            for (Node<T> other : found) {
+                if (other.index > node.index) {
+                    overlaps.add(new Overlap<>(node.name, node.cidr, other.name, other.cidr));
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(overlaps);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static <T> Node<T> build(List<Node<T>> nodes, int from, int to) {
+
+        if (from > to) {
+            return null;
+        }
+
+        int middle = (from + to) >>> 1;
+
+        Node<T> node = nodes.get(middle);
+        node.left = build(nodes, from, middle - 1);
+        node.right = build(nodes, middle + 1, to);
+
+        node.maxLastAddress = node.cidr.getLastAddress();
+        if (node.left != null) {
+            node.maxLastAddress = Math.max(node.maxLastAddress, node.left.maxLastAddress);
+        }
+        if (node.right != null) {
+            node.maxLastAddress = Math.max(node.maxLastAddress, node.right.maxLastAddress);
+        }
+
+        return node;
+    }
+
+    private static <T> void search(Node<T> node, Cidr cidr, List<Node<T>> found) {
+
+        if (node == null || node.maxLastAddress < cidr.getAddress()) {
+            return;
+        }
+
+        search(node.left, cidr, found);
+
+        if (node.cidr.overlaps(cidr)) {
+            found.add(node);
+        }
+
+        /*
+         * everything to the right starts at or after this node, so can only overlap if this node starts within the block
+         */
+        if (node.cidr.getAddress() <= cidr.getLastAddress()) {
+            search(node.right, cidr, found);
+        }
+    }
+
+    private static final class Node<T> {
+
+        private final T name;
+        private final Cidr cidr;
+
+        private int index;
+        private long maxLastAddress;
+        private Node<T> left;
+        private Node<T> right;
+
+        private Node(T name, Cidr cidr) {
+            this.name = name;
+            this.cidr = cidr;
+        }
+    }
+
+    /**
+     * Two named blocks that share addresses
+     * @param <T> type of the names
+     */
+    public static final class Overlap<T> {
+
+        private final T first;
+        private final Cidr firstCidr;
+        private final T second;
+        private final Cidr secondCidr;
+
+        private Overlap(T first, Cidr firstCidr, T second, Cidr secondCidr) {
+            this.first = first;
+            this.firstCidr = firstCidr;
+            this.second = second;
+            this.secondCidr = secondCidr;
+        }
+
+        public T getFirst() {
+            return first;
+        }
+
+        public Cidr getFirstCidr() {
+            return firstCidr;
+        }
+
+        public T getSecond() {
+            return second;
+        }
+
+        public Cidr getSecondCidr() {
+            return secondCidr;
+        }
+
+        @Override
+        public String toString() {
+            return first + " " + firstCidr + " overlaps " + second + " " + secondCidr;
+        }
+    }
+}
@@ -25,26 +25,26 @@
 package io.haskins.cdkiac.utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.google.common.collect.ImmutableSortedSet;
 
-import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Utility class for generating IAM resources, such as Instance Profiles, Trust Polices and Policy Documents.
+ *
+ * The JSON trees are built node by node, so any value is escaped correctly and nothing has to be parsed. Every call
+ * builds a new tree, which is cheaper than copying a cached one and lets callers change what they are given.
  */
 public class IamPolicyGenerator {
 
-    private static final Logger logger = LoggerFactory.getLogger(IamPolicyGenerator.class);
+    private static final JsonNodeFactory factory = JsonNodeFactory.instance;
 
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String VERSION = "2012-10-17";
 
     private IamPolicyGenerator() { }
 
@@ -71,7 +71,7 @@ public class IamPolicyGenerator {
      * </pre>
      */
     public static ObjectNode getServiceTrustPolicy(String service) {
-        return (ObjectNode)createServiceTrustPolicy(Collections.singletonList(service));
+        return getTrustPolicy(Collections.singletonList(service), Collections.emptyList());
     }
 
     /**
@@ -93,7 +93,38 @@ public class IamPolicyGenerator {
      * </pre>
      */
     public static ObjectNode getAwsTrustPolicy(String arn) {
-        return (ObjectNode)createAwsTrustPolicy(Collections.singletonList(arn));
+        return getTrustPolicy(Collections.emptyList(), Collections.singletonList(arn));
+    }
+
+    /**
+     * Generates a Trust Policy for a number of Service and AWS principals
+     * @param services e.g. ec2.amazonaws.com, may be empty
+     * @param arns e.g. arn:aws:iam::0123456789:root, may be empty
+     * @return  <pre>
+     * {
+     *   "Version": "2012-10-17",
+     *   "Statement": [
+     *     {
+     *       "Effect": "Allow",
+     *       "Principal": {
+     *         "Service": ["service", ...],
+     *         "AWS": ["arn", ...]
+     *       },
+     *       "Action": "sts:AssumeRole"
+     *     }
+     *   ]
+     * }
+     * </pre>
+     * The principals are sorted, and a principal type without any principals is left out.
+     * @exception IllegalArgumentException Thrown if there are no principals at all
+     */
+    public static ObjectNode getTrustPolicy(Collection<String> services, Collection<String> arns) {
+
+        if (services.isEmpty() && arns.isEmpty()) {
+            throw new IllegalArgumentException("A Trust Policy needs at least one principal");
+        }
+
+        return createTrustedJsonNode(ImmutableSortedSet.copyOf(services), ImmutableSortedSet.copyOf(arns));
     }
 
     /**
@@ -124,75 +155,69 @@ public class IamPolicyGenerator {
      */
     public static ObjectNode getPolicyDocument(List<JsonNode> statements) {
 
-        ObjectNode objectNode = JsonNodeFactory.instance.objectNode();
-        objectNode.put("Version", "2012-10-17");
+        ObjectNode objectNode = factory.objectNode();
+        objectNode.put("Version", VERSION);
 
-        ArrayNode array = mapper.valueToTree(statements);
-        objectNode.putArray("Statement").addAll(array);
+        ArrayNode array = objectNode.putArray("Statement");
+        for (JsonNode statement : statements) {
+            array.add(statement.deepCopy());
+        }
 
         return objectNode;
     }
 
+    /**
+     * Creates the smallest equivalent IAM Policy Document from the passed statements, see {@link IamPolicyOptimizer}
+     * @param statements collection of IAM Policy Statements
+     * @return a valid policy document object
+     * @throws PolicySizeException Thrown if the document is larger than IAM allows for the inline policies of a role
+     */
+    public static ObjectNode getOptimizedPolicyDocument(List<JsonNode> statements) throws PolicySizeException {
+        return new IamPolicyOptimizer().optimize(statements);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     ///// private helper methods
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private static JsonNode createAwsTrustPolicy(List<String> aws) {
-
-        String json = "\"AWS\": [" + escapeStrings(aws) + "]";
-        return createTrustedJsonNode(json);
-    }
+    private static ArrayNode createArrayNode(Collection<String> strings) {
 
-    private static JsonNode createServiceTrustPolicy(List<String> services) {
+        ArrayNode array = factory.arrayNode(strings.size());
+        for (String string : strings) {
+            array.add(string);
+        }
 
-        String json = "\"Service\":[" + escapeStrings(services) + "]";
-        return createTrustedJsonNode(json);
+        return array;
     }
 
-    private static String escapeStrings(List<String> strings) {
+    private static ObjectNode createTrustedJsonNode(Collection<String> services, Collection<String> aws) {
 
-        List<String> tmp = new ArrayList<>();
-        for (String string: strings) {
-            tmp.add("\"" + string + "\"");
+        ObjectNode principal = factory.objectNode();
+        if (!services.isEmpty()) {
+            principal.set("Service", createArrayNode(services));
+        }
+        if (!aws.isEmpty()) {
+            principal.set("AWS", createArrayNode(aws));
         }
 
-        return String.join(",", tmp);
-    }
-
-    private static JsonNode createTrustedJsonNode(String principal ) {
+        ObjectNode statement = factory.objectNode();
+        statement.put("Effect", "Allow");
+        statement.set("Principal", principal);
+        statement.put("Action", "sts:AssumeRole");
 
-        StringBuilder json = new StringBuilder()
-                .append("{")
-                .append("\"Version\":\"2012-10-17\",")
-                .append("\"Statement\": [ {")
-                .append("\"Effect\": \"Allow\",")
-                .append("\"Principal\":{").append(principal).append("},")
-                .append("\"Action\":\"sts:AssumeRole\"")
-                .append("}]}");
+        ObjectNode json = factory.objectNode();
+        json.put("Version", VERSION);
+        json.putArray("Statement").add(statement);
 
-        return createJsonNode(json.toString());
+        return json;
     }
 
     private static JsonNode createStatementJsonNode(String effect, List<String> actions, List<String> resources) {
 
-        StringBuilder json = new StringBuilder()
-                .append("{")
-                .append("\"Effect\": ").append("\"").append(effect).append("\",")
-                .append("\"Action\": [").append(escapeStrings(actions)).append("],")
-                .append("\"Resource\":[").append(escapeStrings(resources)).append("]")
-                .append("}");
-
-        return createJsonNode(json.toString());
-    }
-
-    private static JsonNode createJsonNode(String json) {
-
-        JsonNode jsonNode = null;
-        try {
-            jsonNode =  mapper.readTree(json);
-        } catch (IOException e) {
-            logger.error(e.getMessage());
-        }
+        ObjectNode json = factory.objectNode();
+        json.put("Effect", effect);
+        json.set("Action", createArrayNode(actions));
+        json.set("Resource", createArrayNode(resources));
 
-        return jsonNode;
+        return json;
     }
 }
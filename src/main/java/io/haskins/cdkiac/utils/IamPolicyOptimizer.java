@@ -0,0 +1,363 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Compacts a list of IAM policy statements into the smallest equivalent policy document:</p>
+ *
+ * <ul>
+ *     <li>statements with the same Effect and Resources are merged into one, with the union of their Actions</li>
+ *     <li>statements with the same Effect and Actions are then merged into one, with the union of their Resources</li>
+ *     <li>duplicate Actions (IAM Actions are case insensitive) and Resources are removed, as are Actions covered by a
+ *     wildcard Action in the same statement, e.g. s3:GetObject when s3:* is present</li>
+ *     <li>if wildcards have been allowed with {@link #withWildcards(String...)}, two or more Actions matching an allowed
+ *     wildcard are replaced by it. Wildcards are never introduced otherwise, as they can grant Actions added to AWS
+ *     later.</li>
+ *     <li>Actions, Resources and statements are sorted, so the same input always gives the same document</li>
+ * </ul>
+ *
+ * <p>Statements with anything other than Effect, Action and Resource, such as a Condition, are only de-duplicated.
+ * Grouping is done with hash maps, so the work grows linearly with the number of statements.</p>
+ *
+ * <p>The size of the optimized document is checked against a limit, by default the 10,240 characters IAM allows for
+ * the inline policies of a role, so an oversized policy fails at synth time rather than during deployment.</p>
+ */
+public class IamPolicyOptimizer {
+
+    /**
+     * Maximum size of all the inline policies of a role
+     */
+    public static final int ROLE_INLINE_POLICY_LIMIT = 10240;
+
+    /**
+     * Maximum size of a managed policy
+     */
+    public static final int MANAGED_POLICY_LIMIT = 6144;
+
+    private static final String VERSION = "2012-10-17";
+    private static final String EFFECT = "Effect";
+    private static final String ACTION = "Action";
+    private static final String RESOURCE = "Resource";
+    private static final String WILDCARD = "*";
+
+    private static final Set<String> MERGEABLE_FIELDS = new LinkedHashSet<>(Arrays.asList(EFFECT, ACTION, RESOURCE));
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+    private final Map<String, Pattern> wildcards = new LinkedHashMap<>();
+    private int maxBytes = ROLE_INLINE_POLICY_LIMIT;
+
+    /**
+     * Allows Actions to be collapsed into the given wildcards
+     * @param allowed wildcard Actions, e.g. s3:Get* or s3:List*
+     * @return this optimizer
+     */
+    public IamPolicyOptimizer withWildcards(String... allowed) {
+
+        for (String wildcard : allowed) {
+            wildcards.put(wildcard, globToPattern(wildcard));
+        }
+
+        return this;
+    }
+
+    /**
+     * @param maxBytes largest serialized document allowed, 0 to not check the size
+     * @return this optimizer
+     */
+    public IamPolicyOptimizer withMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Optimizes the statements into a policy document
+     * @param statements IAM Policy Statements, as created by {@link IamPolicyGenerator#getPolicyStatement}
+     * @return a valid policy document object
+     * @throws PolicySizeException Thrown if the optimized document is larger than the maximum size
+     */
+    public ObjectNode optimize(List<JsonNode> statements) throws PolicySizeException {
+
+        Map<GroupKey, Statement> byResources = new LinkedHashMap<>();
+        Set<JsonNode> others = new LinkedHashSet<>();
+
+        for (JsonNode node : statements) {
+
+            if (!isMergeable(node)) {
+                others.add(node);
+                continue;
+            }
+
+            Statement statement = new Statement(node.get(EFFECT).asText(), values(node.get(ACTION)), values(node.get(RESOURCE)));
+            statement.resources = compactResources(statement.resources);
+
+            Statement existing = byResources.putIfAbsent(new GroupKey(statement.effect, statement.resources), statement);
+            if (existing != null) {
+                existing.actions.addAll(statement.actions);
+            }
+        }
+
+        Map<GroupKey, Statement> byActions = new LinkedHashMap<>();
+        for (Statement statement : byResources.values()) {
+
+            statement.actions = compactActions(statement.actions);
+
+            List<String> actions = new ArrayList<>();
+            statement.actions.forEach(action -> actions.add(action.toLowerCase(Locale.ROOT)));
+
+            Statement existing = byActions.putIfAbsent(new GroupKey(statement.effect, actions), statement);
+            if (existing != null) {
+                existing.resources.addAll(statement.resources);
+                existing.resources = compactResources(existing.resources);
+            }
+        }
+
+        List<JsonNode> optimized = new ArrayList<>();
+        for (Statement statement : byActions.values()) {
+            optimized.add(statement.toJsonNode());
+        }
+        optimized.addAll(others);
+        optimized.sort(Comparator.comparing(JsonNode::toString));
+
+        ObjectNode document = factory.objectNode();
+        document.put("Version", VERSION);
+        document.putArray("Statement").addAll(optimized);
+
+        int size = serializedSize(document);
+        if (maxBytes > 0 && size > maxBytes) {
+            throw new PolicySizeException(String.format("Policy document is %d bytes, the limit is %d bytes", size, maxBytes));
+        }
+
+        return document;
+    }
+
+    /**
+     * @param node JSON to measure
+     * @return the number of bytes in the compact UTF-8 serialization of the node
+     */
+    public static int serializedSize(JsonNode node) {
+
+        try {
+            return mapper.writeValueAsBytes(node).length;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static boolean isMergeable(JsonNode node) {
+
+        if (!node.isObject() || !node.hasNonNull(EFFECT) || !node.hasNonNull(ACTION) || !node.hasNonNull(RESOURCE)) {
+            return false;
+        }
+
+        Iterator<String> fields = node.fieldNames();
+        while (fields.hasNext()) {
+            if (!MERGEABLE_FIELDS.contains(fields.next())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static List<String> values(JsonNode node) {
+
+        if (!node.isArray()) {
+            return Collections.singletonList(node.asText());
+        }
+
+        List<String> values = new ArrayList<>(node.size());
+        for (JsonNode value : node) {
+            values.add(value.asText());
+        }
+
+        return values;
+    }
+
+    private static SortedSet<String> compactResources(Collection<String> resources) {
+        return resources.contains(WILDCARD) ? new TreeSet<>(Collections.singleton(WILDCARD)) : new TreeSet<>(resources);
+    }
+
+    private SortedSet<String> compactActions(Collection<String> actions) {
+
+        SortedSet<String> compacted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        compacted.addAll(actions);
+
+        if (compacted.contains(WILDCARD)) {
+            return new TreeSet<>(Collections.singleton(WILDCARD));
+        }
+
+        for (Map.Entry<String, Pattern> wildcard : wildcards.entrySet()) {
+
+            List<String> matching = new ArrayList<>();
+            for (String action : compacted) {
+                if (wildcard.getValue().matcher(action).matches()) {
+                    matching.add(action);
+                }
+            }
+
+            if (matching.size() > 1) {
+                compacted.removeAll(matching);
+                compacted.add(wildcard.getKey());
+            }
+        }
+
+        List<Pattern> present = new ArrayList<>();
+        for (String action : compacted) {
+            if (action.contains(WILDCARD) || action.contains("?")) {
+                present.add(globToPattern(action));
+            }
+        }
+
+        if (!present.isEmpty()) {
+            compacted.removeIf(action -> !action.contains(WILDCARD) && !action.contains("?") && matchesAny(present, action));
+        }
+
+        return compacted;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String action) {
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(action).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Pattern globToPattern(String glob) {
+
+        StringBuilder regex = new StringBuilder();
+        for (String part : glob.split("(?=[*?])|(?<=[*?])")) {
+            if (WILDCARD.equals(part)) {
+                regex.append(".*");
+            } else if ("?".equals(part)) {
+                regex.append(".");
+            } else {
+                regex.append(Pattern.quote(part));
+            }
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * An Effect and a set of Actions or Resources that statements are grouped on. The values are kept as a set rather
+     * than joined into a string, as a Resource may itself contain the separator.
+     */
+    private static final class GroupKey {
+
+        private final String effect;
+        private final Set<String> values;
+
+        private GroupKey(String effect, Collection<String> values) {
+            this.effect = effect;
+            this.values = ImmutableSet.copyOf(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+
+            GroupKey that = (GroupKey) o;
+            return effect.equals(that.effect) && values.equals(that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return effect.hashCode() * 31 + values.hashCode();
+        }
+    }
+
+    /**
+     * A statement with only an Effect, Actions and Resources
+     */
+    private static final class Statement {
+
+        private final String effect;
+        private SortedSet<String> actions;
+        private SortedSet<String> resources;
+
+        private Statement(String effect, Collection<String> actions, Collection<String> resources) {
+            this.effect = effect;
+            this.actions = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            this.actions.addAll(actions);
+            this.resources = new TreeSet<>(resources);
+        }
+
+        private JsonNode toJsonNode() {
+
+            ObjectNode json = factory.objectNode();
+            json.put(EFFECT, effect);
+            addAll(json.putArray(ACTION), actions);
+            addAll(json.putArray(RESOURCE), resources);
+
+            return json;
+        }
+
+        private static void addAll(ArrayNode array, Collection<String> values) {
+            for (String value : values) {
+                array.add(value);
+            }
+        }
+    }
+}
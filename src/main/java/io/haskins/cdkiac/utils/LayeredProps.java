@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>Property store made up of layers, where a key in a later layer overrides the same key in an earlier one:</p>
+ *
+ * <p>defaults &#8594; dtap &#8594; vpc &#8594; application &#8594; system properties &#8594; environment variables</p>
+ *
+ * <p>The layers are flattened into a single index the first time a property is looked up, so lookups are a single
+ * map access, and the layer that supplied each key is remembered so it can be reported.</p>
+ */
+public class LayeredProps {
+
+    /**
+     * Property layers, in order of increasing precedence
+     */
+    public enum Layer { DEFAULTS, DTAP, VPC, APPLICATION, SYSTEM_PROPERTIES, ENVIRONMENT }
+
+    private final Map<Layer, Map<String, Object>> layers = new EnumMap<>(Layer.class);
+
+    private Map<String, Object> merged;
+    private Map<String, Layer> provenance;
+
+    /**
+     * Add a property to a layer
+     * @param layer layer the property belongs to
+     * @param key key for the property
+     * @param value value for the property, a String, Number, Boolean, List or Map
+     */
+    public synchronized void addProp(Layer layer, String key, Object value) {
+        layers.computeIfAbsent(layer, l -> new LinkedHashMap<>()).put(key, value);
+        merged = null;
+        provenance = null;
+    }
+
+    /**
+     * Add a number of properties to a layer
+     * @param layer layer the properties belong to
+     * @param props properties
+     */
+    public synchronized void addProps(Layer layer, Map<String, ?> props) {
+        props.forEach((key, value) -> addProp(layer, key, value));
+    }
+
+    /**
+     * @param key key of the value
+     * @return the value from the highest precedence layer that defines the key
+     * @exception MissingPropertyException Thrown if no layer defines the key
+     */
+    public synchronized Object getProp(String key) throws MissingPropertyException {
+
+        Map<String, Object> index = index();
+        if (!index.containsKey(key)) {
+            throw new MissingPropertyException(String.format("Property %s not found", key));
+        }
+
+        return index.get(key);
+    }
+
+    /**
+     * @param key key of the value
+     * @return the layer that supplied the value
+     * @exception MissingPropertyException Thrown if no layer defines the key
+     */
+    public synchronized Layer getProvenance(String key) throws MissingPropertyException {
+
+        index();
+        Layer layer = provenance.get(key);
+        if (layer == null) {
+            throw new MissingPropertyException(String.format("Property %s not found", key));
+        }
+
+        return layer;
+    }
+
+    /**
+     * @param key key of the value
+     * @return every layer that defines the key, lowest precedence first. More than one layer means the key has been
+     * overridden.
+     */
+    public synchronized List<Layer> getLayers(String key) {
+
+        List<Layer> defined = new ArrayList<>();
+        for (Map.Entry<Layer, Map<String, Object>> layer : layers.entrySet()) {
+            if (layer.getValue().containsKey(key)) {
+                defined.add(layer.getKey());
+            }
+        }
+
+        return defined;
+    }
+
+    /**
+     * @return the merged properties, ordered by key
+     */
+    public SortedMap<String, Object> asMap() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(index()));
+    }
+
+    /**
+     * @return the layer that supplied each merged property, ordered by key
+     */
+    public synchronized SortedMap<String, Layer> getProvenance() {
+
+        index();
+        return Collections.unmodifiableSortedMap(new TreeMap<>(provenance));
+    }
+
+    /**
+     * @return an AppProps holding the merged properties
+     */
+    public AppProps toAppProps() {
+
+        AppProps appProps = new AppProps();
+        index().forEach(appProps::addProp);
+
+        return appProps;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private synchronized Map<String, Object> index() {
+
+        if (merged == null) {
+
+            Map<String, Object> values = new HashMap<>();
+            Map<String, Layer> layerOf = new HashMap<>();
+
+            for (Map.Entry<Layer, Map<String, Object>> layer : layers.entrySet()) {
+                for (Map.Entry<String, Object> prop : layer.getValue().entrySet()) {
+                    values.put(prop.getKey(), prop.getValue());
+                    layerOf.put(prop.getKey(), layer.getKey());
+                }
+            }
+
+            merged = values;
+            provenance = layerOf;
+        }
+
+        return merged;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Counts how many times each property is read, by the Template and by each Stack, so that unused properties can be
+ * removed from the properties files and properties read over and over can be found. Enabled with
+ * <b>-Dprops.tracking=&lt;report file&gt;</b>.</p>
+ *
+ * <p>After each synth the report lists the properties that were loaded but never read, and the properties read at
+ * least <b>-Dprops.tracking.hot</b> times (default 10) by the Template or a single Stack. The counts are LongAdders,
+ * which spread contended increments over several cells, so reads from many threads don't queue on one counter.</p>
+ */
+public class PropertyAccessTracker {
+
+    /**
+     * System property holding the file the report is written to
+     */
+    public static final String PROPS_TRACKING = "props.tracking";
+
+    /**
+     * System property holding the number of reads that makes a property hot
+     */
+    public static final String PROPS_TRACKING_HOT = "props.tracking.hot";
+
+    private static final String TEMPLATE_SCOPE = "template";
+    private static final int DEFAULT_HOT_READS = 10;
+    private static final int MAX_RUNS = 1000;
+
+    private static final Scope NOOP_SCOPE = () -> { };
+    private static final Run NOOP_RUN = new Run(null, null, null);
+
+    private static final PropertyAccessTracker instance = create();
+
+    private static final ThreadLocal<Deque<String>> scopes = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final Path report;
+    private final int hotReads;
+    private final Deque<ObjectNode> finished = new ArrayDeque<>();
+
+    PropertyAccessTracker(Path report, int hotReads) {
+        this.report = report;
+        this.hotReads = hotReads;
+    }
+
+    /**
+     * @return true if tracking is enabled
+     */
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Starts tracking the properties read by a Template run
+     * @param template name of the Template
+     * @param target dtap/vpc/application being synthesized
+     * @return the run, to be closed when the Template has finished
+     */
+    public static Run startRun(String template, String target) {
+        return instance == null ? NOOP_RUN : instance.newRun(template, target);
+    }
+
+    /**
+     * Reads on this thread are counted against the scope, e.g. a Stack name, until it is closed
+     * @param name name of the scope
+     * @return the scope, to be closed when the reads have finished
+     */
+    public static Scope enter(String name) {
+
+        return instance == null ? NOOP_SCOPE : push(name);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// package private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * @param template name of the Template
+     * @param target dtap/vpc/application being synthesized
+     * @return a run reported by this tracker
+     */
+    Run newRun(String template, String target) {
+        return new Run(this, template, target);
+    }
+
+    /**
+     * @param name name of the scope
+     * @return the scope, whether or not tracking is enabled
+     */
+    static Scope push(String name) {
+
+        Deque<String> current = scopes.get();
+        current.push(name);
+
+        return current::pop;
+    }
+
+    /**
+     * @return the report for every finished run
+     */
+    synchronized ObjectNode toJson() {
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.putArray("runs").addAll(finished);
+
+        return json;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static PropertyAccessTracker create() {
+
+        String report = System.getProperty(PROPS_TRACKING);
+        if (report == null || report.isEmpty()) {
+            return null;
+        }
+
+        return new PropertyAccessTracker(Paths.get(report), Integer.getInteger(PROPS_TRACKING_HOT, DEFAULT_HOT_READS));
+    }
+
+    private void finished(ObjectNode run) {
+
+        ObjectNode json;
+        synchronized (this) {
+            finished.addLast(run);
+            if (finished.size() > MAX_RUNS) {
+                finished.removeFirst();
+            }
+            json = toJson();
+        }
+
+        if (report == null) {
+            return;
+        }
+
+        try {
+            Path directory = report.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+
+            Path temp = Files.createTempFile(directory, ".props", ".json");
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(temp.toFile(), json);
+            Files.move(temp, report, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Unable to write property report : " + e.getMessage());
+        }
+    }
+
+    /**
+     * A scope that reads are counted against, closing it returns to the previous scope
+     */
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * The property reads of one Template run
+     */
+    public static final class Run implements AutoCloseable {
+
+        private final PropertyAccessTracker tracker;
+        private final String template;
+        private final String target;
+        private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> reads = new ConcurrentHashMap<>();
+
+        private AppProps appProps;
+        private boolean discarded;
+
+        private Run(PropertyAccessTracker tracker, String template, String target) {
+            this.tracker = tracker;
+            this.template = template;
+            this.target = target;
+        }
+
+        /**
+         * @param loaded the properties loaded for the run
+         * @return a view of the properties that counts every read, or the properties themselves if tracking is disabled
+         */
+        public AppProps track(AppProps loaded) {
+
+            if (tracker == null) {
+                return loaded;
+            }
+
+            appProps = loaded;
+            return loaded.tracking(this::record);
+        }
+
+        /**
+         * The run is left out of the report, e.g. because its stacks were restored from the cache without reading
+         * any properties
+         */
+        public void discard() {
+            discarded = true;
+        }
+
+        /**
+         * @return number of reads of each property, by scope
+         */
+        public SortedMap<String, SortedMap<String, Long>> getReads() {
+
+            SortedMap<String, SortedMap<String, Long>> counts = new TreeMap<>();
+            for (Map.Entry<String, ConcurrentMap<String, LongAdder>> scope : reads.entrySet()) {
+                SortedMap<String, Long> keys = new TreeMap<>();
+                scope.getValue().forEach((key, count) -> keys.put(key, count.sum()));
+                counts.put(scope.getKey(), keys);
+            }
+
+            return counts;
+        }
+
+        /**
+         * @return the properties that were loaded but never read
+         */
+        public SortedSet<String> getUnused() {
+
+            SortedSet<String> unused = new TreeSet<>(appProps == null ? new TreeSet<>() : appProps.asMap().keySet());
+            for (ConcurrentMap<String, LongAdder> scope : reads.values()) {
+                unused.removeAll(scope.keySet());
+            }
+
+            return unused;
+        }
+
+        @Override
+        public void close() {
+
+            if (tracker == null || discarded) {
+                return;
+            }
+
+            ObjectNode json = JsonNodeFactory.instance.objectNode();
+            json.put("template", template);
+            json.put("target", target);
+
+            ArrayNode unused = json.putArray("unused");
+            getUnused().forEach(unused::add);
+
+            ArrayNode hot = json.putArray("hot");
+            ObjectNode counts = json.putObject("reads");
+
+            for (Map.Entry<String, SortedMap<String, Long>> scope : getReads().entrySet()) {
+                ObjectNode scopeCounts = counts.putObject(scope.getKey());
+                for (Map.Entry<String, Long> key : scope.getValue().entrySet()) {
+                    scopeCounts.put(key.getKey(), key.getValue());
+                    if (key.getValue() >= tracker.hotReads) {
+                        hot.addObject().put("scope", scope.getKey()).put("key", key.getKey()).put("reads", key.getValue());
+                    }
+                }
+            }
+
+            tracker.finished(json);
+        }
+
+        private void record(String key) {
+
+            String scope = scopes.get().peek();
+            if (scope == null) {
+                scope = TEMPLATE_SCOPE;
+            }
+
+            ConcurrentMap<String, LongAdder> keys = reads.get(scope);
+            if (keys == null) {
+                keys = reads.computeIfAbsent(scope, name -> new ConcurrentHashMap<>());
+            }
+
+            LongAdder count = keys.get(key);
+            if (count == null) {
+                count = keys.computeIfAbsent(key, name -> new LongAdder());
+            }
+
+            count.increment();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * <p>Loads the properties for a dtap/vpc/application into a {@link LayeredProps}.</p>
+ *
+ * <ul>
+ *     <li>defaults : resources/defaults.json, if it exists</li>
+ *     <li>dtap : resources/dtap/&lt;dtap&gt;.json</li>
+ *     <li>vpc : resources/vpc/&lt;vpc&gt;.json, if a vpc is given</li>
+ *     <li>application : resources/application/&lt;application&gt;.json</li>
+ *     <li>system properties : any -Dcdkiac.&lt;key&gt;=value</li>
+ *     <li>environment variables : any CDKIAC_&lt;KEY&gt;=value, the key is lower cased</li>
+ * </ul>
+ *
+ * <p>Files are streamed straight into a JSON reader, either from the classpath, which may be a directory or a jar, or
+ * from an external config directory given by <b>-Dconfig.dir</b>. A file in the config directory takes the place of
+ * the file with the same name on the classpath, so a packaged jar can be pointed at a different set of properties.</p>
+ */
+public class PropertyLoader {
+
+    private static final String DTAP = "dtap";
+    private static final String VPC = "vpc";
+    private static final String APPLICATION = "application";
+    private static final String APP_ID = "app_id";
+
+    private static final String DEFAULTS_FILE = "defaults.json";
+    private static final String RESOURCE_FILE_EXTENSION = ".json";
+    private static final String RESOURCE_FILE_PATTERN = "%s/%s" + RESOURCE_FILE_EXTENSION;
+
+    /**
+     * System property holding the external config directory
+     */
+    public static final String CONFIG_DIR = "config.dir";
+
+    private static final String SYSTEM_PROPERTY_PREFIX = "cdkiac.";
+    private static final String ENVIRONMENT_PREFIX = "CDKIAC_";
+
+    private PropertyLoader() { }
+
+    /**
+     * @param dtap name of the dtap properties file
+     * @param vpc name of the vpc properties file, may be null or empty
+     * @param application name of the application properties file
+     * @return the loaded layers
+     * @throws IOException Thrown if a properties file could not be loaded
+     */
+    public static LayeredProps load(String dtap, String vpc, String application) throws IOException {
+        return load(dtap, vpc, application, System.getProperties(), System.getenv());
+    }
+
+    /**
+     * @param dtap name of the dtap properties file
+     * @param vpc name of the vpc properties file, may be null or empty
+     * @param application name of the application properties file
+     * @param systemProperties system properties to take overrides from
+     * @param environment environment variables to take overrides from
+     * @return the loaded layers
+     * @throws IOException Thrown if a properties file could not be loaded
+     */
+    public static LayeredProps load(String dtap,
+                                    String vpc,
+                                    String application,
+                                    Properties systemProperties,
+                                    Map<String, String> environment) throws IOException {
+
+        LayeredProps props = new LayeredProps();
+
+        try (Reader defaults = open(DEFAULTS_FILE)) {
+            if (defaults != null) {
+                props.addProps(LayeredProps.Layer.DEFAULTS, parseProperties(defaults, DEFAULTS_FILE));
+            }
+        }
+
+        if (dtap != null && dtap.length() > 0) {
+            props.addProps(LayeredProps.Layer.DTAP, loadProperties(String.format(RESOURCE_FILE_PATTERN, DTAP, dtap)));
+            props.addProp(LayeredProps.Layer.DTAP, DTAP, dtap);
+        }
+
+        if (vpc != null && vpc.length() > 0) {
+            props.addProps(LayeredProps.Layer.VPC, loadProperties(String.format(RESOURCE_FILE_PATTERN, VPC, vpc)));
+            props.addProp(LayeredProps.Layer.VPC, VPC, vpc);
+        }
+
+        props.addProp(LayeredProps.Layer.APPLICATION, APP_ID, application);
+        props.addProps(LayeredProps.Layer.APPLICATION, loadProperties(String.format(RESOURCE_FILE_PATTERN, APPLICATION, application)));
+
+        for (String name : systemProperties.stringPropertyNames()) {
+            if (name.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+                props.addProp(LayeredProps.Layer.SYSTEM_PROPERTIES, name.substring(SYSTEM_PROPERTY_PREFIX.length()), systemProperties.getProperty(name));
+            }
+        }
+
+        for (Map.Entry<String, String> variable : environment.entrySet()) {
+            if (variable.getKey().startsWith(ENVIRONMENT_PREFIX)) {
+                props.addProp(LayeredProps.Layer.ENVIRONMENT, variable.getKey().substring(ENVIRONMENT_PREFIX.length()).toLowerCase(), variable.getValue());
+            }
+        }
+
+        return props;
+    }
+
+    /**
+     * Lists the properties files in one of the resources folders, from the config directory and every classpath entry
+     * @param directory dtap, vpc or application
+     * @return names of the files without the .json extension, sorted
+     * @throws IOException Thrown if a folder could not be read
+     */
+    public static SortedSet<String> list(String directory) throws IOException {
+        return list(directory, PropertyLoader.class.getClassLoader());
+    }
+
+    /**
+     * @param directory dtap, vpc or application
+     * @param classLoader class loader to list the classpath entries of
+     * @return names of the files without the .json extension, sorted
+     * @throws IOException Thrown if a folder could not be read
+     */
+    static SortedSet<String> list(String directory, ClassLoader classLoader) throws IOException {
+
+        SortedSet<String> names = new TreeSet<>();
+
+        Path configDirectory = configDirectory();
+        if (configDirectory != null && Files.isDirectory(configDirectory.resolve(directory))) {
+            listDirectory(configDirectory.resolve(directory), names);
+        }
+
+        Enumeration<URL> urls = classLoader.getResources(directory);
+        while (urls.hasMoreElements()) {
+
+            URL url = urls.nextElement();
+            if ("jar".equals(url.getProtocol())) {
+                listJar(url, directory, names);
+            } else if ("file".equals(url.getProtocol())) {
+                try {
+                    listDirectory(Paths.get(url.toURI()), names);
+                } catch (URISyntaxException e) {
+                    throw new IOException("Unable to list resources/" + directory);
+                }
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Loads a single properties file, without any of the other layers
+     * @param directory dtap, vpc or application
+     * @param name name of the file without the .json extension
+     * @return properties of the file
+     * @throws IOException Thrown if the file could not be loaded
+     */
+    public static Map<String, Object> loadFile(String directory, String name) throws IOException {
+        return loadProperties(String.format(RESOURCE_FILE_PATTERN, directory, name));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static Map<String, Object> loadProperties(String property) throws IOException {
+
+        try (Reader reader = open(property)) {
+            if (reader == null) {
+                throw new IOException("Unable to load property file : resources/" + property);
+            }
+            return parseProperties(reader, property);
+        }
+    }
+
+    /**
+     * @return a reader for the file in the config directory if it exists there, otherwise for the classpath resource,
+     * or null if neither exists
+     */
+    private static Reader open(String property) throws IOException {
+
+        Path configDirectory = configDirectory();
+        if (configDirectory != null) {
+            Path file = configDirectory.resolve(property);
+            if (Files.isRegularFile(file)) {
+                return Channels.newReader(FileChannel.open(file, StandardOpenOption.READ), StandardCharsets.UTF_8.newDecoder(), -1);
+            }
+        }
+
+        InputStream stream = PropertyLoader.class.getClassLoader().getResourceAsStream(property);
+        return stream == null ? null : new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> parseProperties(Reader reader, String property) throws IOException {
+
+        JsonReader json = new JsonReader(reader);
+        try {
+            if (json.peek() == JsonToken.END_DOCUMENT) {
+                return new LinkedHashMap<>();
+            }
+        } catch (EOFException e) {
+            return new LinkedHashMap<>();
+        }
+
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new IOException("Property file resources/" + property + " is not a JSON object");
+        }
+
+        try {
+            return readObject(json);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Unable to parse property file resources/" + property + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a JSON value into a String, Long, BigDecimal, Boolean, immutable List or immutable Map. Nulls are dropped.
+     */
+    private static Object readValue(JsonReader json) throws IOException {
+
+        switch (json.peek()) {
+            case STRING:
+                return json.nextString();
+            case NUMBER:
+                return readNumber(json.nextString());
+            case BOOLEAN:
+                return json.nextBoolean();
+            case BEGIN_ARRAY:
+                return readArray(json);
+            case BEGIN_OBJECT:
+                return ImmutableMap.copyOf(readObject(json));
+            default:
+                json.nextNull();
+                return null;
+        }
+    }
+
+    private static List<Object> readArray(JsonReader json) throws IOException {
+
+        ImmutableList.Builder<Object> list = ImmutableList.builder();
+
+        json.beginArray();
+        while (json.hasNext()) {
+            Object value = readValue(json);
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        json.endArray();
+
+        return list.build();
+    }
+
+    private static Map<String, Object> readObject(JsonReader json) throws IOException {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+            Object value = readValue(json);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        json.endObject();
+
+        return map;
+    }
+
+    private static Object readNumber(String number) {
+
+        try {
+            return Long.valueOf(number);
+        } catch (NumberFormatException e) {
+            return new BigDecimal(number);
+        }
+    }
+
+    private static Path configDirectory() {
+
+        String configDirectory = System.getProperty(CONFIG_DIR);
+        return configDirectory == null || configDirectory.isEmpty() ? null : Paths.get(configDirectory);
+    }
+
+    private static void listDirectory(Path directory, SortedSet<String> names) throws IOException {
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + RESOURCE_FILE_EXTENSION)) {
+            for (Path file : files) {
+                names.add(stripExtension(file.getFileName().toString()));
+            }
+        }
+    }
+
+    private static void listJar(URL url, String directory, SortedSet<String> names) throws IOException {
+
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+
+        String prefix = directory + "/";
+        try (JarFile jar = ((JarURLConnection) connection).getJarFile()) {
+
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+
+                String name = entries.nextElement().getName();
+                String file = name.startsWith(prefix) ? name.substring(prefix.length()) : "";
+                if (!file.contains("/") && file.endsWith(RESOURCE_FILE_EXTENSION)) {
+                    names.add(stripExtension(file));
+                }
+            }
+        }
+    }
+
+    private static String stripExtension(String file) {
+        return file.substring(0, file.length() - RESOURCE_FILE_EXTENSION.length());
+    }
+}
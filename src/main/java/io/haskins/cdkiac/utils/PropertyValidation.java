@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>Collects every property that is missing or can not be parsed, instead of failing on the first one. A validating
+ * view of the AppProps, see {@link AppProps#validating(PropertyValidation)}, records the problem here and returns a
+ * placeholder value so the Stacks carry on being defined and every problem is found in a single pass.</p>
+ *
+ * <p>Once the Stacks have been defined the keys each Stack read are passed to {@link #read(String, Set)} so every
+ * problem can be reported against the Stacks that need the property.</p>
+ */
+public class PropertyValidation {
+
+    private final Map<String, String> problems = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> stacks = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records a missing or invalid property, only the first problem for each key is kept
+     * @param key key of the property
+     * @param message description of the problem
+     */
+    public void record(String key, String message) {
+        problems.putIfAbsent(key, message);
+    }
+
+    /**
+     * @param stackName name of a Stack
+     * @param keys keys of every property the Stack read
+     */
+    public void read(String stackName, Set<String> keys) {
+        stacks.put(stackName, new TreeSet<>(keys));
+    }
+
+    /**
+     * @param key key of a property
+     * @return true if a problem was recorded for the property
+     */
+    public boolean isRecorded(String key) {
+        return problems.containsKey(key);
+    }
+
+    /**
+     * @return true if no problems were recorded
+     */
+    public boolean isValid() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * @return description of the problem with each property, ordered by key
+     */
+    public SortedMap<String, String> getProblems() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(problems));
+    }
+
+    /**
+     * @param key key of a property
+     * @return names of the Stacks that read the property, empty if it was only read by the Template
+     */
+    public SortedSet<String> getStacks(String key) {
+
+        SortedSet<String> names = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> stack : stacks.entrySet()) {
+            if (stack.getValue().contains(key)) {
+                names.add(stack.getKey());
+            }
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Mark Haskins
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.MIT License
+ */
+
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * <p>Records the wall time, CPU time and bytes allocated by each phase of a synth, and by each Stack and Construct,
+ * and writes them as a JSON report. Enabled with <b>-Dprofile=&lt;report file&gt;</b>, add <b>-Dprofile.jfr=true</b> to
+ * also emit a JFR event for every measurement. The JFR events are only built by the jfr profile, see
+ * {@link Events}.</p>
+ *
+ * <p>CPU time and allocations are those of the JVM thread. Most of the work of defining a Stack happens in the jsii
+ * node process, which only shows up in the wall time.</p>
+ *
+ * <p>When profiling is disabled {@link #start(String, String)} returns a shared measurement that does nothing, so
+ * the cost is a single field read.</p>
+ */
+public class SynthesisProfiler {
+
+    /**
+     * System property holding the file the report is written to
+     */
+    public static final String PROFILE = "profile";
+
+    /**
+     * System property that enables the JFR events
+     */
+    public static final String PROFILE_JFR = "profile.jfr";
+
+    public static final String PHASE = "phase";
+    public static final String STACK = "stack";
+    public static final String CONSTRUCT = "construct";
+
+    private static final String TOTAL = "total";
+    private static final String EVENTS = "io.haskins.cdkiac.utils.SynthesisEvents";
+    private static final int MAX_RUNS = 1000;
+
+    private static final Measurement NOOP = new Measurement(null, null, null, false);
+
+    private static final SynthesisProfiler instance = create();
+
+    private static final ThreadLocal<Deque<Run>> runs = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final Path report;
+    private final Events events;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Deque<Run> finished = new ArrayDeque<>();
+
+    SynthesisProfiler(Path report, Events events) {
+        this.report = report;
+        this.events = events;
+    }
+
+    /**
+     * @return true if profiling is enabled
+     */
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Starts profiling a Template run on this thread. Measurements started on this thread before the run is closed are
+     * added to it, and the report is written when it is closed.
+     * @param template name of the Template
+     * @param target dtap/vpc/application being synthesized
+     * @return the run, to be closed when the Template has finished
+     */
+    public static Measurement startRun(String template, String target) {
+        return instance == null ? NOOP : instance.begin(template, target);
+    }
+
+    /**
+     * Starts measuring part of the current run
+     * @param kind {@link #PHASE}, {@link #STACK} or {@link #CONSTRUCT}
+     * @param name name of the phase, Stack or Construct
+     * @return the measurement, to be closed when the work has finished
+     */
+    public static Measurement start(String kind, String name) {
+        return instance == null ? NOOP : instance.measure(kind, name);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// package private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    Measurement begin(String template, String target) {
+
+        Run run = new Run(template, target);
+        runs.get().push(run);
+
+        return new Measurement(this, run, sample(PHASE, TOTAL), true);
+    }
+
+    Measurement measure(String kind, String name) {
+
+        Run run = runs.get().peek();
+        return run == null ? NOOP : new Measurement(this, run, sample(kind, name), false);
+    }
+
+    /**
+     * @return the report for every finished run
+     */
+    synchronized ObjectNode toJson() {
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        ArrayNode array = json.putArray("runs");
+        for (Run run : finished) {
+            array.add(run.toJson());
+        }
+
+        return json;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    ///// private methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static SynthesisProfiler create() {
+
+        String report = System.getProperty(PROFILE);
+        if (report == null || report.isEmpty()) {
+            return null;
+        }
+
+        Events events = Boolean.parseBoolean(System.getProperty(PROFILE_JFR)) ? loadEvents() : null;
+        return new SynthesisProfiler(Paths.get(report), events);
+    }
+
+    private static Events loadEvents() {
+
+        try {
+            return Class.forName(EVENTS).asSubclass(Events.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("JFR events are not available, build with mvn -Pjfr on Java 11 or later to enable them : " + e);
+            return null;
+        }
+    }
+
+    private Sample sample(String kind, String name) {
+
+        Object event = events == null ? null : events.begin();
+        return new Sample(kind, name, snapshot(), event);
+    }
+
+    private long[] snapshot() {
+
+        long cpu = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+
+        long allocated = 0;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                allocated = hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return new long[] { System.nanoTime(), cpu, allocated };
+    }
+
+    private void finish(Run run, Sample sample, boolean endsRun) {
+
+        long[] end = snapshot();
+        sample.finish(end);
+
+        if (events != null) {
+            events.commit(sample.event, run, sample);
+        }
+
+        if (endsRun) {
+            runs.get().remove(run);
+            run.samples.add(0, sample);
+            finished(run);
+        } else {
+            run.samples.add(sample);
+        }
+    }
+
+    private void finished(Run run) {
+
+        ObjectNode json;
+        synchronized (this) {
+            finished.addLast(run);
+            if (finished.size() > MAX_RUNS) {
+                finished.removeFirst();
+            }
+            json = toJson();
+        }
+
+        if (report == null) {
+            return;
+        }
+
+        try {
+            Path directory = report.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+
+            Path temp = Files.createTempFile(directory, ".profile", ".json");
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(temp.toFile(), json);
+            Files.move(temp, report, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Unable to write profile : " + e.getMessage());
+        }
+    }
+
+    /**
+     * A running measurement, closing it records the time and allocations since it was started
+     */
+    public static final class Measurement implements AutoCloseable {
+
+        private final SynthesisProfiler profiler;
+        private final Run run;
+        private final Sample sample;
+        private final boolean endsRun;
+
+        private Measurement(SynthesisProfiler profiler, Run run, Sample sample, boolean endsRun) {
+            this.profiler = profiler;
+            this.run = run;
+            this.sample = sample;
+            this.endsRun = endsRun;
+        }
+
+        @Override
+        public void close() {
+            if (profiler != null) {
+                profiler.finish(run, sample, endsRun);
+            }
+        }
+    }
+
+    /**
+     * The measurements of one Template run
+     */
+    static final class Run {
+
+        final String template;
+        final String target;
+        final List<Sample> samples = new ArrayList<>();
+
+        private Run(String template, String target) {
+            this.template = template;
+            this.target = target;
+        }
+
+        private ObjectNode toJson() {
+
+            ObjectNode json = JsonNodeFactory.instance.objectNode();
+            json.put("template", template);
+            json.put("target", target);
+
+            ArrayNode array = json.putArray("measurements");
+            for (Sample sample : samples) {
+                array.addObject()
+                        .put("kind", sample.kind)
+                        .put("name", sample.name)
+                        .put("wallMillis", sample.wallNanos / 1_000_000.0)
+                        .put("cpuMillis", sample.cpuNanos / 1_000_000.0)
+                        .put("allocatedBytes", sample.allocatedBytes);
+            }
+
+            return json;
+        }
+    }
+
+    /**
+     * A single measurement
+     */
+    static final class Sample {
+
+        final String kind;
+        final String name;
+        private final long[] start;
+        private final Object event;
+
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+
+        private Sample(String kind, String name, long[] start, Object event) {
+            this.kind = kind;
+            this.name = name;
+            this.start = start;
+            this.event = event;
+        }
+
+        private void finish(long[] end) {
+            wallNanos = end[0] - start[0];
+            cpuNanos = end[1] - start[1];
+            allocatedBytes = end[2] - start[2];
+        }
+    }
+
+    /**
+     * Emits a JFR event for each measurement. Implemented by SynthesisEvents in src/jfr/java, which is only compiled
+     * by the jfr profile on Java 11 or later and is loaded by name, so nothing in the main sources depends on jdk.jfr.
+     */
+    interface Events {
+
+        /**
+         * Called when a measurement starts
+         * @return the begun event, handed back to {@link #commit(Object, Run, Sample)}
+         */
+        Object begin();
+
+        /**
+         * Called when a measurement has finished, ends and commits the event
+         * @param event the event returned by {@link #begin()}
+         * @param run run the measurement belongs to
+         * @param sample the finished measurement
+         */
+        void commit(Object event, Run run, Sample sample);
+    }
+}
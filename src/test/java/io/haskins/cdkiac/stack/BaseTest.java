@@ -1,16 +1,44 @@
 package io.haskins.cdkiac.stack;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.haskins.cdkiac.template.TemplateDiff;
 import io.haskins.cdkiac.utils.AppProps;
+import org.junit.Assert;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
+import software.amazon.awscdk.App;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * <p>Abstract class that all tests should implement</p>
  *
- * <p>Provides functionality such as AppProps, and a HashMap to Yaml converter</p>
+ * <p>Provides functionality such as AppProps, a HashMap to Yaml converter, and snapshot testing of stacks. Each test
+ * gets its own CDK App, and {@link #assertSnapshot(CdkIacStack)} synthesizes a stack defined in it and compares the
+ * template with the golden copy in src/test/resources/snapshots/&lt;test class&gt;/&lt;stack&gt;.template.json.</p>
+ *
+ * <p>A missing golden template fails the test like a changed one. Run the tests with <b>-Dsnapshot.update=true</b> to
+ * write the golden templates, for a new stack or after an intended change, and review them before checking them in.
+ * {@link #resources(CdkIacStack, String)} gives the resources of a type for assertions on the ones that matter.</p>
  */
 public class BaseTest {
 
+    private static final String SNAPSHOT_UPDATE = "snapshot.update";
+    private static final Path SNAPSHOT_DIRECTORY = Paths.get("src", "test", "resources", "snapshots");
+    private static final String TEMPLATE_FILE_PATTERN = "%s.template.json";
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    protected final App app = new App();
     protected final AppProps appProps = new AppProps();
 
     private final DumperOptions options = new DumperOptions();
@@ -25,4 +53,66 @@ public class BaseTest {
     protected String createYaml(Object cdkOutput) {
         return yaml.dump(cdkOutput);
     }
+
+    /**
+     * Synthesizes the stack and compares it with its golden template
+     * @param stack stack defined in this test's App
+     */
+    protected void assertSnapshot(CdkIacStack stack) {
+        assertSnapshot(stack.getName(), app.synthesizeStack(stack.getName()).getTemplate());
+    }
+
+    /**
+     * Compares a template with its golden copy
+     * @param stackName name of the stack
+     * @param template CloudFormation template
+     */
+    protected void assertSnapshot(String stackName, Object template) {
+
+        Path golden = SNAPSHOT_DIRECTORY.resolve(getClass().getSimpleName()).resolve(String.format(TEMPLATE_FILE_PATTERN, stackName));
+        JsonNode actual = mapper.valueToTree(template);
+
+        try {
+            if (Boolean.parseBoolean(System.getProperty(SNAPSHOT_UPDATE))) {
+                Files.createDirectories(golden.getParent());
+                mapper.writerWithDefaultPrettyPrinter().writeValue(golden.toFile(), mapper.treeToValue(actual, Object.class));
+                return;
+            }
+
+            if (!Files.exists(golden)) {
+                Assert.fail(String.format("No snapshot %s for stack %s, run with -D%s=true to create it", golden, stackName, SNAPSHOT_UPDATE));
+            }
+
+            List<TemplateDiff.Change> changes = TemplateDiff.diff(mapper.readTree(golden.toFile()), actual);
+            if (!changes.isEmpty()) {
+                Assert.fail(String.format("Stack %s differs from %s, run with -D%s=true if this is intended%n    %s",
+                        stackName,
+                        golden,
+                        SNAPSHOT_UPDATE,
+                        changes.stream().map(TemplateDiff.Change::toString).collect(Collectors.joining(System.lineSeparator() + "    "))));
+            }
+        } catch (IOException e) {
+            Assert.fail("Unable to read or write snapshot " + golden + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Synthesizes the stack and returns its resources of one type
+     * @param stack stack defined in this test's App
+     * @param type CloudFormation resource type, eg AWS::EC2::Subnet
+     * @return resources by logical ID, in template order
+     */
+    protected Map<String, JsonNode> resources(CdkIacStack stack, String type) {
+
+        JsonNode template = mapper.valueToTree(app.synthesizeStack(stack.getName()).getTemplate());
+
+        Map<String, JsonNode> resources = new LinkedHashMap<>();
+        template.path("Resources").fields().forEachRemaining(resource -> {
+            if (type.equals(resource.getValue().path("Type").asText())) {
+                resources.put(resource.getKey(), resource.getValue());
+            }
+        });
+
+        return resources;
+    }
 }
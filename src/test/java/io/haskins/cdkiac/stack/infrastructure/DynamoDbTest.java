@@ -0,0 +1,127 @@
+package io.haskins.cdkiac.stack.infrastructure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.haskins.cdkiac.stack.BaseTest;
+import io.haskins.cdkiac.stack.StackException;
+import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.PropertyValidation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class DynamoDbTest extends BaseTest {
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        appProps.clear();
+
+        appProps.addProp("dtap","dtap");
+        appProps.addProp("vpc", "vpc");
+        appProps.addProp("app_id","orders");
+
+        appProps.addProp("dynamodb_billing_mode", "PAY_PER_REQUEST");
+        appProps.addProp("dynamodb_partition_key", "customer:S");
+        appProps.addProp("dynamodb_sort_key", "created:N");
+        appProps.addProp("dynamodb_gsis", Collections.singletonList(Collections.singletonMap("name", "by-status")));
+        appProps.addProp("dynamodb_dax", false);
+    }
+
+    @Test(expected = StackException.class)
+    public void indexWithoutKeyIsRejected() throws StackException {
+        new DynamoDb(app, "dynamodb-stack", appProps.freeze());
+    }
+
+    @Test
+    public void everyMissingPropertyIsRecordedWhenValidating() throws StackException {
+
+        AppProps props = new AppProps();
+        props.addProp("dtap","dtap");
+        props.addProp("vpc", "vpc");
+        props.addProp("app_id","orders");
+
+        PropertyValidation validation = new PropertyValidation();
+        new DynamoDb(app, "dynamodb-validation", props.freeze().validating(validation));
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList(
+                "dynamodb_billing_mode", "dynamodb_dax", "dynamodb_gsis", "dynamodb_partition_key", "dynamodb_sort_key")),
+                validation.getProblems().keySet());
+    }
+
+    @Test
+    public void createOnDemandTemplate() throws StackException {
+
+        Map<String, Object> gsi = new HashMap<>();
+        gsi.put("name", "by-status");
+        gsi.put("partition_key", "status:S");
+        gsi.put("sort_key", "created:N");
+        gsi.put("projection", "KEYS_ONLY");
+        appProps.addProp("dynamodb_gsis", Collections.singletonList(gsi));
+
+        DynamoDb stack = new DynamoDb(app, "dynamodb-stack", appProps.freeze());
+        assertSnapshot(stack);
+
+        JsonNode table = resources(stack, "AWS::DynamoDB::Table").get("DynamoDb").path("Properties");
+        Assert.assertEquals("PAY_PER_REQUEST", table.path("BillingMode").asText());
+        Assert.assertFalse(table.has("ProvisionedThroughput"));
+        Assert.assertEquals("by-status", table.path("GlobalSecondaryIndexes").path(0).path("IndexName").asText());
+
+        // on demand tables scale themselves, and there is no DAX unless asked for
+        Assert.assertTrue(resources(stack, "AWS::ApplicationAutoScaling::ScalableTarget").isEmpty());
+        Assert.assertTrue(resources(stack, "AWS::DAX::Cluster").isEmpty());
+    }
+
+    @Test
+    public void createProvisionedTemplateWithDax() throws StackException {
+
+        Map<String, Object> gsi = new HashMap<>();
+        gsi.put("name", "by-status");
+        gsi.put("partition_key", "status:S");
+        appProps.addProp("dynamodb_gsis", Collections.singletonList(gsi));
+
+        appProps.addProp("dynamodb_billing_mode", "PROVISIONED");
+        appProps.addProp("dynamodb_read_capacity", 5);
+        appProps.addProp("dynamodb_max_read_capacity", 50);
+        appProps.addProp("dynamodb_write_capacity", 5);
+        appProps.addProp("dynamodb_max_write_capacity", 20);
+        appProps.addProp("dynamodb_target_utilization", 70);
+        appProps.addProp("account_id", "01234567890");
+
+        appProps.addProp("dynamodb_dax", true);
+        appProps.addProp("dynamodb_dax_node_type", "dax.r4.large");
+        appProps.addProp("dynamodb_dax_nodes", 3);
+        appProps.addProp("vpc_id", "vpc-xxxxxxxx");
+        appProps.addProp("vpc_cidr", "10.0.0.0/16");
+        appProps.addProp("ec2_subnets", Arrays.asList("subnet-xxxxxxxa", "subnet-xxxxxxxb", "subnet-xxxxxxxc"));
+
+        DynamoDb stack = new DynamoDb(app, "dynamodb-provisioned", appProps.freeze());
+        assertSnapshot(stack);
+
+        JsonNode table = resources(stack, "AWS::DynamoDB::Table").get("DynamoDb").path("Properties");
+        Assert.assertEquals("PROVISIONED", table.path("BillingMode").asText());
+        Assert.assertEquals(5, table.path("ProvisionedThroughput").path("ReadCapacityUnits").asInt());
+
+        // read and write scaling of both the table and its index
+        Map<String, String> targets = new TreeMap<>();
+        resources(stack, "AWS::ApplicationAutoScaling::ScalableTarget").forEach((id, target) -> targets.put(id,
+                target.path("Properties").path("ScalableDimension").asText() + " " +
+                target.path("Properties").path("MinCapacity").asInt() + "-" + target.path("Properties").path("MaxCapacity").asInt()));
+        Assert.assertEquals("{" +
+                "Index1ReadScalableTarget=dynamodb:index:ReadCapacityUnits 5-50, Index1WriteScalableTarget=dynamodb:index:WriteCapacityUnits 5-20, " +
+                "TableReadScalableTarget=dynamodb:table:ReadCapacityUnits 5-50, TableWriteScalableTarget=dynamodb:table:WriteCapacityUnits 5-20}", targets.toString());
+        Assert.assertEquals(4, resources(stack, "AWS::ApplicationAutoScaling::ScalingPolicy").size());
+
+        JsonNode dax = resources(stack, "AWS::DAX::Cluster").get("Dax").path("Properties");
+        Assert.assertEquals("dax.r4.large", dax.path("NodeType").asText());
+        Assert.assertEquals(3, dax.path("ReplicationFactor").asInt());
+        Assert.assertEquals(3, resources(stack, "AWS::DAX::SubnetGroup").get("DaxSubnetGroup").path("Properties").path("SubnetIds").size());
+    }
+}
@@ -0,0 +1,25 @@
+package io.haskins.cdkiac.stack.infrastructure;
+
+import io.haskins.cdkiac.stack.BaseTest;
+import io.haskins.cdkiac.stack.StackException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KMSTest extends BaseTest {
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        appProps.clear();
+
+        appProps.addProp("dtap","dtap");
+        appProps.addProp("vpc", "vpc");
+        appProps.addProp("app_id","kms");
+    }
+
+    @Test
+    public void createTemplate() throws StackException {
+        assertSnapshot(new KMS(app, "kms-stack", appProps.freeze()));
+    }
+}
@@ -0,0 +1,93 @@
+package io.haskins.cdkiac.stack.infrastructure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.haskins.cdkiac.stack.BaseTest;
+import io.haskins.cdkiac.stack.StackException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class SQSTest extends BaseTest {
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        appProps.clear();
+
+        appProps.addProp("dtap","dtap");
+        appProps.addProp("vpc", "vpc");
+        appProps.addProp("app_id","orders");
+
+        appProps.addProp("sns_raw_message_delivery", true);
+        appProps.addProp("sqs_receive_wait_time", 20);
+        appProps.addProp("sqs_visibility_timeout", 300);
+        appProps.addProp("sqs_message_retention", 345600);
+        appProps.addProp("sqs_max_receive_count", 5);
+        appProps.addProp("sqs_fifo", false);
+        appProps.addProp("sqs_fifo_high_throughput", true);
+        appProps.addProp("sqs_content_based_deduplication", false);
+    }
+
+    @Test
+    public void createStandardTemplate() throws StackException {
+
+        SQS stack = new SQS(app, "sqs-standard", appProps.freeze());
+        assertSnapshot(stack);
+
+        JsonNode queue = resources(stack, "AWS::SQS::Queue").get("Queue").path("Properties");
+        Assert.assertFalse(queue.has("FifoQueue"));
+        Assert.assertFalse(queue.has("FifoThroughputLimit"));
+        Assert.assertEquals(20, queue.path("ReceiveMessageWaitTimeSeconds").asInt());
+        Assert.assertEquals(5, queue.path("RedrivePolicy").path("maxReceiveCount").asInt());
+    }
+
+    @Test
+    public void createFifoTemplate() throws StackException {
+
+        appProps.addProp("sqs_fifo", true);
+        appProps.addProp("sqs_content_based_deduplication", true);
+        SQS stack = new SQS(app, "sqs-fifo", appProps.freeze());
+        assertSnapshot(stack);
+
+        Map<String, JsonNode> queues = resources(stack, "AWS::SQS::Queue");
+
+        JsonNode queue = queues.get("Queue").path("Properties");
+        Assert.assertTrue(queue.path("FifoQueue").asBoolean());
+        Assert.assertTrue(queue.path("QueueName").asText().endsWith(".fifo"));
+        Assert.assertTrue(queue.path("ContentBasedDeduplication").asBoolean());
+        Assert.assertEquals("messageGroup", queue.path("DeduplicationScope").asText());
+        Assert.assertEquals("perMessageGroupId", queue.path("FifoThroughputLimit").asText());
+
+        // the dead letter queue of a FIFO queue has to be FIFO too
+        JsonNode dlq = queues.get("DeadLetterQueue").path("Properties");
+        Assert.assertTrue(dlq.path("FifoQueue").asBoolean());
+        Assert.assertTrue(dlq.path("QueueName").asText().endsWith("-dlq.fifo"));
+
+        JsonNode topic = resources(stack, "AWS::SNS::Topic").get("Topic").path("Properties");
+        Assert.assertTrue(topic.path("FifoTopic").asBoolean());
+        Assert.assertEquals(1, resources(stack, "AWS::SNS::Subscription").size());
+    }
+
+    @Test
+    public void fifoWithoutHighThroughputUsesTheQueueDefaults() throws StackException {
+
+        appProps.addProp("sqs_fifo", true);
+        appProps.addProp("sqs_fifo_high_throughput", false);
+        SQS stack = new SQS(app, "sqs-fifo-standard-throughput", appProps.freeze());
+
+        JsonNode queue = resources(stack, "AWS::SQS::Queue").get("Queue").path("Properties");
+        Assert.assertTrue(queue.path("FifoQueue").asBoolean());
+        Assert.assertFalse(queue.has("DeduplicationScope"));
+        Assert.assertFalse(queue.has("FifoThroughputLimit"));
+    }
+
+    @Test(expected = StackException.class)
+    public void receiveWaitTimeOutOfRangeIsRejected() throws StackException {
+
+        appProps.addProp("sqs_receive_wait_time", 21);
+        new SQS(app, "sqs-stack", appProps.freeze());
+    }
+}
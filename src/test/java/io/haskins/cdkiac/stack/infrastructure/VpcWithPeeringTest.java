@@ -0,0 +1,194 @@
+package io.haskins.cdkiac.stack.infrastructure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.haskins.cdkiac.stack.BaseTest;
+import io.haskins.cdkiac.stack.StackException;
+import io.haskins.cdkiac.utils.AppProps;
+import io.haskins.cdkiac.utils.PropertyValidation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+public class VpcWithPeeringTest extends BaseTest {
+
+    @Before
+    public void setup() {
+        super.setup();
+
+        appProps.clear();
+
+        appProps.addProp("dtap","dtap");
+        appProps.addProp("vpc", "vpc");
+        appProps.addProp("app_id","network");
+
+        appProps.addProp("accountid", "01234567890");
+        appProps.addProp("keypair", "DevOps");
+        appProps.addProp("availability_zones", Arrays.asList("eu-west-1a", "eu-west-1b", "eu-west-1c"));
+        appProps.addProp("vpc_cidr", "10.0.0.0/16");
+        appProps.addProp("vpc_peer_id", "vpc-xxxxxxxx");
+        appProps.addProp("vpc_peer_cidr", "10.10.0.0/16");
+        appProps.addProp("vpc_peer_rt", "rtb-xxxxxxxx");
+
+        Map<String, Object> prefixLengths = new HashMap<>();
+        prefixLengths.put("private", 20);
+        prefixLengths.put("public", 20);
+        appProps.addProp("subnet_prefix_lengths", prefixLengths);
+
+        appProps.addProp("nat_egress", "single_instance");
+        appProps.addProp("nat_instance_type", "t3.micro");
+        appProps.addProp("vpc_gateway_endpoints", Collections.emptyList());
+        appProps.addProp("vpc_interface_endpoints", Collections.emptyList());
+    }
+
+    @Test
+    public void createSingleInstanceTemplate() throws StackException {
+
+        VpcWithPeering stack = new VpcWithPeering(app, "vpc-single-instance", appProps.freeze());
+        assertSnapshot(stack);
+
+        // one NAT instance and one private route table shared by all the zones
+        Assert.assertEquals(Collections.singletonList("nat"), natAutoScalingGroups(stack));
+        Assert.assertTrue(resources(stack, "AWS::EC2::NatGateway").isEmpty());
+        Assert.assertEquals(2, resources(stack, "AWS::EC2::RouteTable").size());
+    }
+
+    @Test
+    public void createInstancePerAzTemplate() throws StackException {
+
+        appProps.addProp("nat_egress", "instance_per_az");
+        VpcWithPeering stack = new VpcWithPeering(app, "vpc-instance-per-az", appProps.freeze());
+        assertSnapshot(stack);
+
+        Assert.assertEquals(Arrays.asList("nat-a", "nat-b", "nat-c"), natAutoScalingGroups(stack));
+        Assert.assertTrue(resources(stack, "AWS::EC2::NatGateway").isEmpty());
+        Assert.assertEquals(4, resources(stack, "AWS::EC2::RouteTable").size());
+    }
+
+    @Test
+    public void createGatewayPerAzTemplate() throws StackException {
+
+        appProps.addProp("nat_egress", "gateway_per_az");
+        VpcWithPeering stack = new VpcWithPeering(app, "vpc-gateway-per-az", appProps.freeze());
+        assertSnapshot(stack);
+
+        // a gateway in each zone's public subnet, and no NAT instances
+        Map<String, JsonNode> gateways = resources(stack, "AWS::EC2::NatGateway");
+        Assert.assertEquals(3, gateways.size());
+        Assert.assertEquals(3, gateways.values().stream().map(gateway -> gateway.path("Properties").path("SubnetId").toString()).distinct().count());
+        Assert.assertTrue(natAutoScalingGroups(stack).isEmpty());
+        Assert.assertEquals(4, resources(stack, "AWS::EC2::RouteTable").size());
+    }
+
+    @Test
+    public void createTemplateWithEndpoints() throws StackException {
+
+        appProps.addProp("nat_egress", "gateway_per_az");
+        appProps.addProp("vpc_gateway_endpoints", Arrays.asList("s3", "dynamodb"));
+        appProps.addProp("vpc_interface_endpoints", Arrays.asList("sqs", "ecr.api"));
+        VpcWithPeering stack = new VpcWithPeering(app, "vpc-endpoints", appProps.freeze());
+        assertSnapshot(stack);
+
+        Map<String, JsonNode> endpoints = resources(stack, "AWS::EC2::VPCEndpoint");
+        Map<String, String> types = new TreeMap<>();
+        endpoints.forEach((id, endpoint) -> types.put(id, endpoint.path("Properties").path("VpcEndpointType").asText()));
+        Assert.assertEquals("{VpcEndpointDynamodb=Gateway, VpcEndpointEcrApi=Interface, VpcEndpointS3=Gateway, VpcEndpointSqs=Interface}", types.toString());
+
+        // gateways are routed from every private route table, interfaces sit in every private subnet
+        Assert.assertEquals(3, endpoints.get("VpcEndpointS3").path("Properties").path("RouteTableIds").size());
+        Assert.assertEquals(3, endpoints.get("VpcEndpointSqs").path("Properties").path("SubnetIds").size());
+        Assert.assertTrue(endpoints.get("VpcEndpointSqs").path("Properties").path("PrivateDnsEnabled").asBoolean());
+    }
+
+    @Test(expected = StackException.class)
+    public void gatewayEndpointForInterfaceOnlyServiceIsRejected() throws StackException {
+
+        appProps.addProp("vpc_gateway_endpoints", Collections.singletonList("sqs"));
+        new VpcWithPeering(app, "vpc-stack", appProps.freeze());
+    }
+
+    @Test
+    public void createTemplateWithIsolatedSubnets() throws StackException {
+
+        Map<String, Object> prefixLengths = new HashMap<>();
+        prefixLengths.put("private", 19);
+        prefixLengths.put("public", 22);
+        prefixLengths.put("isolated", 24);
+        appProps.addProp("subnet_prefix_lengths", prefixLengths);
+
+        VpcWithPeering stack = new VpcWithPeering(app, "vpc-isolated", appProps.freeze());
+        assertSnapshot(stack);
+
+        // the first half of vpc_cidr is private, the third quarter public and the last quarter isolated
+        Map<String, String> cidrs = new TreeMap<>();
+        Map<String, JsonNode> subnets = resources(stack, "AWS::EC2::Subnet");
+        subnets.forEach((id, subnet) -> cidrs.put(id, subnet.path("Properties").path("AvailabilityZone").asText() + " " + subnet.path("Properties").path("CidrBlock").asText()));
+        Assert.assertEquals("{" +
+                "SubnetIsolatedA=eu-west-1a 10.0.192.0/24, SubnetIsolatedB=eu-west-1b 10.0.193.0/24, SubnetIsolatedC=eu-west-1c 10.0.194.0/24, " +
+                "SubnetPrivateA=eu-west-1a 10.0.0.0/19, SubnetPrivateB=eu-west-1b 10.0.32.0/19, SubnetPrivateC=eu-west-1c 10.0.64.0/19, " +
+                "SubnetPublicA=eu-west-1a 10.0.128.0/22, SubnetPublicB=eu-west-1b 10.0.132.0/22, SubnetPublicC=eu-west-1c 10.0.136.0/22}", cidrs.toString());
+
+        Assert.assertTrue(subnets.get("SubnetPublicA").path("Properties").path("MapPublicIpOnLaunch").asBoolean());
+        Assert.assertFalse(subnets.get("SubnetIsolatedA").path("Properties").has("MapPublicIpOnLaunch"));
+    }
+
+    @Test(expected = StackException.class)
+    public void subnetsThatDoNotFitAreRejected() throws StackException {
+
+        Map<String, Object> prefixLengths = new HashMap<>();
+        prefixLengths.put("private", 17);
+        prefixLengths.put("public", 20);
+        appProps.addProp("subnet_prefix_lengths", prefixLengths);
+        new VpcWithPeering(app, "vpc-stack", appProps.freeze());
+    }
+
+    @Test(expected = StackException.class)
+    public void peerCidrOverlappingTheVpcIsRejected() throws StackException {
+
+        appProps.addProp("vpc_peer_cidr", "10.0.128.0/17");
+        new VpcWithPeering(app, "vpc-stack", appProps.freeze());
+    }
+
+    @Test(expected = StackException.class)
+    public void unknownNatEgressIsRejected() throws StackException {
+
+        appProps.addProp("nat_egress", "nat_box");
+        new VpcWithPeering(app, "vpc-stack", appProps.freeze());
+    }
+
+    @Test
+    public void everyMissingPropertyIsRecordedWhenValidating() throws StackException {
+
+        // only the properties that every stack needs, the rest are left for validation to find
+        AppProps props = new AppProps();
+        props.addProp("dtap","dtap");
+        props.addProp("vpc", "vpc");
+        props.addProp("app_id","network");
+        props.addProp("availability_zones", Arrays.asList("eu-west-1a", "eu-west-1b", "eu-west-1c"));
+
+        PropertyValidation validation = new PropertyValidation();
+        new VpcWithPeering(app, "vpc-validation", props.freeze().validating(validation));
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList(
+                "accountid", "keypair", "nat_egress", "nat_instance_type", "subnet_prefix_lengths",
+                "vpc_cidr", "vpc_gateway_endpoints", "vpc_interface_endpoints", "vpc_peer_cidr", "vpc_peer_id", "vpc_peer_rt")),
+                validation.getProblems().keySet());
+    }
+
+    private List<String> natAutoScalingGroups(VpcWithPeering stack) {
+
+        return resources(stack, "AWS::AutoScaling::AutoScalingGroup").values().stream()
+                .map(group -> group.path("Properties").path("AutoScalingGroupName").asText())
+                .filter(name -> name.startsWith("nat"))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
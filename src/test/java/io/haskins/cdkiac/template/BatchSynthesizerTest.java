@@ -0,0 +1,99 @@
+package io.haskins.cdkiac.template;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class BatchSynthesizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parseTarget() {
+
+        SynthesisTarget target = SynthesisTarget.parse("dev/vpc-a/wordpress");
+
+        Assert.assertEquals("dev", target.getDtap());
+        Assert.assertEquals("vpc-a", target.getVpc());
+        Assert.assertEquals("wordpress", target.getApplication());
+    }
+
+    @Test
+    public void parseTargetWithoutVpc() {
+
+        Assert.assertFalse(SynthesisTarget.parse("dev//wordpress").hasVpc());
+        Assert.assertFalse(SynthesisTarget.parse("dev/wordpress").hasVpc());
+        Assert.assertEquals(SynthesisTarget.parse("dev//wordpress"), SynthesisTarget.parse("dev/wordpress"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalidTarget() {
+        SynthesisTarget.parse("wordpress");
+    }
+
+    @Test
+    public void expandGlob() {
+
+        List<SynthesisTarget> expected = Collections.singletonList(new SynthesisTarget("test_dtap", "test_vpc", "test_application"));
+
+        try {
+            Assert.assertEquals(expected, BatchSynthesizer.expand("test_*/test_vpc/*_application"));
+        } catch (TemplateException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void expandWithoutGlob() {
+
+        List<SynthesisTarget> expected = Collections.singletonList(new SynthesisTarget("dev", null, "missing"));
+
+        try {
+            Assert.assertEquals(expected, BatchSynthesizer.expand("dev//missing"));
+        } catch (TemplateException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void synthesizeInParallelKeepsTargetOrder() {
+
+        List<SynthesisTarget> targets = Arrays.asList(
+                new SynthesisTarget("test_dtap", "test_vpc", "test_application"),
+                new SynthesisTarget("missing_dtap", null, "test_application"),
+                new SynthesisTarget("test_dtap", null, "test_application"));
+
+        BatchSynthesizer synthesizer = new BatchSynthesizer(TestTemplate.class, folder.getRoot().toPath(), 3);
+        List<BatchSynthesizer.Result> results = synthesizer.synthesize(targets);
+
+        Assert.assertEquals(targets.size(), results.size());
+        for (int i = 0; i < targets.size(); i++) {
+            Assert.assertEquals(targets.get(i), results.get(i).getTarget());
+        }
+
+        Assert.assertTrue(results.get(0).isSuccess());
+        Assert.assertFalse(results.get(1).isSuccess());
+        Assert.assertTrue(results.get(2).isSuccess());
+    }
+
+    @Test
+    public void forkedTargetsReportTheSameErrorAsInProcess() {
+
+        List<SynthesisTarget> targets = Arrays.asList(
+                new SynthesisTarget("missing_dtap", null, "test_application"),
+                new SynthesisTarget("test_dtap", null, "test_application"));
+
+        List<BatchSynthesizer.Result> inProcess = new BatchSynthesizer(TestTemplate.class, folder.getRoot().toPath(), 1).synthesize(targets);
+        List<BatchSynthesizer.Result> forked = new BatchSynthesizer(TestTemplate.class, folder.getRoot().toPath(), 2).synthesize(targets);
+
+        Assert.assertNotNull(inProcess.get(0).getError());
+        Assert.assertEquals(inProcess.get(0).getError(), forked.get(0).getError());
+        Assert.assertTrue(forked.get(1).isSuccess());
+    }
+}
@@ -0,0 +1,47 @@
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.AppProps;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import software.amazon.awscdk.App;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class IncrementalStackWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void removedStacksAreDeleted() throws IOException, TemplateException {
+
+        Path directory = folder.getRoot().toPath();
+        Path oldTemplate = StackWriter.templateFile(directory, "old-stack");
+        Files.write(oldTemplate, "{}".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve(".fingerprints.json"), "{\"old-stack\":\"abc\"}".getBytes(StandardCharsets.UTF_8));
+
+        IncrementalStackWriter writer = new IncrementalStackWriter(directory, false);
+        writer.write(writer.synthesize(new App(), new AppProps().freeze()));
+
+        Assert.assertFalse(Files.exists(oldTemplate));
+        Assert.assertEquals("{ }", new String(Files.readAllBytes(directory.resolve(".fingerprints.json")), StandardCharsets.UTF_8));
+        Assert.assertEquals(0, writer.getSkipped());
+    }
+
+    @Test
+    public void templateBytesMatchWrittenFile() throws IOException {
+
+        Path directory = folder.getRoot().toPath();
+        Object template = Collections.singletonMap("Resources", Collections.singletonMap("Bucket", Collections.singletonMap("Type", "AWS::S3::Bucket")));
+
+        StackWriter.write(Collections.singletonMap("stack", template), directory);
+
+        Assert.assertArrayEquals(Files.readAllBytes(StackWriter.templateFile(directory, "stack")), StackWriter.toBytes(template));
+    }
+}
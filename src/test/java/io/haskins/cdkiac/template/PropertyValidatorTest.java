@@ -0,0 +1,63 @@
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.stack.StackException;
+import io.haskins.cdkiac.utils.MissingPropertyException;
+import org.junit.Assert;
+import org.junit.Test;
+import software.amazon.awscdk.App;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PropertyValidatorTest {
+
+    @Test
+    public void everyProblemIsReportedInOnePass() {
+
+        List<SynthesisTarget> targets = Arrays.asList(
+                new SynthesisTarget("test_dtap", "test_vpc", "test_application"),
+                new SynthesisTarget("test_dtap", null, "test_application"));
+
+        List<PropertyValidator.Result> results = new PropertyValidator(Collections.singletonList(PropertiesTemplate.class)).validate(targets);
+
+        Assert.assertEquals(2, results.size());
+
+        PropertyValidator.Result withVpc = results.get(0);
+        Assert.assertNull(withVpc.getError());
+        Assert.assertEquals(Arrays.asList("ami_id", "min_instances"), Arrays.asList(withVpc.getValidation().getProblems().keySet().toArray()));
+
+        PropertyValidator.Result withoutVpc = results.get(1);
+        Assert.assertEquals(Arrays.asList("ami_id", "min_instances", "subnet"), Arrays.asList(withoutVpc.getValidation().getProblems().keySet().toArray()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertFalse(PropertyValidator.print(results, new PrintStream(out)));
+        Assert.assertTrue(out.toString().contains("2 targets, 2 invalid, 5 problems"));
+    }
+
+    @Test
+    public void validTargetsPass() {
+
+        List<PropertyValidator.Result> results = new PropertyValidator(Collections.singletonList(TestTemplate.class))
+                .validate(Collections.singletonList(new SynthesisTarget("test_dtap", "test_vpc", "test_application")));
+
+        Assert.assertTrue(results.get(0).isValid());
+        Assert.assertTrue(PropertyValidator.print(results, new PrintStream(new ByteArrayOutputStream())));
+    }
+
+    static class PropertiesTemplate extends CdkIacTemplate {
+
+        PropertiesTemplate() throws TemplateException {
+            super();
+        }
+
+        protected void defineStacks(App app) throws MissingPropertyException, StackException {
+            appProps.getPropAsString("instance_type");
+            appProps.getPropAsString("ami_id");
+            appProps.getPropAsString("subnet");
+            appProps.getPropAsInteger("min_instances");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.haskins.cdkiac.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class StackWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keysAreWrittenInSortedOrder() throws IOException {
+
+        Map<String, Object> bucket = new LinkedHashMap<>();
+        bucket.put("Type", "AWS::S3::Bucket");
+        bucket.put("Properties", Collections.singletonMap("Tags", Arrays.asList(1, true, "a")));
+
+        Map<String, Object> template = new LinkedHashMap<>();
+        template.put("Resources", Collections.singletonMap("Bucket", bucket));
+        template.put("AWSTemplateFormatVersion", "2010-09-09");
+
+        Assert.assertEquals("{\"AWSTemplateFormatVersion\":\"2010-09-09\",\"Resources\":{\"Bucket\":{\"Properties\":{\"Tags\":[1,true,\"a\"]},\"Type\":\"AWS::S3::Bucket\"}}}",
+                new String(StackWriter.toBytes(template, true), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void jsonNodesAndMapsWriteTheSameBytes() throws IOException {
+
+        String json = "{\"Resources\":{\"B\":{\"Type\":\"AWS::SQS::Queue\"},\"A\":{\"Type\":\"AWS::S3::Bucket\"}},\"Outputs\":{}}";
+        JsonNode node = new ObjectMapper().readTree(json);
+        Object map = new ObjectMapper().readValue(json, Object.class);
+
+        Assert.assertArrayEquals(StackWriter.toBytes(node, false), StackWriter.toBytes(map, false));
+        Assert.assertArrayEquals(StackWriter.toBytes(node, true), StackWriter.toBytes(map, true));
+        Assert.assertEquals(new ObjectMapper().readTree(json), new ObjectMapper().readTree(StackWriter.toBytes(node, false)));
+    }
+
+    @Test
+    public void writeReturnsTheSizeOfEachTemplate() throws IOException {
+
+        Path directory = folder.getRoot().toPath();
+        Object template = Collections.singletonMap("Resources", Collections.singletonMap("Bucket", Collections.singletonMap("Type", "AWS::S3::Bucket")));
+
+        Map<String, Long> pretty = StackWriter.write(Collections.singletonMap("stack", template), directory, false);
+        Assert.assertEquals(Files.size(StackWriter.templateFile(directory, "stack")), pretty.get("stack").longValue());
+
+        Map<String, Long> minified = StackWriter.write(Collections.singletonMap("stack", template), directory, true);
+        Assert.assertEquals(Files.size(StackWriter.templateFile(directory, "stack")), minified.get("stack").longValue());
+        Assert.assertTrue(minified.get("stack") < pretty.get("stack"));
+    }
+
+    @Test
+    public void reportWarnsAboutLargeTemplates() {
+
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("small", 100L);
+        sizes.put("large", StackWriter.MAX_TEMPLATE_BODY_BYTES + 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StackWriter.report(sizes, new PrintStream(out));
+
+        String[] lines = out.toString().split("\n");
+        Assert.assertFalse(lines[0].contains("S3"));
+        Assert.assertTrue(lines[1].contains("deploy it from S3"));
+    }
+}
@@ -0,0 +1,196 @@
+package io.haskins.cdkiac.template;
+
+import io.haskins.cdkiac.utils.AppProps;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class SynthesisCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AppProps appProps;
+
+    @Before
+    public void setUp() {
+
+        appProps = new AppProps();
+        appProps.addProp("dtap", "dev");
+        appProps.addProp("app_id", "test");
+    }
+
+    @Test
+    public void keyIsStable() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+
+        AppProps sameProps = new AppProps();
+        sameProps.addProp("app_id", "test");
+        sameProps.addProp("dtap", "dev");
+
+        Assert.assertEquals(cache.key(TestTemplate.class, appProps), cache.key(TestTemplate.class, sameProps));
+    }
+
+    @Test
+    public void keyChangesWithPropertiesAndTemplate() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+        String key = cache.key(TestTemplate.class, appProps);
+
+        appProps.addProp("instance_type", "t2.small");
+
+        Assert.assertNotEquals(key, cache.key(TestTemplate.class, appProps));
+        Assert.assertNotEquals(cache.key(TestTemplate.class, appProps), cache.key(CdkIacTemplate.class, appProps));
+    }
+
+    @Test
+    public void keyChangesWithMinify() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+        String key = cache.key(TestTemplate.class, appProps);
+
+        System.setProperty("template.minify", "true");
+        try {
+            Assert.assertNotEquals(key, cache.key(TestTemplate.class, appProps));
+        } finally {
+            System.clearProperty("template.minify");
+        }
+    }
+
+    @Test
+    public void keyDependsOnTheTypeOfValues() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+
+        appProps.addProp("count", "1");
+        appProps.addProp("zones", "[a, b]");
+        String strings = cache.key(TestTemplate.class, appProps);
+
+        appProps.addProp("count", 1);
+        String number = cache.key(TestTemplate.class, appProps);
+
+        appProps.addProp("zones", Arrays.asList("a", "b"));
+        String list = cache.key(TestTemplate.class, appProps);
+
+        Assert.assertNotEquals(strings, number);
+        Assert.assertNotEquals(number, list);
+    }
+
+    @Test
+    public void storeAndRestore() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+        Path output = synthOutput("output", "{}");
+        Path restored = folder.getRoot().toPath().resolve("restored");
+
+        Assert.assertFalse(cache.restore("key", restored));
+
+        cache.store("key", output);
+
+        Assert.assertTrue(cache.restore("key", restored));
+        Assert.assertEquals("{}", new String(Files.readAllBytes(restored.resolve("stack.template.json")), StandardCharsets.UTF_8));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(2, cache.getBytesSaved());
+    }
+
+    @Test
+    public void statsArePersisted() throws IOException {
+
+        Path directory = folder.newFolder("cache").toPath();
+        new SynthesisCache(directory, Long.MAX_VALUE).store("key", synthOutput("output", "{}"));
+
+        Assert.assertEquals(1, new SynthesisCache(directory, Long.MAX_VALUE).getMisses());
+    }
+
+    @Test
+    public void missIsCountedWhenTheSynthIsStored() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+
+        Assert.assertFalse(cache.restore("key", folder.getRoot().toPath().resolve("restored")));
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void onlyFilesWrittenBySynthAreStored() throws IOException {
+
+        SynthesisCache cache = new SynthesisCache(folder.newFolder("cache").toPath(), Long.MAX_VALUE);
+        Path shared = synthOutput("shared", "{\"leftover\":true}");
+        Files.setLastModifiedTime(shared.resolve("stack.template.json"), FileTime.fromMillis(1000));
+
+        Map<Path, String> before = SynthesisCache.modified(shared);
+        Files.write(shared.resolve("app.template.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        cache.store("key", shared, SynthesisCache.writtenSince(shared, before));
+
+        Path restored = folder.getRoot().toPath().resolve("restored");
+        Assert.assertTrue(cache.restore("key", restored));
+        Assert.assertTrue(Files.exists(restored.resolve("app.template.json")));
+        Assert.assertFalse(Files.exists(restored.resolve("stack.template.json")));
+    }
+
+    @Test
+    public void rewriteWithTheSameModifiedTimeIsSeen() throws IOException {
+
+        Path shared = synthOutput("shared", "{}");
+        Path template = shared.resolve("stack.template.json");
+        FileTime modified = Files.getLastModifiedTime(template);
+
+        Map<Path, String> before = SynthesisCache.modified(shared);
+        Files.write(template, "{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(template, modified);
+
+        Assert.assertEquals(Collections.singletonList(template.getFileName()), SynthesisCache.writtenSince(shared, before));
+    }
+
+    @Test
+    public void statsFromEveryProcessAreAdded() throws IOException {
+
+        Path directory = folder.newFolder("cache").toPath();
+        SynthesisCache first = new SynthesisCache(directory, Long.MAX_VALUE);
+        SynthesisCache second = new SynthesisCache(directory, Long.MAX_VALUE);
+
+        first.store("first", synthOutput("first", "{}"));
+        second.store("second", synthOutput("second", "{}"));
+
+        Assert.assertEquals(2, second.getMisses());
+        Assert.assertEquals(2, new SynthesisCache(directory, Long.MAX_VALUE).getMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws IOException {
+
+        Path directory = folder.newFolder("cache").toPath();
+        SynthesisCache cache = new SynthesisCache(directory, 10);
+
+        cache.store("first", synthOutput("first", "12345"));
+        cache.store("second", synthOutput("second", "12345"));
+        Files.setLastModifiedTime(directory.resolve("first"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("second"), FileTime.fromMillis(2000));
+
+        cache.store("third", synthOutput("third", "12345"));
+
+        Assert.assertFalse(Files.exists(directory.resolve("first")));
+        Assert.assertTrue(Files.exists(directory.resolve("second")));
+        Assert.assertTrue(Files.exists(directory.resolve("third")));
+    }
+
+    private Path synthOutput(String name, String template) throws IOException {
+
+        Path output = folder.newFolder(name).toPath();
+        Files.write(output.resolve("stack.template.json"), template.getBytes(StandardCharsets.UTF_8));
+        return output;
+    }
+}
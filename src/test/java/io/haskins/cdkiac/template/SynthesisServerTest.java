@@ -0,0 +1,129 @@
+package io.haskins.cdkiac.template;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SynthesisServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicReference<String> classpath = new AtomicReference<>("classes");
+
+    private ServerSocket serverSocket;
+    private SynthesisServer server;
+
+    @Before
+    public void setUp() throws IOException {
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server = new SynthesisServer(folder.newFolder("cdk-outdir").toPath(), folder.getRoot().toPath(), classpath::get);
+
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve(serverSocket);
+            } catch (IOException e) {
+                // server stopped
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void synthesize() throws IOException {
+
+        String response = send(TestTemplate.class.getName(), "test_dtap/test_vpc/test_application");
+
+        Assert.assertTrue(response, response.startsWith(SynthesisServer.OK));
+    }
+
+    @Test
+    public void synthesizeRepeatedly() throws IOException {
+
+        for (int i = 0; i < 5; i++) {
+            String response = send(TestTemplate.class.getName(), "test_dtap//test_application");
+            Assert.assertTrue(response, response.startsWith(SynthesisServer.OK));
+        }
+    }
+
+    @Test
+    public void unknownTemplate() throws IOException {
+
+        String response = send("DoesNotExist", "test_dtap/test_vpc/test_application");
+
+        Assert.assertTrue(response, response.startsWith(SynthesisServer.ERROR));
+    }
+
+    @Test
+    public void missingProperties() throws IOException {
+
+        String response = send(TestTemplate.class.getName(), "missing_dtap//test_application");
+
+        Assert.assertTrue(response, response.startsWith(SynthesisServer.ERROR));
+    }
+
+    @Test
+    public void disconnectedClientDoesNotStopTheServer() throws IOException {
+
+        for (int i = 0; i < 3; i++) {
+            new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()).close();
+        }
+
+        String response = send(TestTemplate.class.getName(), "test_dtap/test_vpc/test_application");
+
+        Assert.assertTrue(response, response.startsWith(SynthesisServer.OK));
+    }
+
+    @Test
+    public void outputOutsideTheRootIsRejected() throws IOException {
+
+        String outside = folder.getRoot().toPath().resolve("..").resolve("elsewhere").toString();
+        String response = SynthesisClient.send(serverSocket.getLocalPort(), TestTemplate.class.getName(), "test_dtap/test_vpc/test_application", outside);
+
+        Assert.assertTrue(response, response.startsWith(SynthesisServer.ERROR));
+        Assert.assertTrue(response, response.contains("is not inside"));
+    }
+
+    @Test
+    public void changedClasspathStopsTheServer() throws IOException, InterruptedException {
+
+        Assert.assertTrue(send(TestTemplate.class.getName(), "test_dtap//test_application").startsWith(SynthesisServer.OK));
+
+        classpath.set("recompiled classes");
+
+        String response = send(TestTemplate.class.getName(), "test_dtap//test_application");
+        Assert.assertTrue(response, response.startsWith(SynthesisServer.ERROR));
+        Assert.assertTrue(response, response.contains("restart"));
+
+        for (int i = 0; i < 50 && !serverSocket.isClosed(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(server.isStale());
+        Assert.assertTrue(serverSocket.isClosed());
+    }
+
+    @Test
+    public void classpathFingerprintIsStable() throws IOException {
+        Assert.assertEquals(SynthesisServer.classpathFingerprint(), SynthesisServer.classpathFingerprint());
+    }
+
+    private String send(String template, String target) throws IOException {
+        return SynthesisClient.send(serverSocket.getLocalPort(), template, target, folder.getRoot().toPath().resolve("cdk.out").toString());
+    }
+}
@@ -0,0 +1,123 @@
+package io.haskins.cdkiac.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeSet;
+
+public class TemplateDiffTest {
+
+    private static final String BEFORE = "{\"AWSTemplateFormatVersion\":\"2010-09-09\",\"Resources\":{"
+            + "\"Bucket\":{\"Type\":\"AWS::S3::Bucket\",\"Properties\":{\"BucketName\":\"a\",\"Tags\":[{\"Key\":\"k\",\"Value\":\"1\"}]}},"
+            + "\"Queue\":{\"Type\":\"AWS::SQS::Queue\"}}}";
+
+    private static final String AFTER = "{\"AWSTemplateFormatVersion\":\"2010-09-09\",\"Resources\":{"
+            + "\"Bucket\":{\"Type\":\"AWS::S3::Bucket\",\"Properties\":{\"BucketName\":\"b\",\"Tags\":[{\"Key\":\"k\",\"Value\":\"1\"},{\"Key\":\"j\",\"Value\":\"2\"}]}},"
+            + "\"Topic\":{\"Type\":\"AWS::SNS::Topic\"}},"
+            + "\"Outputs\":{\"BucketArn\":{\"Value\":\"arn\"}}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void resourcesAreMatchedByLogicalId() throws IOException {
+
+        List<TemplateDiff.Change> changes = TemplateDiff.diff(mapper.readTree(BEFORE), mapper.readTree(AFTER));
+
+        Assert.assertEquals(5, changes.size());
+
+        assertChange(changes.get(0), TemplateDiff.Kind.ADDED, "Outputs", "BucketArn", "");
+        assertChange(changes.get(1), TemplateDiff.Kind.MODIFIED, "Resources", "Bucket", "Properties.BucketName");
+        assertChange(changes.get(2), TemplateDiff.Kind.ADDED, "Resources", "Bucket", "Properties.Tags[1]");
+        assertChange(changes.get(3), TemplateDiff.Kind.REMOVED, "Resources", "Queue", "");
+        assertChange(changes.get(4), TemplateDiff.Kind.ADDED, "Resources", "Topic", "");
+
+        Assert.assertEquals("[~] Resources.Bucket Properties.BucketName: \"a\" -> \"b\"", changes.get(1).toString());
+        Assert.assertEquals("[-] Resources.Queue AWS::SQS::Queue", changes.get(3).toString());
+    }
+
+    @Test
+    public void identicalTemplatesHaveNoChanges() throws IOException {
+
+        JsonNode template = mapper.readTree(BEFORE);
+
+        Assert.assertTrue(TemplateDiff.diff(template, template.deepCopy()).isEmpty());
+    }
+
+    @Test
+    public void directoriesAreMatchedByStack() throws IOException {
+
+        Path before = folder.newFolder("before").toPath();
+        Path after = folder.newFolder("after").toPath();
+
+        Files.write(before.resolve("changed.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+        Files.write(after.resolve("changed.template.json"), AFTER.getBytes(StandardCharsets.UTF_8));
+        Files.write(before.resolve("same.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+        Files.write(after.resolve("same.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+        Files.write(before.resolve("removed.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+
+        SortedMap<String, List<TemplateDiff.Change>> changes = TemplateDiff.diff(before, after);
+
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(5, changes.get("changed").size());
+        Assert.assertEquals(3, changes.get("removed").size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateDiff.print(changes, new PrintStream(out));
+        Assert.assertTrue(out.toString().contains("2 stacks changed, 8 differences"));
+    }
+
+    @Test
+    public void synthesizedTemplatesAreComparedWithADirectory() throws IOException {
+
+        Path before = folder.newFolder("before").toPath();
+        Files.write(before.resolve("stack.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+
+        Object synthesized = mapper.readValue(BEFORE, Object.class);
+
+        Assert.assertTrue(TemplateDiff.diff(before, Collections.singletonMap("stack", synthesized)).isEmpty());
+    }
+
+    @Test
+    public void otherStacksInASharedDirectoryAreIgnored() throws IOException {
+
+        Path before = folder.newFolder("cdk.out").toPath();
+        Files.write(before.resolve("stack.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+        Files.write(before.resolve("other-template.template.json"), BEFORE.getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Object> synthesized = new HashMap<>();
+        synthesized.put("stack", mapper.readValue(AFTER, Object.class));
+        synthesized.put("new-stack", mapper.readValue(BEFORE, Object.class));
+
+        SortedMap<String, List<TemplateDiff.Change>> changes = TemplateDiff.diffSynthesized(before, synthesized);
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("new-stack", "stack")), changes.keySet());
+        Assert.assertEquals(5, changes.get("stack").size());
+    }
+
+    private static void assertChange(TemplateDiff.Change change, TemplateDiff.Kind kind, String section, String logicalId, String path) {
+
+        Assert.assertEquals(kind, change.getKind());
+        Assert.assertEquals(section, change.getSection());
+        Assert.assertEquals(logicalId, change.getLogicalId());
+        Assert.assertEquals(path, change.getPath());
+    }
+}
@@ -0,0 +1,64 @@
+package io.haskins.cdkiac.template;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class VpcCidrValidatorTest {
+
+    @Test
+    public void invalidAndOverlappingBlocksAreReported() {
+
+        Map<String, String> cidrs = new TreeMap<>();
+        cidrs.put("vpc-a", "10.0.0.0/16");
+        cidrs.put("vpc-b", "10.1.0.0/16");
+        cidrs.put("vpc-c", "10.0.64.0/18");
+        cidrs.put("vpc-d", "10.2.0.1/16");
+
+        VpcCidrValidator validator = new VpcCidrValidator(cidrs);
+
+        Assert.assertEquals(Arrays.asList(
+                "vpc-d Invalid network address for /16 : 167903233",
+                "vpc-a 10.0.0.0/16 overlaps vpc-c 10.0.64.0/18"), validator.getProblems());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertFalse(validator.print(new PrintStream(out)));
+        Assert.assertTrue(out.toString().contains("4 vpcs, 2 problems"));
+    }
+
+    @Test
+    public void cidrsSetInDtapFilesAreChecked() {
+
+        Map<String, Map<String, Object>> dtaps = new TreeMap<>();
+        dtaps.put("dev", Collections.singletonMap("vpc_cidr", "10.0.0.0/16"));
+        dtaps.put("prod", Collections.singletonMap("vpc_cidr", "10.1.128.0/17"));
+        dtaps.put("test", Collections.singletonMap("vpc_cidr", "10.1.128.0/17"));
+
+        Map<String, Map<String, Object>> vpcs = new TreeMap<>();
+        vpcs.put("vpc-a", Collections.singletonMap("vpc_cidr", "10.0.0.0/16"));
+        vpcs.put("vpc-b", Collections.singletonMap("vpc_cidr", "10.1.0.0/16"));
+        vpcs.put("shared", Collections.emptyMap());
+
+        Map<String, String> cidrs = VpcCidrValidator.resolve(dtaps, vpcs);
+
+        // dev's block is vpc-a's, prod and test each have a VPC of their own, with or without the shared vpc file
+        Assert.assertEquals("{prod=10.1.128.0/17, test=10.1.128.0/17, vpc-a=10.0.0.0/16, vpc-b=10.1.0.0/16}", cidrs.toString());
+        Assert.assertEquals(3, new VpcCidrValidator(cidrs).getProblems().size());
+    }
+
+    @Test
+    public void packagedVpcsDoNotOverlap() throws Exception {
+
+        Map<String, String> cidrs = VpcCidrValidator.load();
+
+        Assert.assertEquals("10.0.0.0/16", cidrs.get("vpc-a"));
+        Assert.assertFalse(cidrs.containsKey("test_vpc"));
+        Assert.assertTrue(new VpcCidrValidator(cidrs).print(new PrintStream(new ByteArrayOutputStream())));
+    }
+}
@@ -4,8 +4,11 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class AppPropsTest {
 
@@ -155,4 +158,205 @@ public class AppPropsTest {
 
         Assert.assertEquals(expected, appProps.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void freeze() {
+
+        appProps.addProp("Key", "Value");
+        AppProps frozen = appProps.freeze();
+
+        appProps.addProp("Other", "Value");
+
+        Assert.assertTrue(frozen.isFrozen());
+        Assert.assertEquals(1, frozen.size());
+        Assert.assertSame(frozen, frozen.freeze());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void addPropWhenFrozen() {
+        appProps.freeze().addProp("Key", "Value");
+    }
+
+    @Test
+    public void frozenValuesAreParsedOnce() {
+
+        appProps.addProp("List", "tom,dick,harry");
+        appProps.addProp("Int", "10");
+        appProps.addProp("dtap", "dev");
+        appProps.addProp("app_id", "test");
+        AppProps frozen = appProps.freeze();
+
+        try {
+            Assert.assertSame(frozen.getPropAsStringList("List"), frozen.getPropAsStringList("List"));
+            Assert.assertSame(frozen.getPropAsObjectList("List"), frozen.getPropAsObjectList("List"));
+            Assert.assertSame(frozen.getPropAsInteger("Int"), frozen.getPropAsInteger("Int"));
+            Assert.assertSame(frozen.getUniqueId(), frozen.getUniqueId());
+            Assert.assertEquals(Arrays.asList("tom","dick","harry"), frozen.getPropAsStringList("List"));
+            Assert.assertEquals("dev-test", frozen.getUniqueId());
+        } catch (MissingPropertyException e) {
+            Assert.fail("Key not in appProperties");
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenListIsImmutable() throws MissingPropertyException {
+
+        appProps.addProp("Key", "tom,dick,harry");
+        appProps.freeze().getPropAsStringList("Key").add("sally");
+    }
+
+    @Test(expected = MissingPropertyException.class)
+    public void frozenMissingProperty() throws MissingPropertyException {
+        appProps.freeze().getPropAsInteger("Key");
+    }
+
+    @Test
+    public void getPropAsCidr() {
+
+        appProps.addProp("Key", "10.1.0.0/16");
+
+        try {
+            Cidr cidr = appProps.freeze().getPropAsCidr("Key");
+            Assert.assertEquals(16, cidr.getPrefixLength());
+            Assert.assertEquals(65536, cidr.size());
+            Assert.assertEquals("10.1.0.0/16", cidr.toString());
+        } catch (MissingPropertyException e) {
+            Assert.fail("Key not in appProperties");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPropAsInvalidCidr() throws MissingPropertyException {
+
+        appProps.addProp("Key", "10.1.0.1/16");
+        appProps.getPropAsCidr("Key");
+    }
+
+    @Test
+    public void stringListIsTrimmed() throws MissingPropertyException {
+
+        appProps.addProp("Key", "subnet-a, subnet-b ,subnet-c");
+        Assert.assertEquals(Arrays.asList("subnet-a", "subnet-b", "subnet-c"), appProps.getPropAsStringList("Key"));
+    }
+
+    @Test
+    public void nativeValues() throws MissingPropertyException {
+
+        appProps.addProp("List", Arrays.asList("subnet-a", "subnet-b"));
+        appProps.addProp("Int", 128L);
+        appProps.addProp("Bool", true);
+        AppProps frozen = appProps.freeze();
+
+        Assert.assertEquals(Arrays.asList("subnet-a", "subnet-b"), frozen.getPropAsStringList("List"));
+        Assert.assertEquals("subnet-a,subnet-b", frozen.getPropAsString("List"));
+        Assert.assertEquals(Integer.valueOf(128), frozen.getPropAsInteger("Int"));
+        Assert.assertEquals("128", frozen.getPropAsString("Int"));
+        Assert.assertTrue(frozen.getPropAsBoolean("Bool"));
+    }
+
+    @Test(expected = MissingPropertyException.class)
+    public void notAnInteger() throws MissingPropertyException {
+
+        appProps.addProp("Key", "ten");
+        appProps.getPropAsInteger("Key");
+    }
+
+    @Test(expected = MissingPropertyException.class)
+    public void notAMap() throws MissingPropertyException {
+
+        appProps.addProp("Key", "Value");
+        appProps.getPropAsMap("Key");
+    }
+
+    @Test
+    public void trackingRecordsReadKeys() throws MissingPropertyException {
+
+        appProps.addProp("dtap", "dev");
+        appProps.addProp("app_id", "test");
+        appProps.addProp("Int", "10");
+        appProps.addProp("Unused", "value");
+        AppProps frozen = appProps.freeze();
+        frozen.getPropAsInteger("Int");
+
+        Set<String> accessed = new TreeSet<>();
+        AppProps tracking = frozen.tracking(accessed::add);
+        tracking.getPropAsInteger("Int");
+        tracking.getUniqueId();
+        try {
+            tracking.getPropAsString("Missing");
+        } catch (MissingPropertyException e) {
+            // expected
+        }
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("Int", "Missing", "app_id", "dtap")), accessed);
+        Assert.assertSame(frozen.getPropAsInteger("Int"), tracking.getPropAsInteger("Int"));
+    }
+
+    @Test
+    public void trackingCountsEachReadOnce() throws MissingPropertyException {
+
+        appProps.addProp("Int", "10");
+        appProps.addProp("List", "a, b");
+
+        List<String> accessed = new ArrayList<>();
+        AppProps tracking = appProps.freeze().tracking(accessed::add);
+
+        tracking.getPropAsInteger("Int");
+        tracking.getPropAsInteger("Int");
+        tracking.getPropAsStringList("List");
+
+        Assert.assertEquals(Arrays.asList("Int", "Int", "List"), accessed);
+    }
+
+    @Test
+    public void uniqueIdOnlyCountsVpcWhenPresent() throws MissingPropertyException {
+
+        appProps.addProp("dtap", "dev");
+        appProps.addProp("app_id", "test");
+
+        List<String> accessed = new ArrayList<>();
+        appProps.freeze().tracking(accessed::add).getUniqueId();
+
+        Assert.assertEquals(Arrays.asList("dtap", "app_id"), accessed);
+    }
+
+    @Test
+    public void validatingRecordsProblemsAndReturnsPlaceholders() throws MissingPropertyException {
+
+        appProps.addProp("dtap", "dev");
+        appProps.addProp("app_id", "test");
+        appProps.addProp("Int", "ten");
+        appProps.addProp("Cidr", "10.0.0.0/33");
+
+        PropertyValidation validation = new PropertyValidation();
+        AppProps validating = appProps.freeze().validating(validation).tracking(key -> { });
+
+        Assert.assertEquals("dev-test", validating.getUniqueId());
+        Assert.assertNotNull(validating.getPropAsString("Missing"));
+        Assert.assertNotNull(validating.getPropAsInteger("Int"));
+        Assert.assertNotNull(validating.getPropAsCidr("Cidr"));
+        Assert.assertEquals(1, validating.getPropAsStringList("List").size());
+        Assert.assertTrue(validating.getPropAsMap("Map").isEmpty());
+
+        Assert.assertFalse(validation.isValid());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("Cidr", "Int", "List", "Map", "Missing")), validation.getProblems().keySet());
+        Assert.assertEquals("Property Int is not an Integer", validation.getProblems().get("Int"));
+    }
+
+    @Test
+    public void onlyMissingOrInvalidPropertiesArePlaceholders() throws MissingPropertyException {
+
+        appProps.addProp("Int", "ten");
+        appProps.addProp("String", "value");
+
+        AppProps validating = appProps.freeze().validating(new PropertyValidation());
+        validating.getPropAsInteger("Int");
+        validating.getPropAsString("String");
+        validating.getPropAsString("Missing");
+
+        Assert.assertTrue(validating.isPlaceholder("Int"));
+        Assert.assertTrue(validating.isPlaceholder("String", "Missing"));
+        Assert.assertFalse(validating.isPlaceholder("String"));
+        Assert.assertFalse(appProps.isPlaceholder("Int"));
+    }
+}
@@ -0,0 +1,122 @@
+package io.haskins.cdkiac.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class CidrAllocatorTest {
+
+    private static final List<String> ZONES = Arrays.asList("eu-west-1a", "eu-west-1b", "eu-west-1c");
+
+    @Test
+    public void eachTierIsAllocatedFromItsOwnRegion() {
+
+        List<CidrAllocator.Subnet> subnets = CidrAllocator.allocate(Cidr.parse("10.0.0.0/16"), ZONES,
+                prefixLengths(20, 20, null));
+
+        Assert.assertEquals(Arrays.asList(
+                "Private eu-west-1a 10.0.0.0/20",
+                "Private eu-west-1b 10.0.16.0/20",
+                "Private eu-west-1c 10.0.32.0/20",
+                "Public eu-west-1a 10.0.128.0/20",
+                "Public eu-west-1b 10.0.144.0/20",
+                "Public eu-west-1c 10.0.160.0/20"), describe(subnets));
+    }
+
+    @Test
+    public void mixedSizesDoNotOverlap() {
+
+        List<CidrAllocator.Subnet> subnets = CidrAllocator.allocate(Cidr.parse("10.2.0.0/16"), ZONES,
+                prefixLengths(19, 22, 24));
+
+        Assert.assertEquals(Arrays.asList(
+                "Private eu-west-1a 10.2.0.0/19",
+                "Private eu-west-1b 10.2.32.0/19",
+                "Private eu-west-1c 10.2.64.0/19",
+                "Public eu-west-1a 10.2.128.0/22",
+                "Public eu-west-1b 10.2.132.0/22",
+                "Public eu-west-1c 10.2.136.0/22",
+                "Isolated eu-west-1a 10.2.192.0/24",
+                "Isolated eu-west-1b 10.2.193.0/24",
+                "Isolated eu-west-1c 10.2.194.0/24"), describe(subnets));
+
+        for (CidrAllocator.Subnet subnet : subnets) {
+            for (CidrAllocator.Subnet other : subnets) {
+                Assert.assertTrue(subnet == other || !subnet.getCidr().overlaps(other.getCidr()));
+            }
+        }
+    }
+
+    @Test
+    public void existingSubnetsDoNotMove() {
+
+        Cidr vpc = Cidr.parse("10.0.0.0/16");
+        List<String> before = describe(CidrAllocator.allocate(vpc, ZONES.subList(0, 2), prefixLengths(20, 20, null)));
+
+        // add a zone, resize the public tier and add the isolated tier
+        List<String> after = describe(CidrAllocator.allocate(vpc, ZONES, prefixLengths(20, 22, 24)));
+
+        Assert.assertEquals(before.subList(0, 2), after.subList(0, 2));
+        Assert.assertEquals("Private eu-west-1c 10.0.32.0/20", after.get(2));
+    }
+
+    @Test
+    public void subnetsThatDoNotFitInTheirRegionAreRejected() {
+
+        try {
+            CidrAllocator.allocate(Cidr.parse("10.0.0.0/16"), ZONES, prefixLengths(18, 20, null));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("3 private subnets of /18 don't fit in 10.0.0.0/17, the private region of 10.0.0.0/16", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subnetsLargerThanTheirRegionAreRejected() {
+        CidrAllocator.allocate(Cidr.parse("10.0.0.0/16"), ZONES, prefixLengths(20, 17, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subnetsSmallerThanAwsAllowsAreRejected() {
+        CidrAllocator.allocate(Cidr.parse("10.0.0.0/16"), ZONES, prefixLengths(20, 29, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zonesAreRequired() {
+        CidrAllocator.allocate(Cidr.parse("10.0.0.0/16"), Collections.emptyList(), prefixLengths(20, 20, null));
+    }
+
+    @Test
+    public void tiersAreParsedByName() {
+
+        Assert.assertEquals(CidrAllocator.Tier.ISOLATED, CidrAllocator.Tier.parse(" Isolated "));
+
+        try {
+            CidrAllocator.Tier.parse("dmz");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Unknown subnet tier dmz", e.getMessage());
+        }
+    }
+
+    private static Map<CidrAllocator.Tier, Integer> prefixLengths(Integer privateLength, Integer publicLength, Integer isolatedLength) {
+
+        Map<CidrAllocator.Tier, Integer> prefixLengths = new EnumMap<>(CidrAllocator.Tier.class);
+        prefixLengths.put(CidrAllocator.Tier.PRIVATE, privateLength);
+        prefixLengths.put(CidrAllocator.Tier.PUBLIC, publicLength);
+        if (isolatedLength != null) {
+            prefixLengths.put(CidrAllocator.Tier.ISOLATED, isolatedLength);
+        }
+        return prefixLengths;
+    }
+
+    private static List<String> describe(List<CidrAllocator.Subnet> subnets) {
+        return subnets.stream().map(CidrAllocator.Subnet::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,83 @@
+package io.haskins.cdkiac.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class CidrIntervalTreeTest {
+
+    @Test
+    public void overlappingBlocksAreFound() {
+
+        Map<String, Cidr> blocks = new LinkedHashMap<>();
+        blocks.put("a", Cidr.parse("10.0.0.0/16"));
+        blocks.put("b", Cidr.parse("10.1.0.0/16"));
+        blocks.put("c", Cidr.parse("10.0.128.0/17"));
+        blocks.put("d", Cidr.parse("172.16.0.0/12"));
+        blocks.put("e", Cidr.parse("10.0.0.0/8"));
+
+        CidrIntervalTree<String> tree = CidrIntervalTree.of(blocks);
+
+        Assert.assertEquals(5, tree.size());
+        Assert.assertEquals(Arrays.asList("e", "a", "c"), tree.overlapping(Cidr.parse("10.0.200.0/24")));
+        Assert.assertEquals(Collections.singletonList("d"), tree.overlapping(Cidr.parse("172.31.0.0/16")));
+        Assert.assertTrue(tree.overlapping(Cidr.parse("192.168.0.0/16")).isEmpty());
+
+        Assert.assertEquals(Arrays.asList(
+                "e 10.0.0.0/8 overlaps a 10.0.0.0/16",
+                "e 10.0.0.0/8 overlaps c 10.0.128.0/17",
+                "e 10.0.0.0/8 overlaps b 10.1.0.0/16",
+                "a 10.0.0.0/16 overlaps c 10.0.128.0/17"),
+                tree.overlaps().stream().map(Object::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void disjointBlocksDoNotOverlap() {
+
+        Map<Integer, Cidr> blocks = new LinkedHashMap<>();
+        for (int i = 0; i < 256; i++) {
+            blocks.put(i, Cidr.of((10L << 24) | ((long) i << 16), 16));
+        }
+
+        Assert.assertTrue(CidrIntervalTree.of(blocks).overlaps().isEmpty());
+    }
+
+    @Test
+    public void matchesComparingEveryPair() {
+
+        Random random = new Random(42);
+
+        Map<Integer, Cidr> blocks = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            int prefixLength = 12 + random.nextInt(13);
+            long address = (10L << 24) | (random.nextInt(1 << 24) & ~((1L << (32 - prefixLength)) - 1));
+            blocks.put(i, Cidr.of(address, prefixLength));
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (Map.Entry<Integer, Cidr> first : blocks.entrySet()) {
+            for (Map.Entry<Integer, Cidr> second : blocks.entrySet()) {
+                if (first.getKey() < second.getKey() && first.getValue().overlaps(second.getValue())) {
+                    expected.add(first.getKey() + "-" + second.getKey());
+                }
+            }
+        }
+
+        List<String> actual = new ArrayList<>();
+        for (CidrIntervalTree.Overlap<Integer> overlap : CidrIntervalTree.of(blocks).overlaps()) {
+            actual.add(Math.min(overlap.getFirst(), overlap.getSecond()) + "-" + Math.max(overlap.getFirst(), overlap.getSecond()));
+        }
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+    }
+}
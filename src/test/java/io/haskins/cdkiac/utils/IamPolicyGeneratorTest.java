@@ -55,4 +55,52 @@ public class IamPolicyGeneratorTest {
 
         Assert.assertEquals(expected, jsonPolicy);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void valuesAreEscaped() {
+
+        String expected = "{\"Effect\":\"Allow\",\"Action\":[\"s3:\\\"Get\\\"\"],\"Resource\":[\"arn:aws:s3:::bucket\\\\*\"]}";
+
+        JsonNode statement = IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:\"Get\""), Collections.singletonList("arn:aws:s3:::bucket\\*"));
+
+        Assert.assertEquals(expected, statement.toString());
+        Assert.assertEquals("s3:\"Get\"", statement.get("Action").get(0).asText());
+    }
+
+    @Test
+    public void policyDocumentCopiesStatements() {
+
+        JsonNode statement = IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:Get"), Collections.singletonList("*"));
+        ObjectNode policy = IamPolicyGenerator.getPolicyDocument(Collections.singletonList(statement));
+
+        ((ObjectNode) policy.get("Statement").get(0)).put("Effect", "Deny");
+
+        Assert.assertEquals("Allow", statement.get("Effect").asText());
+    }
+
+    @Test
+    public void getTrustPolicyWithManyPrincipals() {
+
+        String expected = "{\"Version\":\"2012-10-17\",\"Statement\":[{\"Effect\":\"Allow\",\"Principal\":{\"Service\":[\"ec2.amazonaws.com\",\"lambda.amazonaws.com\"],\"AWS\":[\"arn:aws:iam::0123456789:root\"]},\"Action\":\"sts:AssumeRole\"}]}";
+
+        ObjectNode policy = IamPolicyGenerator.getTrustPolicy(Arrays.asList("lambda.amazonaws.com", "ec2.amazonaws.com"), Collections.singletonList("arn:aws:iam::0123456789:root"));
+
+        Assert.assertEquals(expected, policy.toString());
+    }
+
+    @Test
+    public void trustPoliciesAreNotShared() {
+
+        ObjectNode first = IamPolicyGenerator.getServiceTrustPolicy("cache-test.amazonaws.com");
+        first.put("Version", "changed");
+        ObjectNode second = IamPolicyGenerator.getServiceTrustPolicy("cache-test.amazonaws.com");
+
+        Assert.assertEquals("2012-10-17", second.get("Version").asText());
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getTrustPolicyWithoutPrincipals() {
+        IamPolicyGenerator.getTrustPolicy(Collections.emptyList(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,137 @@
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class IamPolicyOptimizerTest {
+
+    @Test
+    public void mergeSameResources() throws PolicySizeException {
+
+        String expected = "{\"Version\":\"2012-10-17\",\"Statement\":[{\"Effect\":\"Allow\",\"Action\":[\"s3:Get\",\"s3:List\",\"s3:Put\"],\"Resource\":[\"arn:aws:s3:::bucket\"]}]}";
+
+        List<JsonNode> statements = Arrays.asList(
+                IamPolicyGenerator.getPolicyStatement("Allow", Arrays.asList("s3:List", "s3:Get"), Collections.singletonList("arn:aws:s3:::bucket")),
+                IamPolicyGenerator.getPolicyStatement("Allow", Arrays.asList("s3:Put", "s3:get"), Collections.singletonList("arn:aws:s3:::bucket")));
+
+        Assert.assertEquals(expected, new IamPolicyOptimizer().optimize(statements).toString());
+    }
+
+    @Test
+    public void mergeSameActions() throws PolicySizeException {
+
+        String expected = "{\"Version\":\"2012-10-17\",\"Statement\":[{\"Effect\":\"Allow\",\"Action\":[\"sqs:SendMessage\"],\"Resource\":[\"arn:a\",\"arn:b\"]}]}";
+
+        List<JsonNode> statements = Arrays.asList(
+                IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("sqs:SendMessage"), Collections.singletonList("arn:b")),
+                IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("sqs:SendMessage"), Collections.singletonList("arn:a")));
+
+        Assert.assertEquals(expected, new IamPolicyOptimizer().optimize(statements).toString());
+    }
+
+    @Test
+    public void resourcesContainingSeparatorsAreNotMerged() throws PolicySizeException {
+
+        List<JsonNode> statements = Arrays.asList(
+                IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:GetObject"), Collections.singletonList("arn:aws:s3:::bucket/a, b")),
+                IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:DeleteObject"), Arrays.asList("arn:aws:s3:::bucket/a", "b")));
+
+        ObjectNode policy = new IamPolicyOptimizer().optimize(statements);
+
+        Assert.assertEquals(2, policy.get("Statement").size());
+        for (JsonNode statement : policy.get("Statement")) {
+            Assert.assertEquals(1, statement.get("Action").size());
+        }
+    }
+
+    @Test
+    public void effectsAreNotMerged() throws PolicySizeException {
+
+        List<JsonNode> statements = Arrays.asList(
+                IamPolicyGenerator.getPolicyStatement("Deny", Collections.singletonList("s3:Delete"), Collections.singletonList("*")),
+                IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:Get"), Collections.singletonList("*")));
+
+        ObjectNode policy = new IamPolicyOptimizer().optimize(statements);
+
+        Assert.assertEquals(2, policy.get("Statement").size());
+        Assert.assertEquals("Allow", policy.get("Statement").get(0).get("Effect").asText());
+    }
+
+    @Test
+    public void wildcardsAreOnlyUsedWhenAllowed() throws PolicySizeException {
+
+        List<JsonNode> statements = Collections.singletonList(
+                IamPolicyGenerator.getPolicyStatement("Allow", Arrays.asList("s3:GetObject", "s3:GetObjectAcl", "s3:PutObject"), Collections.singletonList("*")));
+
+        Assert.assertEquals(3, new IamPolicyOptimizer().optimize(statements).get("Statement").get(0).get("Action").size());
+
+        JsonNode actions = new IamPolicyOptimizer().withWildcards("s3:Get*").optimize(statements).get("Statement").get(0).get("Action");
+        Assert.assertEquals("[\"s3:Get*\",\"s3:PutObject\"]", actions.toString());
+    }
+
+    @Test
+    public void coveredActionsAreRemoved() throws PolicySizeException {
+
+        List<JsonNode> statements = Collections.singletonList(
+                IamPolicyGenerator.getPolicyStatement("Allow", Arrays.asList("dynamodb:*", "dynamodb:GetItem", "s3:GetObject"), Arrays.asList("*", "arn:aws:s3:::bucket")));
+
+        JsonNode statement = new IamPolicyOptimizer().optimize(statements).get("Statement").get(0);
+
+        Assert.assertEquals("[\"dynamodb:*\",\"s3:GetObject\"]", statement.get("Action").toString());
+        Assert.assertEquals("[\"*\"]", statement.get("Resource").toString());
+    }
+
+    @Test
+    public void otherStatementsAreOnlyDeduplicated() throws PolicySizeException {
+
+        ObjectNode conditional = (ObjectNode) IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:Get"), Collections.singletonList("*"));
+        conditional.putObject("Condition").putObject("Bool").put("aws:SecureTransport", "true");
+
+        List<JsonNode> statements = Arrays.asList(conditional, conditional.deepCopy(),
+                IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:List"), Collections.singletonList("*")));
+
+        ObjectNode policy = new IamPolicyOptimizer().optimize(statements);
+
+        Assert.assertEquals(2, policy.get("Statement").size());
+    }
+
+    @Test
+    public void outputIsDeterministic() throws PolicySizeException {
+
+        List<JsonNode> statements = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            statements.add(IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("sqs:Send" + (i % 7)), Collections.singletonList("arn:queue-" + (i % 3))));
+        }
+
+        IamPolicyOptimizer optimizer = new IamPolicyOptimizer().withMaxBytes(0);
+        String forward = optimizer.optimize(statements).toString();
+        Collections.reverse(statements);
+
+        Assert.assertEquals(forward, optimizer.optimize(statements).toString());
+        Assert.assertEquals(1, optimizer.optimize(statements).get("Statement").size());
+    }
+
+    @Test(expected = PolicySizeException.class)
+    public void tooLarge() throws PolicySizeException {
+
+        List<String> resources = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            resources.add("arn:aws:s3:::a-rather-long-bucket-name-" + i + "/*");
+        }
+
+        new IamPolicyOptimizer().optimize(Collections.singletonList(IamPolicyGenerator.getPolicyStatement("Allow", Collections.singletonList("s3:GetObject"), resources)));
+    }
+
+    @Test
+    public void serializedSize() {
+        Assert.assertEquals(7, IamPolicyOptimizer.serializedSize(JsonNodeFactory.instance.objectNode().put("a", 1)));
+    }
+}
@@ -0,0 +1,81 @@
+package io.haskins.cdkiac.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+public class LayeredPropsTest {
+
+    @Test
+    public void laterLayerWins() throws MissingPropertyException {
+
+        LayeredProps props = new LayeredProps();
+        props.addProp(LayeredProps.Layer.ENVIRONMENT, "keypair", "env-key");
+        props.addProp(LayeredProps.Layer.DTAP, "keypair", "dtap-key");
+        props.addProp(LayeredProps.Layer.VPC, "keypair", "vpc-key");
+
+        Assert.assertEquals("env-key", props.getProp("keypair"));
+        Assert.assertEquals(LayeredProps.Layer.ENVIRONMENT, props.getProvenance("keypair"));
+        Assert.assertEquals(Arrays.asList(LayeredProps.Layer.DTAP, LayeredProps.Layer.VPC, LayeredProps.Layer.ENVIRONMENT), props.getLayers("keypair"));
+    }
+
+    @Test
+    public void addingInvalidatesIndex() throws MissingPropertyException {
+
+        LayeredProps props = new LayeredProps();
+        props.addProp(LayeredProps.Layer.DTAP, "keypair", "dtap-key");
+        Assert.assertEquals("dtap-key", props.getProp("keypair"));
+
+        props.addProp(LayeredProps.Layer.APPLICATION, "keypair", "app-key");
+        Assert.assertEquals("app-key", props.getProp("keypair"));
+        Assert.assertEquals(LayeredProps.Layer.APPLICATION, props.getProvenance("keypair"));
+    }
+
+    @Test(expected = MissingPropertyException.class)
+    public void missingProperty() throws MissingPropertyException {
+        new LayeredProps().getProp("missing");
+    }
+
+    @Test
+    public void loadTargetWithOverrides() throws IOException, MissingPropertyException {
+
+        Properties system = new Properties();
+        system.setProperty("cdkiac.account_id", "0987654321");
+        system.setProperty("unrelated", "value");
+
+        Map<String, String> environment = new HashMap<>();
+        environment.put("CDKIAC_SUBNET", "subnet-87654321");
+
+        LayeredProps props = PropertyLoader.load("test_dtap", "test_vpc", "test_application", system, environment);
+
+        Assert.assertEquals("vpc-key", props.getProp("keypair"));
+        Assert.assertEquals(LayeredProps.Layer.VPC, props.getProvenance("keypair"));
+
+        Assert.assertEquals("m5.medium", props.getProp("instance_type"));
+        Assert.assertEquals(LayeredProps.Layer.APPLICATION, props.getProvenance("instance_type"));
+
+        Assert.assertEquals("0987654321", props.getProp("account_id"));
+        Assert.assertEquals(LayeredProps.Layer.SYSTEM_PROPERTIES, props.getProvenance("account_id"));
+
+        Assert.assertEquals("subnet-87654321", props.getProp("subnet"));
+        Assert.assertEquals(LayeredProps.Layer.ENVIRONMENT, props.getProvenance("subnet"));
+
+        Assert.assertEquals("test_application", props.getProp("app_id"));
+        Assert.assertFalse(props.asMap().containsKey("unrelated"));
+    }
+
+    @Test
+    public void toAppProps() throws IOException, MissingPropertyException {
+
+        AppProps appProps = PropertyLoader.load("test_dtap", null, "test_application", new Properties(), Collections.emptyMap()).toAppProps();
+
+        Assert.assertEquals("dtap-key", appProps.getPropAsString("keypair"));
+        Assert.assertEquals("test_dtap", appProps.getPropAsString("dtap"));
+    }
+}
@@ -0,0 +1,108 @@
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+public class PropertyAccessTrackerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AppProps appProps;
+
+    @Before
+    public void setUp() {
+
+        AppProps loaded = new AppProps();
+        loaded.addProp("dtap", "dev");
+        loaded.addProp("vpc", "vpc-a");
+        loaded.addProp("app_id", "app");
+        loaded.addProp("instance_type", "t2.micro");
+        loaded.addProp("Unused", "value");
+        appProps = loaded.freeze();
+    }
+
+    @Test
+    public void disabledByDefault() {
+
+        Assert.assertFalse(PropertyAccessTracker.isEnabled());
+
+        try (PropertyAccessTracker.Run run = PropertyAccessTracker.startRun("MyVpc", "dev/vpc-a/app")) {
+            Assert.assertSame(appProps, run.track(appProps));
+        }
+    }
+
+    @Test
+    public void readsAreCountedByScope() throws MissingPropertyException {
+
+        PropertyAccessTracker tracker = new PropertyAccessTracker(null, 10);
+
+        try (PropertyAccessTracker.Run run = tracker.newRun("MyVpc", "dev/vpc-a/app")) {
+
+            AppProps tracking = run.track(appProps);
+            tracking.getPropAsString("instance_type");
+
+            try (PropertyAccessTracker.Scope scope = PropertyAccessTracker.push("dev-vpc-a-app")) {
+                tracking.getUniqueId();
+                tracking.getPropAsString("instance_type");
+                tracking.getPropAsString("instance_type");
+            }
+
+            Assert.assertEquals(Long.valueOf(1), run.getReads().get("template").get("instance_type"));
+            Assert.assertEquals(Long.valueOf(2), run.getReads().get("dev-vpc-a-app").get("instance_type"));
+            Assert.assertEquals(Long.valueOf(1), run.getReads().get("dev-vpc-a-app").get("app_id"));
+            Assert.assertEquals(new TreeSet<>(Collections.singletonList("Unused")), run.getUnused());
+        }
+
+        Assert.assertEquals(1, tracker.toJson().get("runs").size());
+    }
+
+    @Test
+    public void reportListsUnusedAndHotKeys() throws IOException, MissingPropertyException {
+
+        Path report = folder.getRoot().toPath().resolve("reports/props.json");
+        PropertyAccessTracker tracker = new PropertyAccessTracker(report, 3);
+
+        try (PropertyAccessTracker.Run run = tracker.newRun("MyVpc", "dev/vpc-a/app")) {
+
+            AppProps tracking = run.track(appProps);
+            for (int i = 0; i < 3; i++) {
+                tracking.getPropAsString("instance_type");
+            }
+            tracking.getPropAsString("dtap");
+        }
+
+        JsonNode json = new ObjectMapper().readTree(report.toFile()).get("runs").get(0);
+
+        Assert.assertEquals("MyVpc", json.get("template").asText());
+        Assert.assertEquals(Arrays.asList("Unused", "app_id", "vpc"),
+                Arrays.asList(json.get("unused").get(0).asText(), json.get("unused").get(1).asText(), json.get("unused").get(2).asText()));
+        Assert.assertEquals(1, json.get("hot").size());
+        Assert.assertEquals("instance_type", json.get("hot").get(0).get("key").asText());
+        Assert.assertEquals(3, json.get("reads").get("template").get("instance_type").asLong());
+    }
+
+    @Test
+    public void discardedRunsAreNotReported() {
+
+        PropertyAccessTracker tracker = new PropertyAccessTracker(null, 10);
+
+        try (PropertyAccessTracker.Run run = tracker.newRun("MyVpc", "dev/vpc-a/app")) {
+            run.track(appProps);
+            run.discard();
+        }
+
+        Assert.assertEquals(0, tracker.toJson().get("runs").size());
+    }
+}
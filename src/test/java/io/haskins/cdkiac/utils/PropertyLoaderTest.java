@@ -0,0 +1,111 @@
+package io.haskins.cdkiac.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class PropertyLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PropertyLoader.CONFIG_DIR);
+    }
+
+    @Test
+    public void configDirectoryReplacesClasspath() throws IOException, MissingPropertyException {
+
+        Path dtap = folder.newFolder("dtap").toPath();
+        Files.write(dtap.resolve("test_dtap.json"), "{ \"keypair\": \"external-key\" }".getBytes(StandardCharsets.UTF_8));
+        System.setProperty(PropertyLoader.CONFIG_DIR, folder.getRoot().getPath());
+
+        LayeredProps props = PropertyLoader.load("test_dtap", null, "test_application", new Properties(), Collections.emptyMap());
+
+        Assert.assertEquals("external-key", props.getProp("keypair"));
+        Assert.assertEquals("m5.medium", props.getProp("instance_type"));
+        Assert.assertFalse(props.asMap().containsKey("account_id"));
+    }
+
+    @Test
+    public void typedValues() throws IOException, MissingPropertyException {
+
+        Path application = folder.newFolder("application").toPath();
+        Files.write(application.resolve("typed.json"), ("{ \"port\": 8080, \"ratio\": 0.5, \"public\": true, \"unset\": null, " +
+                "\"subnets\": [\"subnet-a\", \"subnet-b\"], \"tags\": { \"team\": \"ops\", \"cost\": 12 } }").getBytes(StandardCharsets.UTF_8));
+        System.setProperty(PropertyLoader.CONFIG_DIR, folder.getRoot().getPath());
+
+        LayeredProps props = PropertyLoader.load(null, null, "typed", new Properties(), Collections.emptyMap());
+
+        Assert.assertEquals(8080L, props.getProp("port"));
+        Assert.assertEquals(new BigDecimal("0.5"), props.getProp("ratio"));
+        Assert.assertEquals(Boolean.TRUE, props.getProp("public"));
+        Assert.assertEquals(Arrays.asList("subnet-a", "subnet-b"), props.getProp("subnets"));
+        Assert.assertFalse(props.asMap().containsKey("unset"));
+
+        AppProps appProps = props.toAppProps().freeze();
+        Assert.assertEquals(Integer.valueOf(8080), appProps.getPropAsInteger("port"));
+        Assert.assertEquals("ops", appProps.getPropAsMap("tags").get("team"));
+        Assert.assertEquals(12L, appProps.getPropAsMap("tags").get("cost"));
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnObject() throws IOException {
+
+        Path application = folder.newFolder("application").toPath();
+        Files.write(application.resolve("array.json"), "[\"a\"]".getBytes(StandardCharsets.UTF_8));
+        System.setProperty(PropertyLoader.CONFIG_DIR, folder.getRoot().getPath());
+
+        PropertyLoader.load(null, null, "array", new Properties(), Collections.emptyMap());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingFile() throws IOException {
+        PropertyLoader.load("test_dtap", null, "missing", new Properties(), Collections.emptyMap());
+    }
+
+    @Test
+    public void listDirectoryAndConfigDirectory() throws IOException {
+
+        Path dtap = folder.newFolder("dtap").toPath();
+        Files.write(dtap.resolve("external.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        System.setProperty(PropertyLoader.CONFIG_DIR, folder.getRoot().getPath());
+
+        Assert.assertTrue(PropertyLoader.list("dtap").containsAll(Arrays.asList("external", "test_dtap")));
+    }
+
+    @Test
+    public void listJar() throws IOException {
+
+        File jar = folder.newFile("resources.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entry : Arrays.asList("vpc/", "vpc/vpc-x.json", "vpc/vpc-y.json", "vpc/nested/vpc-z.json", "vpc/readme.txt")) {
+                out.putNextEntry(new JarEntry(entry));
+                out.closeEntry();
+            }
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null)) {
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("vpc-x", "vpc-y")), PropertyLoader.list("vpc", classLoader));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.haskins.cdkiac.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SynthesisProfilerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void disabledByDefault() {
+
+        Assert.assertFalse(SynthesisProfiler.isEnabled());
+        SynthesisProfiler.start(SynthesisProfiler.STACK, "stack").close();
+    }
+
+    @Test
+    public void measurementsAreAddedToTheRun() throws IOException {
+
+        Path report = folder.getRoot().toPath().resolve("profile/report.json");
+        SynthesisProfiler profiler = new SynthesisProfiler(report, null);
+
+        try (SynthesisProfiler.Measurement run = profiler.begin("MyVpc", "dev/vpc-a/app")) {
+            try (SynthesisProfiler.Measurement phase = profiler.measure(SynthesisProfiler.PHASE, "defineStacks")) {
+                try (SynthesisProfiler.Measurement stack = profiler.measure(SynthesisProfiler.STACK, "dev-vpc-a-app")) {
+                    byte[] allocated = new byte[1024 * 1024];
+                    Assert.assertEquals(1024 * 1024, allocated.length);
+                }
+            }
+        }
+
+        JsonNode json = new ObjectMapper().readTree(report.toFile());
+        JsonNode measurements = json.get("runs").get(0).get("measurements");
+
+        Assert.assertEquals("MyVpc", json.get("runs").get(0).get("template").asText());
+        Assert.assertEquals(3, measurements.size());
+        Assert.assertEquals("total", measurements.get(0).get("name").asText());
+        Assert.assertEquals("dev-vpc-a-app", measurements.get(1).get("name").asText());
+        Assert.assertEquals(SynthesisProfiler.STACK, measurements.get(1).get("kind").asText());
+        Assert.assertEquals("defineStacks", measurements.get(2).get("name").asText());
+        Assert.assertTrue(measurements.get(1).get("allocatedBytes").asLong() >= 1024 * 1024);
+    }
+
+    @Test
+    public void measurementsOutsideARunAreIgnored() {
+
+        SynthesisProfiler profiler = new SynthesisProfiler(null, null);
+        profiler.measure(SynthesisProfiler.STACK, "stack").close();
+
+        Assert.assertEquals(0, profiler.toJson().get("runs").size());
+    }
+
+    @Test
+    public void eventsSpanTheMeasurement() {
+
+        List<String> calls = new ArrayList<>();
+        SynthesisProfiler profiler = new SynthesisProfiler(null, new SynthesisProfiler.Events() {
+            @Override
+            public Object begin() {
+                calls.add("begin");
+                return "event";
+            }
+
+            @Override
+            public void commit(Object event, SynthesisProfiler.Run run, SynthesisProfiler.Sample sample) {
+                calls.add("commit " + event + " " + sample.name);
+            }
+        });
+
+        try (SynthesisProfiler.Measurement run = profiler.begin("MyVpc", "dev/vpc-a/app")) {
+            calls.add("work");
+        }
+
+        Assert.assertEquals("[begin, work, commit event total]", calls.toString());
+    }
+}